@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 在本地缓存方法的解析结果
+ * <p>
+ * 缓存 key 为渲染后的 URL、表单参数和请求 header，header 不同的调用分别缓存；不支持 {@link ReqSign} 签名参数。
+ * 使用 Caffeine 的 W-TinyLFU 淘汰策略，需自行引入 com.github.ben-manes.caffeine:caffeine 依赖。
+ * 所有调用方得到同一个结果对象，调用方不应修改该对象。仅支持 GET 和 POST 表单请求，
+ * 不支持 {@link CallFunction} 回调和 Publisher 返回值。时间单位为毫秒
+ */
+@Target({ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Cached {
+
+    /**
+     * 写入后的过期时间
+     *
+     * @return
+     */
+    long ttl() default 60000;
+
+    /**
+     * 最大缓存条数
+     *
+     * @return
+     */
+    long maxSize() default 1000;
+
+    /**
+     * 写入超过该时间后，下次读取时在后台重新加载，加载完成前仍返回旧值。小于等于 0 时不刷新
+     *
+     * @return
+     */
+    long refreshAfterWrite() default -1;
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 按方法和服务端地址熔断
+ * <p>
+ * 统计最近 slidingWindowSize 次调用，失败率或慢调用率达到阈值时打开，打开期间直接抛出
+ * {@link com.anlystar.common.httprpc.proxy.handler.CircuitBreakerOpenException}，不占用连接。
+ * 等待 waitDurationInOpenState 后半开，放行少量调用试探，全部完成后按失败率决定关闭或重新打开。
+ * 连接失败、IO 异常和 5xx 响应计为失败。标注在接口上时对所有方法生效，方法上的配置优先。时间单位为毫秒
+ */
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CircuitBreaker {
+
+    /**
+     * 失败率阈值，百分比
+     *
+     * @return
+     */
+    int failureRateThreshold() default 50;
+
+    /**
+     * 慢调用率阈值，百分比
+     *
+     * @return
+     */
+    int slowCallRateThreshold() default 100;
+
+    /**
+     * 耗时达到该值的调用计为慢调用
+     *
+     * @return
+     */
+    long slowCallDuration() default 10000;
+
+    /**
+     * 统计的最近调用数
+     *
+     * @return
+     */
+    int slidingWindowSize() default 100;
+
+    /**
+     * 窗口内调用数达到该值后才计算失败率
+     *
+     * @return
+     */
+    int minimumNumberOfCalls() default 20;
+
+    /**
+     * 打开后等待多久进入半开
+     *
+     * @return
+     */
+    long waitDurationInOpenState() default 10000;
+
+    /**
+     * 半开时放行的试探调用数
+     *
+     * @return
+     */
+    int permittedNumberOfCallsInHalfOpenState() default 5;
+
+}
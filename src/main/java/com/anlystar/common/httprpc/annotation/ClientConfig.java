@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 客户端接口的独立连接池配置
+ * <p>
+ * 标注的接口使用独立的同步和异步连接池，不与其他接口共享。时间单位为毫秒，小于 0 的项使用全局配置
+ * httprpc.http-client.*，并可被 Spring 环境中的 httprpc.clients.{name}.* 覆盖
+ */
+@Target({ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ClientConfig {
+
+    /**
+     * 客户端名称，用于 Spring 环境中的配置项，默认为接口的全限定类名。
+     * 显式指定相同名称的接口共用一个连接池，注解配置必须相同
+     *
+     * @return
+     */
+    String name() default "";
+
+    /**
+     * 连接超时时间
+     *
+     * @return
+     */
+    int connectTimeout() default -1;
+
+    /**
+     * socket读写超时时间
+     *
+     * @return
+     */
+    int socketTimeout() default -1;
+
+    /**
+     * 从连接池获取连接的超时时间
+     *
+     * @return
+     */
+    int connectionRequestTimeout() default -1;
+
+    /**
+     * 连接池最大连接数
+     *
+     * @return
+     */
+    int maxTotal() default -1;
+
+    /**
+     * 每个路由的最大连接数
+     *
+     * @return
+     */
+    int maxPerRoute() default -1;
+
+    /**
+     * 异步客户端的 IO 线程数
+     *
+     * @return
+     */
+    int ioThreadCount() default -1;
+
+    /**
+     * 是否使用 HTTP/2 客户端，多个并发请求复用少量连接，需运行在 Java 11 及以上。
+     * Java 8 运行时退回 HTTP/1.1，Java 11 及以上运行时 jar 缺少 HTTP/2 实现时创建客户端失败
+     *
+     * @return
+     */
+    boolean http2() default false;
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 将单个 key 的调用合并为批量调用
+ * <p>
+ * 标注的方法只能有一个请求参数作为 key。时间窗口内的调用合并后，以 key 的集合调用同一接口上的批量方法，
+ * 再按 key 将批量结果拆分给各调用方，结果中没有对应 key 时返回 null。
+ * 批量方法只能有一个请求参数，类型为 List、Set、Collection 或数组；返回值为 Map 时按 Map 的 key 拆分，
+ * 为 List 或数组时按 {@link #keyProperty()} 拆分，未配置时按请求中 key 的顺序拆分
+ */
+@Target({ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Collapse {
+
+    /**
+     * 批量方法名，必须在同一接口上且只有一个同名方法
+     *
+     * @return
+     */
+    String batchMethod();
+
+    /**
+     * 合并的时间窗口，单位毫秒
+     *
+     * @return
+     */
+    long window() default 10;
+
+    /**
+     * 单次批量调用的最大 key 数，达到后立即发送
+     *
+     * @return
+     */
+    int maxBatchSize() default 100;
+
+    /**
+     * 批量结果为 List 或数组时，元素中与 key 对应的属性名
+     *
+     * @return
+     */
+    String keyProperty() default "";
+
+}
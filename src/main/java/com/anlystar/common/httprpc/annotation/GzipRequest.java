@@ -0,0 +1,28 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 请求体达到阈值时以 gzip 压缩发送，并设置 Content-Encoding: gzip，服务端需支持解压
+ * <p>
+ * 同步请求在写出时流式压缩，不生成压缩后的副本；异步请求和 HTTP/2 客户端预先压缩。
+ * 标注在接口上时对所有 POST 方法生效，方法上的配置优先。只能标注在有请求体的 POST 方法上
+ */
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface GzipRequest {
+
+    /**
+     * 请求体达到该字节数时压缩
+     *
+     * @return
+     */
+    int threshold() default 8192;
+
+}
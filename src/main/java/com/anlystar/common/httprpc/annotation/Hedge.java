@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 对冲请求，降低慢节点造成的长尾耗时
+ * <p>
+ * 请求发出后超过 delay（未配置时为已观测到的 percentile 分位耗时）仍未响应，用异步客户端再发送一份相同的请求，
+ * 负载均衡时尽量发往其它节点。先返回的成功响应作为结果，另一个请求被取消；5xx 和连接失败时等待另一个请求。
+ * 对冲请求数不超过调用数的 maxHedgePercent，避免放大下游压力。同步方法也通过异步客户端发送。
+ * 仅支持幂等的 GET 请求，不支持 {@link CallFunction} 回调。时间单位为毫秒
+ */
+@Target({ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Hedge {
+
+    /**
+     * 固定的对冲延迟，小于等于 0 时按已观测的耗时分位数
+     *
+     * @return
+     */
+    long delay() default -1;
+
+    /**
+     * 未配置固定延迟时使用的耗时分位数，0 ~ 100
+     *
+     * @return
+     */
+    double percentile() default 95;
+
+    /**
+     * 对冲请求数占调用数的最大百分比
+     *
+     * @return
+     */
+    int maxHedgePercent() default 10;
+
+}
@@ -33,7 +33,7 @@ public @interface HttpRequest {
     String url() default "";
 
     /**
-     * 从Spring上下文中获取 URL 的 key
+     * 从Spring上下文中获取 URL 的 key，配置为逗号分隔的多个基础 URL 时在客户端负载均衡
      * @return
      */
     String urlKey() default "";
@@ -0,0 +1,29 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 合并并发的相同请求
+ * <p>
+ * URL、请求方法、请求体和参与判断的 header 都相同的调用，在前一个请求完成前只发送一次，
+ * 所有调用方得到同一个解析结果对象，调用方不应修改该对象。
+ * 不支持 {@link CallFunction} 回调和 Publisher 返回值
+ */
+@Target({ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface SingleFlight {
+
+    /**
+     * 参与判断的 header 名称，为空时全部 header 都参与判断
+     *
+     * @return
+     */
+    String[] headers() default {};
+
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 调用的超时时间，单位毫秒
+ * <p>
+ * 与当前线程的 {@link com.anlystar.common.httprpc.helper.Deadline} 取较早者，剩余时间作为连接、获取连接和读取超时的上限。
+ * 标注在接口上时对所有方法生效，方法上的配置优先
+ */
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Timeout {
+
+    /**
+     * 超时时间
+     *
+     * @return
+     */
+    long value();
+
+}
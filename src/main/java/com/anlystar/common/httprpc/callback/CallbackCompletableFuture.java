@@ -0,0 +1,24 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.callback;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 由异步回调直接完成的 CompletableFuture，可作为 CompletableFuture 或 CompletionStage 返回
+ *
+ * @param <T>
+ */
+public class CallbackCompletableFuture<T> extends CompletableFuture<T> implements Callback<T> {
+
+    @Override
+    public void handleResult(T result) {
+        complete(result);
+    }
+
+    @Override
+    public void handleError(Throwable error) {
+        completeExceptionally(error);
+    }
+}
@@ -0,0 +1,24 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.callback;
+
+import com.google.common.util.concurrent.AbstractFuture;
+
+/**
+ * 由异步回调直接完成的 Guava ListenableFuture
+ *
+ * @param <T>
+ */
+public class CallbackListenableFuture<T> extends AbstractFuture<T> implements Callback<T> {
+
+    @Override
+    public void handleResult(T result) {
+        set(result);
+    }
+
+    @Override
+    public void handleError(Throwable error) {
+        setException(error);
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.callback;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * 按订阅方需求逐个发送响应元素的 Publisher
+ * <p>
+ * 每次订阅在首次 request 时通过 source 发起一次请求，source 以回调返回元素迭代器。
+ * 元素只在订阅方有需求时才从迭代器中读取，取消或结束时关闭迭代器
+ *
+ * @param <T>
+ */
+public class CallbackPublisher<T> implements Publisher<T> {
+
+    private final Consumer<Callback<Iterator<T>>> source;
+
+    /**
+     * @param source 发起请求，并在完成时回调元素迭代器
+     */
+    public CallbackPublisher(Consumer<Callback<Iterator<T>>> source) {
+        this.source = source;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber");
+        }
+        subscriber.onSubscribe(new ElementSubscription<>(subscriber, source));
+    }
+
+    private static final class ElementSubscription<T> implements Subscription, Callback<Iterator<T>> {
+
+        private final Subscriber<? super T> subscriber;
+        private final Consumer<Callback<Iterator<T>>> source;
+
+        private final AtomicLong requested = new AtomicLong();
+        /**
+         * 进入 drain 的次数，保证同一时间只有一个线程向订阅方发送信号
+         */
+        private final AtomicInteger wip = new AtomicInteger();
+        private final AtomicBoolean started = new AtomicBoolean();
+
+        private volatile Iterator<T> elements;
+        private volatile Throwable error;
+        private volatile boolean cancelled;
+        /**
+         * 已发送结束信号，只在 drain 中访问
+         */
+        private boolean done;
+
+        ElementSubscription(Subscriber<? super T> subscriber, Consumer<Callback<Iterator<T>>> source) {
+            this.subscriber = subscriber;
+            this.source = source;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("request 数量必须大于 0 -> " + n);
+                drain();
+                return;
+            }
+            long current;
+            long next;
+            do {
+                current = requested.get();
+                next = current + n < 0 ? Long.MAX_VALUE : current + n;
+            } while (!requested.compareAndSet(current, next));
+
+            if (started.compareAndSet(false, true)) {
+                try {
+                    source.accept(this);
+                } catch (RuntimeException e) {
+                    handleError(e);
+                }
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            drain();
+        }
+
+        @Override
+        public void handleResult(Iterator<T> result) {
+            elements = result;
+            drain();
+        }
+
+        @Override
+        public void handleError(Throwable e) {
+            error = e;
+            drain();
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            while (true) {
+                if (!done) {
+                    emit();
+                }
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    break;
+                }
+            }
+        }
+
+        private void emit() {
+            if (cancelled) {
+                finish();
+                return;
+            }
+            Throwable e = error;
+            if (e != null) {
+                finish();
+                subscriber.onError(e);
+                return;
+            }
+            Iterator<T> it = elements;
+            if (it == null) {
+                return;
+            }
+
+            long r = requested.get();
+            long emitted = 0;
+            boolean completed;
+            try {
+                while (emitted != r && !cancelled && it.hasNext()) {
+                    subscriber.onNext(it.next());
+                    emitted++;
+                }
+                completed = !cancelled && !it.hasNext();
+            } catch (RuntimeException ex) {
+                finish();
+                subscriber.onError(ex);
+                return;
+            }
+
+            if (completed) {
+                finish();
+                subscriber.onComplete();
+            } else if (emitted != 0 && r != Long.MAX_VALUE) {
+                requested.addAndGet(-emitted);
+            }
+        }
+
+        private void finish() {
+            done = true;
+            Iterator<T> it = elements;
+            if (it instanceof Closeable) {
+                try {
+                    ((Closeable) it).close();
+                } catch (IOException ignored) {
+                    // 响应已读入内存，关闭失败不影响结果
+                }
+            }
+        }
+    }
+}
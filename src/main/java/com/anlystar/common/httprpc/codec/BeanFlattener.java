@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.codec;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
+import com.fasterxml.jackson.databind.ser.BeanSerializer;
+import com.fasterxml.jackson.databind.ser.DefaultSerializerProvider;
+import com.fasterxml.jackson.databind.ser.PropertyWriter;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.google.common.primitives.Primitives;
+
+/**
+ * 将 Java Bean 展开为表单或 header 参数，不经过 JSON 字符串中转
+ * <p>
+ * 属性列表来自 Jackson 的 {@link BeanSerializer}，每个类型只解析一次，因此属性名、忽略、
+ * {@link JsonFormat} 等 Jackson 注解依然生效，值为 null 的属性不输出。
+ * 未配置 {@link JsonInclude} 空值、默认值过滤的 String、基本数据类型及其包装类属性直接读取，其余属性由 Jackson 序列化为单个值；
+ * 数组和集合的元素用 , 连接。无法按属性处理的类型（如自定义序列化、JsonAnyGetter）整体序列化后展开
+ */
+public class BeanFlattener {
+
+    private final ObjectMapper mapper;
+
+    private final ClassValue<BeanProperty[]> properties = new ClassValue<BeanProperty[]>() {
+        @Override
+        protected BeanProperty[] computeValue(Class<?> type) {
+            return resolve(type);
+        }
+    };
+
+    public BeanFlattener(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    /**
+     * 展开 bean 的属性并写入 target
+     *
+     * @param bean
+     * @param target
+     *
+     * @throws IllegalArgumentException 属性值无法展开为字符串（如嵌套对象）
+     */
+    public void flatten(Object bean, Map<String, String> target) {
+        if (bean == null) {
+            return;
+        }
+        BeanProperty[] props = properties.get(bean.getClass());
+        try {
+            if (props == null) {
+                flattenTokens(bean, target);
+                return;
+            }
+            DefaultSerializerProvider provider = null;
+            for (BeanProperty prop : props) {
+                if (prop.direct) {
+                    Object value = prop.writer.get(bean);
+                    if (value != null) {
+                        target.put(prop.name, String.valueOf(value));
+                    }
+                } else {
+                    if (provider == null) {
+                        provider = createProvider();
+                    }
+                    TokenBuffer buffer = new TokenBuffer(mapper, false);
+                    buffer.writeStartObject();
+                    prop.writer.serializeAsField(bean, buffer, provider);
+                    buffer.writeEndObject();
+                    readFields(buffer.asParser(), target);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalArgumentException("参数展开失败 -> " + bean.getClass(), e);
+        }
+    }
+
+    private void flattenTokens(Object bean, Map<String, String> target) throws IOException {
+        TokenBuffer buffer = new TokenBuffer(mapper, false);
+        mapper.writeValue(buffer, bean);
+        readFields(buffer.asParser(), target);
+    }
+
+    private DefaultSerializerProvider createProvider() {
+        return ((DefaultSerializerProvider) mapper.getSerializerProvider())
+                .createInstance(mapper.getSerializationConfig(), mapper.getSerializerFactory());
+    }
+
+    /**
+     * 读取一个 JSON 对象的所有字段
+     */
+    private static void readFields(JsonParser parser, Map<String, String> target) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IllegalArgumentException("不支持的参数类型，无法展开为键值对");
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                StringJoiner joiner = new StringJoiner(ParamCodecs.SEPARATOR);
+                while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                    if (token.isStructStart()) {
+                        throw new IllegalArgumentException("不支持嵌套对象参数 -> " + name);
+                    } else if (token != JsonToken.VALUE_NULL) {
+                        joiner.add(parser.getText());
+                    }
+                }
+                target.put(name, joiner.toString());
+            } else if (token.isStructStart()) {
+                throw new IllegalArgumentException("不支持嵌套对象参数 -> " + name);
+            } else if (token != JsonToken.VALUE_NULL) {
+                target.put(name, parser.getText());
+            }
+        }
+    }
+
+    /**
+     * 解析类型的属性，无法按属性处理时返回 null
+     */
+    private BeanProperty[] resolve(Class<?> type) {
+        try {
+            SerializationConfig config = mapper.getSerializationConfig();
+            BeanDescription description = config.introspect(mapper.constructType(type));
+            if (description.findAnyGetter() != null) {
+                return null;
+            }
+            // 与 Jackson 的 PropertyBuilder 相同：全局和类型配置 -> 类上的注解 -> 属性上的注解
+            JsonInclude.Value classInclusion = JsonInclude.Value.merge(config.getDefaultPropertyInclusion(),
+                    JsonInclude.Value.merge(description.findPropertyInclusion(JsonInclude.Value.empty()),
+                            config.getDefaultPropertyInclusion(type, JsonInclude.Value.empty())));
+            Map<String, BeanPropertyDefinition> definitions = new HashMap<>();
+            for (BeanPropertyDefinition definition : description.findProperties()) {
+                definitions.put(definition.getName(), definition);
+            }
+            JsonSerializer<Object> serializer = createProvider().findValueSerializer(type);
+            if (serializer.getClass() != BeanSerializer.class) {
+                return null;
+            }
+            List<BeanProperty> props = new ArrayList<>();
+            Iterator<PropertyWriter> iterator = serializer.properties();
+            while (iterator.hasNext()) {
+                PropertyWriter writer = iterator.next();
+                if (!(writer instanceof BeanPropertyWriter)) {
+                    return null;
+                }
+                BeanPropertyDefinition definition = definitions.get(writer.getName());
+                JsonInclude.Value inclusion = config.getDefaultInclusion(type, writer.getType().getRawClass(),
+                        classInclusion);
+                if (definition != null) {
+                    inclusion = inclusion.withOverrides(definition.findInclusion());
+                }
+                props.add(new BeanProperty((BeanPropertyWriter) writer, inclusion.getValueInclusion()));
+            }
+            return props.toArray(new BeanProperty[0]);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static final class BeanProperty {
+
+        private final BeanPropertyWriter writer;
+        private final String name;
+        /**
+         * 可直接读取属性值并 toString，配置了 NON_EMPTY、NON_DEFAULT 等过滤时交给 Jackson 判断
+         */
+        private final boolean direct;
+
+        BeanProperty(BeanPropertyWriter writer, JsonInclude.Include inclusion) {
+            this.writer = writer;
+            this.name = writer.getName();
+            Class<?> rawType = writer.getType().getRawClass();
+            this.direct = (String.class.equals(rawType) || rawType.isPrimitive() || Primitives.isWrapperType(rawType))
+                    && writer.getAnnotation(JsonSerialize.class) == null
+                    && writer.getAnnotation(JsonFormat.class) == null
+                    && isNullOnly(inclusion);
+        }
+
+        /**
+         * 只过滤 null 值，与直接读取时跳过 null 一致
+         */
+        private static boolean isNullOnly(JsonInclude.Include inclusion) {
+            return inclusion == null || inclusion == JsonInclude.Include.ALWAYS
+                    || inclusion == JsonInclude.Include.NON_NULL || inclusion == JsonInclude.Include.NON_ABSENT
+                    || inclusion == JsonInclude.Include.USE_DEFAULTS;
+        }
+    }
+}
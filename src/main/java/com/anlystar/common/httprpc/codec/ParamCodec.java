@@ -0,0 +1,26 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.codec;
+
+/**
+ * 请求参数编码器，将参数值转换为 URL、表单或 header 中的字符串
+ * <p>
+ * 通过 {@link ParamCodecs#register(Class, ParamCodec)} 注册自定义类型
+ *
+ * @param <T>
+ */
+@FunctionalInterface
+public interface ParamCodec<T> {
+
+    /**
+     * 编码参数值
+     *
+     * @param value 非 null 的参数值
+     * @param format {@link com.anlystar.common.httprpc.annotation.ReqParam#format()} 指定的格式
+     *
+     * @return
+     */
+    String encode(T value, String format);
+
+}
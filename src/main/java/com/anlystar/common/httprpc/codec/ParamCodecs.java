@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.codec;
+
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.ClassUtils;
+
+import com.anlystar.common.helper.DateHelper;
+import com.google.common.primitives.Primitives;
+
+/**
+ * 请求参数编码器注册表
+ * <p>
+ * 内置支持 String、八种基本数据类型及其包装类、Number、BigDecimal、Date、枚举、数组和 Collection，
+ * 数组和 Collection 的元素逐个编码后用 , 连接。每个类型只在首次使用时解析一次编码器，
+ * 未注册的类型按 父类 -> 接口 的顺序查找
+ */
+@SuppressWarnings("unchecked")
+public abstract class ParamCodecs {
+
+    /**
+     * 元素分隔符
+     */
+    public final static String SEPARATOR = ",";
+
+    /**
+     * 默认日期格式，与 {@link com.anlystar.common.httprpc.annotation.ReqParam#format()} 一致
+     */
+    public final static String DEFAULT_FORMAT = "yyyy-MM-dd HH:mm:ss";
+
+    /**
+     * 不支持的类型
+     */
+    private final static ParamCodec<Object> UNSUPPORTED = (value, format) -> {
+        throw new IllegalArgumentException("不支持的参数类型 -> " + value.getClass());
+    };
+
+    private final static ParamCodec<Object> TO_STRING = (value, format) -> String.valueOf(value);
+
+    private final static ParamCodec<Object> ENUM = (value, format) -> ((Enum<?>) value).name();
+
+    private final static ParamCodec<Object> ARRAY = (value, format) -> {
+        StringJoiner joiner = new StringJoiner(SEPARATOR);
+        for (int i = 0, len = Array.getLength(value); i < len; i++) {
+            Object o = Array.get(value, i);
+            if (o != null) {
+                joiner.add(encode(o, format));
+            }
+        }
+        return joiner.toString();
+    };
+
+    /**
+     * 已注册的编码器
+     */
+    private final static Map<Class<?>, ParamCodec<?>> REGISTERED = new ConcurrentHashMap<>();
+
+    /**
+     * 按类型解析的编码器，注册新编码器时整体重建
+     */
+    private static volatile ClassValue<ParamCodec<Object>> codecs = newClassValue();
+
+    static {
+        REGISTERED.put(String.class, TO_STRING);
+        for (Class<?> wrapper : Primitives.allWrapperTypes()) {
+            REGISTERED.put(wrapper, TO_STRING);
+            REGISTERED.put(Primitives.unwrap(wrapper), TO_STRING);
+        }
+        REGISTERED.put(Number.class, TO_STRING);
+        REGISTERED.put(BigDecimal.class, (ParamCodec<BigDecimal>) (value, format) -> value.toPlainString());
+        REGISTERED.put(Date.class, (ParamCodec<Date>) DateHelper::format);
+        REGISTERED.put(Collection.class, (ParamCodec<Collection<?>>) (value, format) -> {
+            StringJoiner joiner = new StringJoiner(SEPARATOR);
+            for (Object o : value) {
+                if (o != null) {
+                    joiner.add(encode(o, format));
+                }
+            }
+            return joiner.toString();
+        });
+    }
+
+    /**
+     * 注册自定义类型的编码器，对该类型及其子类生效
+     * <p>
+     * String、基本数据类型及其包装类的编码方式固定，不允许覆盖
+     *
+     * @param type
+     * @param codec
+     * @param <T>
+     */
+    public static <T> void register(Class<T> type, ParamCodec<? super T> codec) {
+        if (type == null || codec == null) {
+            throw new IllegalArgumentException("参数类型和编码器不能为空");
+        }
+        if (String.class.equals(type) || type.isPrimitive() || Primitives.isWrapperType(type)) {
+            throw new IllegalArgumentException("不允许覆盖内置类型的编码器 -> " + type);
+        }
+        REGISTERED.put(type, codec);
+        codecs = newClassValue();
+    }
+
+    /**
+     * 查找类型对应的编码器
+     *
+     * @param type
+     *
+     * @return 不支持时返回 null
+     */
+    public static ParamCodec<Object> lookup(Class<?> type) {
+        ParamCodec<Object> codec = codecs.get(type);
+        return codec == UNSUPPORTED ? null : codec;
+    }
+
+    /**
+     * 是否支持该类型
+     *
+     * @param type
+     *
+     * @return
+     */
+    public static boolean isSupported(Class<?> type) {
+        return codecs.get(type) != UNSUPPORTED;
+    }
+
+    /**
+     * 编码参数值
+     *
+     * @param value
+     * @param format
+     *
+     * @return value 为 null 时返回 null
+     *
+     * @throws IllegalArgumentException 不支持的参数类型
+     */
+    public static String encode(Object value, String format) {
+        if (value == null) {
+            return null;
+        }
+        return codecs.get(value.getClass()).encode(value, format);
+    }
+
+    private static ClassValue<ParamCodec<Object>> newClassValue() {
+        return new ClassValue<ParamCodec<Object>>() {
+            @Override
+            protected ParamCodec<Object> computeValue(Class<?> type) {
+                return resolve(type);
+            }
+        };
+    }
+
+    private static ParamCodec<Object> resolve(Class<?> type) {
+        ParamCodec<?> codec = REGISTERED.get(type);
+        if (codec != null) {
+            return (ParamCodec<Object>) codec;
+        }
+        if (type.isArray()) {
+            return ARRAY;
+        }
+        for (Class<?> superClass : ClassUtils.getAllSuperclasses(type)) {
+            codec = REGISTERED.get(superClass);
+            if (codec != null) {
+                return (ParamCodec<Object>) codec;
+            }
+        }
+        for (Class<?> superInterface : ClassUtils.getAllInterfaces(type)) {
+            codec = REGISTERED.get(superInterface);
+            if (codec != null) {
+                return (ParamCodec<Object>) codec;
+            }
+        }
+        if (Enum.class.isAssignableFrom(type)) {
+            return ENUM;
+        }
+        return UNSUPPORTED;
+    }
+
+}
@@ -4,30 +4,28 @@
 package com.anlystar.common.httprpc.helper;
 
 import java.io.IOException;
-import java.net.URLEncoder;
 import java.nio.charset.Charset;
 import java.text.SimpleDateFormat;
 import java.util.Locale;
 import java.util.Map;
-import java.util.StringJoiner;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.http.Header;
 import org.apache.http.HttpResponse;
-import org.apache.http.HttpStatus;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 import org.apache.http.impl.nio.client.HttpAsyncClients;
 import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
 import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
 import org.apache.http.impl.nio.reactor.IOReactorConfig;
 import org.apache.http.nio.reactor.ConnectingIOReactor;
-import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -49,6 +47,19 @@ public abstract class AsyncHttpClientHelper {
     private static int TIMEOUT = 60 * 1000;
     private static int POOL_SIZE = 20;
     private static int BUF_SIZE = 8192;
+    /**
+     * 全局异步客户端的默认请求配置
+     */
+    private final static RequestConfig DEFAULT_REQUEST_CONFIG = RequestConfig.custom()
+            .setContentCompressionEnabled(true)
+            // 设置连接超时时间(单位毫秒)
+            .setConnectTimeout(TIMEOUT)
+            // 设置请求超时时间(单位毫秒)
+            .setConnectionRequestTimeout(TIMEOUT)
+            // socket读写超时时间(单位毫秒)
+            .setSocketTimeout(TIMEOUT)
+            // 设置是否允许重定向(默认为true)
+            .setRedirectsEnabled(true).build();
 
     static {
         OBJECT_MAPPER.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
@@ -62,16 +73,7 @@ public abstract class AsyncHttpClientHelper {
      * @return
      */
     public static CloseableHttpAsyncClient createDefaultHttpAsyncClient() {
-        RequestConfig requestConfig = RequestConfig.custom()
-                .setContentCompressionEnabled(true)
-                // 设置连接超时时间(单位毫秒)
-                .setConnectTimeout(TIMEOUT)
-                // 设置请求超时时间(单位毫秒)
-                .setConnectionRequestTimeout(TIMEOUT)
-                // socket读写超时时间(单位毫秒)
-                .setSocketTimeout(TIMEOUT)
-                // 设置是否允许重定向(默认为true)
-                .setRedirectsEnabled(true).build();
+        RequestConfig requestConfig = DEFAULT_REQUEST_CONFIG;
         IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
                 .setIoThreadCount(Runtime.getRuntime().availableProcessors())
                 .setSoKeepAlive(true)
@@ -100,6 +102,15 @@ public abstract class AsyncHttpClientHelper {
         return httpAsyncClient;
     }
 
+    /**
+     * 全局的默认异步客户端，首次调用时创建
+     *
+     * @return
+     */
+    public static CloseableHttpAsyncClient getDefaultHttpAsyncClient() {
+        return DefaultInstanceHolder.HTTP_CLIENT;
+    }
+
     /**
      * 创建一个自定义的 AsyncHttpHelper
      *
@@ -144,6 +155,77 @@ public abstract class AsyncHttpClientHelper {
         return httpAsyncClient;
     }
 
+    /**
+     * 全局异步客户端的默认请求配置
+     *
+     * @return
+     */
+    public static RequestConfig getDefaultRequestConfig() {
+        return DEFAULT_REQUEST_CONFIG;
+    }
+
+    /**
+     * 按连接池配置创建异步客户端的默认请求配置
+     *
+     * @param config
+     *
+     * @return
+     */
+    public static RequestConfig createRequestConfig(HttpClientConfig config) {
+        return RequestConfig.custom()
+                .setContentCompressionEnabled(true)
+                .setConnectTimeout(config.getConnectTimeout())
+                .setSocketTimeout(config.getSocketTimeout())
+                .setConnectionRequestTimeout(config.getConnectionRequestTimeout())
+                .build();
+    }
+
+    /**
+     * 按连接池配置创建 AsyncHttpHelper
+     *
+     * @param config
+     *
+     * @return
+     */
+    public static CloseableHttpAsyncClient createHttpAsyncClient(HttpClientConfig config) {
+        RequestConfig requestConfig = createRequestConfig(config);
+        int ioThreadCount = config.getIoThreadCount() > 0
+                ? config.getIoThreadCount() : Runtime.getRuntime().availableProcessors();
+        IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+                .setIoThreadCount(ioThreadCount)
+                .setSoKeepAlive(true)
+                .setConnectTimeout(config.getConnectTimeout())
+                .setRcvBufSize(BUF_SIZE)
+                .setSndBufSize(BUF_SIZE)
+                .build();
+        // 设置连接池大小
+        ConnectingIOReactor ioReactor;
+        // 连接池
+        PoolingNHttpClientConnectionManager connManager;
+        try {
+            ioReactor = new DefaultConnectingIOReactor(ioReactorConfig);
+            connManager = new PoolingNHttpClientConnectionManager(ioReactor);
+            connManager.setMaxTotal(config.getMaxTotal());
+            connManager.setDefaultMaxPerRoute(config.getMaxPerRoute());
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+            throw new RuntimeException(e);
+        }
+
+        long keepAlive = config.getKeepAlive();
+        CloseableHttpAsyncClient httpAsyncClient = HttpAsyncClients.custom()
+                .setConnectionManager(connManager)
+                .setDefaultRequestConfig(requestConfig)
+                // 优先使用服务端 Keep-Alive 头中的 timeout
+                .setKeepAliveStrategy((response, context) -> {
+                    long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return duration > 0 ? duration : keepAlive;
+                })
+                .build();
+        httpAsyncClient.start();
+        return httpAsyncClient;
+    }
+
     /**
      * 处理 GET 请求
      *
@@ -228,31 +310,13 @@ public abstract class AsyncHttpClientHelper {
      */
     public static void get(CloseableHttpAsyncClient client, String url, Map<String, String> headers,
                            Map<String, String> pars, final FutureCallback<HttpResponse> callback) {
-        // 参数
-        StringJoiner joiner = new StringJoiner("&");
-
-        if (pars != null && !pars.isEmpty()) {
-            pars.forEach((k, v) -> {
-                if (v == null) {
-                    return;
-                }
-                try {
-                    joiner.add(String.format("%s=%s", k, URLEncoder.encode(v, "utf-8")));
-                } catch (Exception e) {
-                    logger.error(e.getMessage(), e);
-                    throw new RuntimeException(e);
-                }
-            });
-        }
-
         // 创建Get请求
-        HttpGet httpGet = new HttpGet(url + "?" + joiner.toString());
+        HttpGet httpGet = new HttpGet(url + "?" + HttpClientHelper.toQueryString(pars));
 
         if (headers != null && !headers.isEmpty()) {
             headers.forEach(httpGet::setHeader);
         }
 
-        httpGet.setHeader("Accept-Encoding", "gzip, deflate");
         httpGet.setHeader("Accept-Encoding", "gzip, deflate");
         client.execute(httpGet, callback);
     }
@@ -316,17 +380,6 @@ public abstract class AsyncHttpClientHelper {
      */
     public static void post(CloseableHttpAsyncClient client, String url, Map<String, String> headers,
                             Map<String, String> pars, final FutureCallback<HttpResponse> callback) {
-        // 参数
-        StringJoiner joiner = new StringJoiner("&");
-
-        if (pars != null && !pars.isEmpty()) {
-            pars.forEach((k, v) -> {
-                if (v != null) {
-                    joiner.add(k + "=" + v);
-                }
-            });
-        }
-
         // 创建Get请求
         HttpPost httpPost = new HttpPost(url);
 
@@ -335,10 +388,9 @@ public abstract class AsyncHttpClientHelper {
         }
 
         // 设置ContentType
-        httpPost.setHeader("Content-Type", "application/x-www-form-urlencoded;charset=utf8");
+        httpPost.setHeader("Content-Type", HttpClientHelper.FORM_CONTENT_TYPE);
         httpPost.setHeader("Accept-Encoding", "gzip, deflate");
-        StringEntity entity = new StringEntity(joiner.toString(), "utf-8");
-        entity.setContentEncoding("UTF-8");
+        StringEntity entity = new StringEntity(HttpClientHelper.toFormString(pars), "utf-8");
         httpPost.setEntity(entity);
         // 响应模型
         client.execute(httpPost, callback);
@@ -403,6 +455,33 @@ public abstract class AsyncHttpClientHelper {
      */
     public static void postJson(CloseableHttpAsyncClient client, String url, Map<String, String> headers, Object json,
                                 final FutureCallback<HttpResponse> callback) throws Exception {
+        postJson(client, url, headers, OBJECT_MAPPER.writeValueAsBytes(json), callback);
+    }
+
+    /**
+     * 处理 PostJson 请求，请求体为已序列化的 UTF-8 JSON
+     *
+     * @param url
+     * @param headers
+     * @param body
+     * @param callback
+     */
+    public static void postJson(String url, Map<String, String> headers, byte[] body,
+                                final FutureCallback<HttpResponse> callback) {
+        postJson(DefaultInstanceHolder.HTTP_CLIENT, url, headers, body, callback);
+    }
+
+    /**
+     * 处理 PostJson 请求，请求体为已序列化的 UTF-8 JSON
+     *
+     * @param client
+     * @param url
+     * @param headers
+     * @param body
+     * @param callback
+     */
+    public static void postJson(CloseableHttpAsyncClient client, String url, Map<String, String> headers, byte[] body,
+                                final FutureCallback<HttpResponse> callback) {
 
         // 创建Get请求
         HttpPost httpPost = new HttpPost(url);
@@ -412,10 +491,9 @@ public abstract class AsyncHttpClientHelper {
         }
 
         // 设置ContentType
-        httpPost.setHeader("Content-Type", "application/json;charset=utf8");
+        httpPost.setHeader("Content-Type", HttpClientHelper.JSON_CONTENT_TYPE);
         httpPost.setHeader("Accept-Encoding", "gzip, deflate");
-        StringEntity entity = new StringEntity(OBJECT_MAPPER.writeValueAsString(json), "utf-8");
-        entity.setContentEncoding("UTF-8");
+        ByteArrayEntity entity = new ByteArrayEntity(body);
         httpPost.setEntity(entity);
 
         // 响应模型
@@ -456,12 +534,7 @@ public abstract class AsyncHttpClientHelper {
     }
 
     public static String parseResponse(HttpResponse response) throws IOException {
-        if (HttpStatus.SC_OK == response.getStatusLine().getStatusCode()) {
-            return EntityUtils.toString(response.getEntity(), getCharset(null, response));
-        } else {
-            throw new RuntimeException(
-                    "http status error: " + response.getStatusLine().getStatusCode());
-        }
+        return ResponseDecoder.decode(response, null, ResponseReader.STRING);
     }
 
     private static class DefaultInstanceHolder {
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.helper;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 调用的截止时间，通过线程上下文传递给当前线程发起的 RPC 调用
+ * <p>
+ * 例如将入站请求的剩余时间传给下游：
+ * <pre>
+ * try (Deadline.Scope scope = Deadline.after(remaining, TimeUnit.MILLISECONDS).attach()) {
+ *     userClient.getUser(id);
+ * }
+ * </pre>
+ * 调用时剩余时间转换为连接、获取连接和读取超时，已过截止时间的调用不发送，直接抛出 {@link DeadlineExceededException}。
+ * 异步方法在调用线程上取截止时间，回调线程和其它线程不继承
+ */
+public final class Deadline {
+
+    private final static ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+    /**
+     * 避免 {@link System#nanoTime()} 加上过大的时长后溢出
+     */
+    private final static long MAX_NANOS = Long.MAX_VALUE / 4;
+
+    /**
+     * 截止时间，{@link System#nanoTime()}
+     */
+    private final long deadlineNanos;
+
+    private Deadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * 从现在起经过 duration 后截止
+     *
+     * @param duration
+     * @param unit
+     *
+     * @return
+     */
+    public static Deadline after(long duration, TimeUnit unit) {
+        return new Deadline(System.nanoTime() + Math.min(unit.toNanos(duration), MAX_NANOS));
+    }
+
+    /**
+     * 当前线程的截止时间
+     *
+     * @return 未设置时返回 null
+     */
+    public static Deadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 剩余时间
+     *
+     * @param unit
+     *
+     * @return 已过截止时间时小于等于 0
+     */
+    public long remaining(TimeUnit unit) {
+        return unit.convert(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    public boolean isExpired() {
+        return deadlineNanos - System.nanoTime() <= 0;
+    }
+
+    /**
+     * 取较早的截止时间
+     *
+     * @param other 为 null 时返回 this
+     *
+     * @return
+     */
+    public Deadline min(Deadline other) {
+        return other == null || deadlineNanos - other.deadlineNanos <= 0 ? this : other;
+    }
+
+    /**
+     * 设置为当前线程的截止时间，已有更早的截止时间时保持不变。关闭返回的 Scope 时恢复原来的截止时间
+     *
+     * @return
+     */
+    public Scope attach() {
+        Deadline previous = CURRENT.get();
+        CURRENT.set(min(previous));
+        return new Scope(previous);
+    }
+
+    @Override
+    public String toString() {
+        return "Deadline[" + remaining(TimeUnit.MILLISECONDS) + "ms]";
+    }
+
+    /**
+     * {@link #attach()} 的作用范围
+     */
+    public static final class Scope implements AutoCloseable {
+
+        private final Deadline previous;
+
+        private Scope(Deadline previous) {
+            this.previous = previous;
+        }
+
+        @Override
+        public void close() {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+}
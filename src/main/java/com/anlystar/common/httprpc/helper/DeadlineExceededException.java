@@ -0,0 +1,14 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.helper;
+
+/**
+ * 已过调用的截止时间，请求未发送，或合并、共享的请求未在截止时间前返回
+ */
+public class DeadlineExceededException extends RuntimeException {
+
+    public DeadlineExceededException(String url) {
+        super("已超过调用截止时间 -> " + url);
+    }
+}
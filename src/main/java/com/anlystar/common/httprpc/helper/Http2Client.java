@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.helper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Future;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.concurrent.FutureCallback;
+
+import com.anlystar.common.httprpc.transport.HttpTransport;
+import com.anlystar.common.httprpc.transport.TransportRequest;
+
+/**
+ * 基于 JDK HttpClient 的 HTTP/2 客户端，多个并发请求复用少量连接
+ * <p>
+ * 本类为 Java 8 版本，始终不支持。Java 11 及以上运行时加载多版本 jar 中 META-INF/versions/11 下的同名实现。
+ * 响应转换为 Apache {@link HttpResponse}，可直接交给 {@link ResponseDecoder} 解析
+ */
+public class Http2Client implements HttpTransport, Closeable {
+
+    protected Http2Client() {
+    }
+
+    /**
+     * 当前运行时是否支持
+     *
+     * @return
+     */
+    public static boolean isSupported() {
+        return false;
+    }
+
+    /**
+     * 按配置创建客户端，使用连接超时和 socket 读写超时
+     *
+     * @param config
+     *
+     * @return
+     *
+     * @throws UnsupportedOperationException 当前运行时不支持
+     */
+    public static Http2Client create(HttpClientConfig config) {
+        throw new UnsupportedOperationException("HTTP/2 客户端需要 Java 11 及以上 -> " + System.getProperty("java.version"));
+    }
+
+    @Override
+    public <T> T execute(TransportRequest request, ResponseReader<T> reader) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Future<?> execute(TransportRequest request, FutureCallback<HttpResponse> callback) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.helper;
+
+import java.util.Objects;
+
+import org.springframework.core.env.PropertyResolver;
+
+/**
+ * HTTP 客户端连接池配置，时间单位均为毫秒
+ * <p>
+ * 可通过 {@link #from(PropertyResolver, String)} 从 Spring 环境读取，配置项为 前缀 + 属性名，如
+ * httprpc.http-client.max-total
+ */
+public class HttpClientConfig {
+
+    /**
+     * 默认配置项前缀
+     */
+    public final static String DEFAULT_PREFIX = "httprpc.http-client.";
+
+    /**
+     * 连接池最大连接数
+     */
+    private int maxTotal = 200;
+    /**
+     * 每个路由的最大连接数
+     */
+    private int maxPerRoute = 50;
+    /**
+     * 连接空闲超过该时间后，复用前先检查是否可用
+     */
+    private int validateAfterInactivity = 2000;
+    /**
+     * 空闲连接回收时间，小于等于 0 时不回收
+     */
+    private long idleTimeout = 30000;
+    /**
+     * 连接最大存活时间，小于等于 0 时不限制
+     */
+    private long timeToLive = -1;
+    /**
+     * 服务端未返回 Keep-Alive 头时的连接保持时间，小于等于 0 时一直保持
+     */
+    private long keepAlive = 30000;
+    /**
+     * 连接超时时间
+     */
+    private int connectTimeout = 20000;
+    /**
+     * socket读写超时时间
+     */
+    private int socketTimeout = 20000;
+    /**
+     * 从连接池获取连接的超时时间
+     */
+    private int connectionRequestTimeout = 20000;
+    /**
+     * 异步客户端的 IO 线程数，小于等于 0 时使用 CPU 核数
+     */
+    private int ioThreadCount = 0;
+    /**
+     * 是否使用 HTTP/2 客户端，需运行在 Java 11 及以上，仅对接口独立的连接池生效
+     */
+    private boolean http2 = false;
+
+    /**
+     * 从 Spring 环境读取配置，未配置的项保持默认值
+     *
+     * @param env
+     * @param prefix 配置项前缀，如 httprpc.http-client.
+     *
+     * @return
+     */
+    public static HttpClientConfig from(PropertyResolver env, String prefix) {
+        return new HttpClientConfig().merge(env, prefix);
+    }
+
+    /**
+     * 用 Spring 环境中的配置覆盖当前配置
+     *
+     * @param env 为 null 时不覆盖
+     * @param prefix
+     *
+     * @return this
+     */
+    public HttpClientConfig merge(PropertyResolver env, String prefix) {
+        if (env == null) {
+            return this;
+        }
+        maxTotal = env.getProperty(prefix + "max-total", Integer.class, maxTotal);
+        maxPerRoute = env.getProperty(prefix + "max-per-route", Integer.class, maxPerRoute);
+        validateAfterInactivity = env.getProperty(prefix + "validate-after-inactivity", Integer.class,
+                validateAfterInactivity);
+        idleTimeout = env.getProperty(prefix + "idle-timeout", Long.class, idleTimeout);
+        timeToLive = env.getProperty(prefix + "time-to-live", Long.class, timeToLive);
+        keepAlive = env.getProperty(prefix + "keep-alive", Long.class, keepAlive);
+        connectTimeout = env.getProperty(prefix + "connect-timeout", Integer.class, connectTimeout);
+        socketTimeout = env.getProperty(prefix + "socket-timeout", Integer.class, socketTimeout);
+        connectionRequestTimeout = env.getProperty(prefix + "connection-request-timeout", Integer.class,
+                connectionRequestTimeout);
+        ioThreadCount = env.getProperty(prefix + "io-thread-count", Integer.class, ioThreadCount);
+        http2 = env.getProperty(prefix + "http2", Boolean.class, http2);
+        return this;
+    }
+
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    public void setMaxTotal(int maxTotal) {
+        this.maxTotal = maxTotal;
+    }
+
+    public int getMaxPerRoute() {
+        return maxPerRoute;
+    }
+
+    public void setMaxPerRoute(int maxPerRoute) {
+        this.maxPerRoute = maxPerRoute;
+    }
+
+    public int getValidateAfterInactivity() {
+        return validateAfterInactivity;
+    }
+
+    public void setValidateAfterInactivity(int validateAfterInactivity) {
+        this.validateAfterInactivity = validateAfterInactivity;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    public void setTimeToLive(long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    public long getKeepAlive() {
+        return keepAlive;
+    }
+
+    public void setKeepAlive(long keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public int getSocketTimeout() {
+        return socketTimeout;
+    }
+
+    public void setSocketTimeout(int socketTimeout) {
+        this.socketTimeout = socketTimeout;
+    }
+
+    public int getConnectionRequestTimeout() {
+        return connectionRequestTimeout;
+    }
+
+    public void setConnectionRequestTimeout(int connectionRequestTimeout) {
+        this.connectionRequestTimeout = connectionRequestTimeout;
+    }
+
+    public int getIoThreadCount() {
+        return ioThreadCount;
+    }
+
+    public void setIoThreadCount(int ioThreadCount) {
+        this.ioThreadCount = ioThreadCount;
+    }
+
+    public boolean isHttp2() {
+        return http2;
+    }
+
+    public void setHttp2(boolean http2) {
+        this.http2 = http2;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        HttpClientConfig that = (HttpClientConfig) o;
+        return maxTotal == that.maxTotal && maxPerRoute == that.maxPerRoute
+                && validateAfterInactivity == that.validateAfterInactivity && idleTimeout == that.idleTimeout
+                && timeToLive == that.timeToLive && keepAlive == that.keepAlive
+                && connectTimeout == that.connectTimeout && socketTimeout == that.socketTimeout
+                && connectionRequestTimeout == that.connectionRequestTimeout && ioThreadCount == that.ioThreadCount
+                && http2 == that.http2;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(maxTotal, maxPerRoute, validateAfterInactivity, idleTimeout, timeToLive, keepAlive,
+                connectTimeout, socketTimeout, connectionRequestTimeout, ioThreadCount, http2);
+    }
+
+    @Override
+    public String toString() {
+        return "HttpClientConfig{maxTotal=" + maxTotal + ", maxPerRoute=" + maxPerRoute
+                + ", validateAfterInactivity=" + validateAfterInactivity + ", idleTimeout=" + idleTimeout
+                + ", timeToLive=" + timeToLive + ", keepAlive=" + keepAlive + ", connectTimeout=" + connectTimeout
+                + ", socketTimeout=" + socketTimeout + ", connectionRequestTimeout=" + connectionRequestTimeout
+                + ", ioThreadCount=" + ioThreadCount + ", http2=" + http2 + "}";
+    }
+}
@@ -10,20 +10,23 @@ import java.text.SimpleDateFormat;
 import java.util.Locale;
 import java.util.Map;
 import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.http.Header;
 import org.apache.http.HttpResponse;
-import org.apache.http.HttpStatus;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.util.EntityUtils;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,7 +43,7 @@ public abstract class HttpClientHelper {
     /**
      * http client
      */
-    protected final static CloseableHttpClient HTTP_CLIENT;
+    protected static volatile CloseableHttpClient HTTP_CLIENT;
     /**
      * 超时时间
      */
@@ -48,12 +51,28 @@ public abstract class HttpClientHelper {
     /**
      * 配置信息
      */
-    protected final static RequestConfig REQUEST_CONFIG;
+    protected static volatile RequestConfig REQUEST_CONFIG;
+    /**
+     * 当前连接池配置
+     */
+    private static volatile HttpClientConfig config;
+    /**
+     * 替换客户端时加锁，关闭原客户端涉及 IO，使用 ReentrantLock 避免虚拟线程被固定在载体线程上
+     */
+    private final static ReentrantLock CONFIG_LOCK = new ReentrantLock();
 
     /**
      * 默认编码
      */
     protected final static String DEFAULT_CHARSET = "UTF-8";
+    /**
+     * 表单请求体类型
+     */
+    public final static String FORM_CONTENT_TYPE = "application/x-www-form-urlencoded;charset=utf8";
+    /**
+     * JSON 请求体类型
+     */
+    public final static String JSON_CONTENT_TYPE = "application/json;charset=utf8";
 
     protected static Logger logger = LoggerFactory.getLogger(HttpClientHelper.class);
 
@@ -62,18 +81,159 @@ public abstract class HttpClientHelper {
         OBJECT_MAPPER.setSerializationInclusion(JsonInclude.Include.NON_NULL);
         OBJECT_MAPPER.setDateFormat(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss"));
 
-        REQUEST_CONFIG = RequestConfig.custom()
+        configure(new HttpClientConfig());
+    }
+
+    /**
+     * 使用新的连接池配置替换默认客户端，配置未变化时不做处理
+     * <p>
+     * 原客户端会被关闭，其上进行中的请求可能失败，应在应用启动、发起请求前调用一次。
+     * {@link com.anlystar.common.httprpc.proxy.handler.ClientInvocationHandler} 不会调用本方法，
+     * Spring 环境中的配置与全局配置不同时使用按配置共享的连接池
+     *
+     * @param httpClientConfig
+     */
+    public static void configure(HttpClientConfig httpClientConfig) {
+        CONFIG_LOCK.lock();
+        try {
+            if (httpClientConfig.equals(config)) {
+                return;
+            }
+            CloseableHttpClient previous = HTTP_CLIENT;
+            REQUEST_CONFIG = createRequestConfig(httpClientConfig);
+            HTTP_CLIENT = createHttpClient(httpClientConfig);
+            config = httpClientConfig;
+            if (previous != null) {
+                try {
+                    previous.close();
+                } catch (IOException e) {
+                    logger.error(e.getMessage(), e);
+                }
+            }
+            logger.info("HttpClientHelper configured: {}", httpClientConfig);
+        } finally {
+            CONFIG_LOCK.unlock();
+        }
+    }
+
+    /**
+     * 按配置创建请求配置
+     *
+     * @param httpClientConfig
+     *
+     * @return
+     */
+    public static RequestConfig createRequestConfig(HttpClientConfig httpClientConfig) {
+        return RequestConfig.custom()
                 // 设置连接超时时间(单位毫秒)
-                .setConnectTimeout(TIMEOUT)
+                .setConnectTimeout(httpClientConfig.getConnectTimeout())
                 // 设置请求超时时间(单位毫秒)
-                .setConnectionRequestTimeout(TIMEOUT)
+                .setConnectionRequestTimeout(httpClientConfig.getConnectionRequestTimeout())
                 // socket读写超时时间(单位毫秒)
-                .setSocketTimeout(TIMEOUT)
+                .setSocketTimeout(httpClientConfig.getSocketTimeout())
                 // 设置是否允许重定向(默认为true)
                 .setRedirectsEnabled(true).build();
+    }
+
+    /**
+     * 按配置创建使用连接池的客户端
+     *
+     * @param httpClientConfig
+     *
+     * @return
+     */
+    public static CloseableHttpClient createHttpClient(HttpClientConfig httpClientConfig) {
+        PoolingHttpClientConnectionManager connManager = new PoolingHttpClientConnectionManager(
+                httpClientConfig.getTimeToLive(), TimeUnit.MILLISECONDS);
+        connManager.setMaxTotal(httpClientConfig.getMaxTotal());
+        connManager.setDefaultMaxPerRoute(httpClientConfig.getMaxPerRoute());
+        connManager.setValidateAfterInactivity(httpClientConfig.getValidateAfterInactivity());
+
+        long keepAlive = httpClientConfig.getKeepAlive();
+        HttpClientBuilder builder = HttpClientBuilder.create()
+                .setConnectionManager(connManager)
+                .setDefaultRequestConfig(createRequestConfig(httpClientConfig))
+                // 优先使用服务端 Keep-Alive 头中的 timeout
+                .setKeepAliveStrategy((response, context) -> {
+                    long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return duration > 0 ? duration : keepAlive;
+                })
+                .evictExpiredConnections();
+        if (httpClientConfig.getIdleTimeout() > 0) {
+            builder.evictIdleConnections(httpClientConfig.getIdleTimeout(), TimeUnit.MILLISECONDS);
+        }
+        return builder.build();
+    }
 
-        HTTP_CLIENT = HttpClientBuilder.create().build();
+    /**
+     * 当前的全局客户端
+     *
+     * @return
+     */
+    public static CloseableHttpClient getHttpClient() {
+        return HTTP_CLIENT;
+    }
 
+    /**
+     * 当前的全局连接池配置
+     *
+     * @return
+     */
+    public static HttpClientConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * 当前的全局请求配置
+     *
+     * @return
+     */
+    public static RequestConfig getRequestConfig() {
+        return REQUEST_CONFIG;
+    }
+
+    /**
+     * 拼接 GET 请求的 URL 参数，参数值按 UTF-8 编码
+     *
+     * @param pars 为 null 时返回空串
+     *
+     * @return
+     */
+    public static String toQueryString(Map<String, String> pars) {
+        StringJoiner joiner = new StringJoiner("&");
+        if (pars != null && !pars.isEmpty()) {
+            pars.forEach((k, v) -> {
+                if (v == null) {
+                    return;
+                }
+                try {
+                    joiner.add(String.format("%s=%s", k, URLEncoder.encode(v, "utf-8")));
+                } catch (Exception e) {
+                    logger.error(e.getMessage(), e);
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+        return joiner.toString();
+    }
+
+    /**
+     * 拼接 POST 表单请求体
+     *
+     * @param pars 为 null 时返回空串
+     *
+     * @return
+     */
+    public static String toFormString(Map<String, String> pars) {
+        StringJoiner joiner = new StringJoiner("&");
+        if (pars != null && !pars.isEmpty()) {
+            pars.forEach((k, v) -> {
+                if (v != null) {
+                    joiner.add(k + "=" + v);
+                }
+            });
+        }
+        return joiner.toString();
     }
 
     /**
@@ -131,27 +291,51 @@ public abstract class HttpClientHelper {
      */
     public static String get(String url, Map<String, String> headers, Map<String, String> pars, String charset)
             throws Exception {
-        // 参数
-        StringJoiner joiner = new StringJoiner("&");
+        return get(url, headers, pars, charset, ResponseReader.STRING);
+    }
 
-        if (pars != null && !pars.isEmpty()) {
-            pars.forEach((k, v) -> {
-                if (v == null) {
-                    return;
-                }
-                try {
-                    joiner.add(String.format("%s=%s", k, URLEncoder.encode(v, "utf-8")));
-                } catch (Exception e) {
-                    logger.error(e.getMessage(), e);
-                    throw new RuntimeException(e);
-                }
-            });
-        }
+    /**
+     * 处理 GET 请求，响应体直接交给 reader 流式读取
+     *
+     * @param url
+     * @param headers
+     * @param pars
+     * @param charset 响应编码，为空时从 Content-Type 中获取
+     * @param reader
+     *
+     * @return
+     *
+     * @throws Exception
+     */
+    public static <T> T get(String url, Map<String, String> headers, Map<String, String> pars, String charset,
+                            ResponseReader<T> reader) throws Exception {
+        return get(HTTP_CLIENT, REQUEST_CONFIG, url, headers, pars, charset, reader);
+    }
 
+    /**
+     * 处理 GET 请求，使用指定的客户端
+     *
+     * @param client
+     * @param requestConfig 请求配置，为 null 时使用客户端的默认配置
+     * @param url
+     * @param headers
+     * @param pars
+     * @param charset 响应编码，为空时从 Content-Type 中获取
+     * @param reader
+     *
+     * @return
+     *
+     * @throws Exception
+     */
+    public static <T> T get(CloseableHttpClient client, RequestConfig requestConfig, String url,
+                            Map<String, String> headers, Map<String, String> pars,
+                            String charset, ResponseReader<T> reader) throws Exception {
         // 创建Get请求
-        HttpGet httpGet = new HttpGet(url + "?" + joiner.toString());
+        HttpGet httpGet = new HttpGet(url + "?" + toQueryString(pars));
         // 将上面的配置信息 运用到这个Get请求里
-        httpGet.setConfig(REQUEST_CONFIG);
+        if (requestConfig != null) {
+            httpGet.setConfig(requestConfig);
+        }
 
         if (headers != null && !headers.isEmpty()) {
             headers.forEach(httpGet::setHeader);
@@ -160,8 +344,8 @@ public abstract class HttpClientHelper {
         httpGet.setHeader("Accept-Encoding", "gzip, deflate");
 
         // 响应模型
-        try (CloseableHttpResponse response = HTTP_CLIENT.execute(httpGet)) {
-            return parseResponse(response);
+        try (CloseableHttpResponse response = client.execute(httpGet)) {
+            return ResponseDecoder.decode(response, charset, reader);
         } catch (Exception e) {
             logger.error(e.getMessage(), e);
             throw e;
@@ -210,36 +394,65 @@ public abstract class HttpClientHelper {
      */
     public static String post(String url, Map<String, String> headers, Map<String, String> pars, String charset)
             throws Exception {
-        // 参数
-        StringJoiner joiner = new StringJoiner("&");
+        return post(url, headers, pars, charset, ResponseReader.STRING);
+    }
 
-        if (pars != null && !pars.isEmpty()) {
-            pars.forEach((k, v) -> {
-                if (v != null) {
-                    joiner.add(k + "=" + v);
-                }
-            });
-        }
+    /**
+     * 处理 POST 请求，响应体直接交给 reader 流式读取
+     *
+     * @param url
+     * @param headers
+     * @param pars
+     * @param charset 响应编码，为空时从 Content-Type 中获取
+     * @param reader
+     *
+     * @return
+     *
+     * @throws Exception
+     */
+    public static <T> T post(String url, Map<String, String> headers, Map<String, String> pars, String charset,
+                             ResponseReader<T> reader) throws Exception {
+        return post(HTTP_CLIENT, REQUEST_CONFIG, url, headers, pars, charset, reader);
+    }
 
+    /**
+     * 处理 POST 请求，使用指定的客户端
+     *
+     * @param client
+     * @param requestConfig 请求配置，为 null 时使用客户端的默认配置
+     * @param url
+     * @param headers
+     * @param pars
+     * @param charset 响应编码，为空时从 Content-Type 中获取
+     * @param reader
+     *
+     * @return
+     *
+     * @throws Exception
+     */
+    public static <T> T post(CloseableHttpClient client, RequestConfig requestConfig, String url,
+                             Map<String, String> headers, Map<String, String> pars,
+                             String charset, ResponseReader<T> reader) throws Exception {
         // 创建Post请求
         HttpPost httpPost = new HttpPost(url);
         // 将上面的配置信息 运用到这个Post请求里
-        httpPost.setConfig(REQUEST_CONFIG);
+        if (requestConfig != null) {
+            httpPost.setConfig(requestConfig);
+        }
 
         if (headers != null && !headers.isEmpty()) {
             headers.forEach(httpPost::setHeader);
         }
 
         // 设置ContentType
-        httpPost.setHeader("Content-Type", "application/x-www-form-urlencoded;charset=utf8");
+        httpPost.setHeader("Content-Type", FORM_CONTENT_TYPE);
         httpPost.setHeader("Accept-Encoding", "gzip, deflate");
-        StringEntity entity = new StringEntity(joiner.toString(), "utf-8");
-        entity.setContentEncoding("UTF-8");
+        StringEntity entity = new StringEntity(toFormString(pars), "utf-8");
         httpPost.setEntity(entity);
 
         // 响应模型
-        try (CloseableHttpResponse response = HTTP_CLIENT.execute(httpPost)) {
-            return parseResponse(response);
+        try (CloseableHttpResponse response = client.execute(httpPost)) {
+            return ResponseDecoder.decode(response, charset, reader);
         } catch (Exception e) {
             logger.error(e.getMessage(), e);
             throw e;
@@ -288,26 +501,84 @@ public abstract class HttpClientHelper {
      */
     public static String postJson(String url, Map<String, String> headers, Object json, String charset)
             throws Exception {
+        return postJson(url, headers, json, charset, ResponseReader.STRING);
+    }
+
+    /**
+     * 处理 PostJson 请求，响应体直接交给 reader 流式读取
+     *
+     * @param url
+     * @param headers
+     * @param json
+     * @param charset 响应编码，为空时从 Content-Type 中获取
+     * @param reader
+     *
+     * @return
+     *
+     * @throws Exception
+     */
+    public static <T> T postJson(String url, Map<String, String> headers, Object json, String charset,
+                                 ResponseReader<T> reader) throws Exception {
+        return postJson(url, headers, OBJECT_MAPPER.writeValueAsBytes(json), charset, reader);
+    }
+
+    /**
+     * 处理 PostJson 请求，请求体为已序列化的 UTF-8 JSON
+     *
+     * @param url
+     * @param headers
+     * @param body
+     * @param charset 响应编码，为空时从 Content-Type 中获取
+     * @param reader
+     *
+     * @return
+     *
+     * @throws Exception
+     */
+    public static <T> T postJson(String url, Map<String, String> headers, byte[] body, String charset,
+                                 ResponseReader<T> reader) throws Exception {
+        return postJson(HTTP_CLIENT, REQUEST_CONFIG, url, headers, body, charset, reader);
+    }
+
+    /**
+     * 处理 PostJson 请求，使用指定的客户端
+     *
+     * @param client
+     * @param requestConfig 请求配置，为 null 时使用客户端的默认配置
+     * @param url
+     * @param headers
+     * @param body
+     * @param charset 响应编码，为空时从 Content-Type 中获取
+     * @param reader
+     *
+     * @return
+     *
+     * @throws Exception
+     */
+    public static <T> T postJson(CloseableHttpClient client, RequestConfig requestConfig, String url,
+                                 Map<String, String> headers, byte[] body,
+                                 String charset, ResponseReader<T> reader) throws Exception {
 
         // 创建POST请求
         HttpPost httpPost = new HttpPost(url);
         // 将上面的配置信息 运用到这个POST请求里
-        httpPost.setConfig(REQUEST_CONFIG);
+        if (requestConfig != null) {
+            httpPost.setConfig(requestConfig);
+        }
 
         if (headers != null && !headers.isEmpty()) {
             headers.forEach(httpPost::setHeader);
         }
 
         // 设置ContentType
-        httpPost.setHeader("Content-Type", "application/json;charset=utf8");
+        httpPost.setHeader("Content-Type", JSON_CONTENT_TYPE);
         httpPost.setHeader("Accept-Encoding", "gzip, deflate");
-        StringEntity entity = new StringEntity(OBJECT_MAPPER.writeValueAsString(json), "utf-8");
-        entity.setContentEncoding("UTF-8");
+        ByteArrayEntity entity = new ByteArrayEntity(body);
         httpPost.setEntity(entity);
 
         // 响应模型
-        try (CloseableHttpResponse response = HTTP_CLIENT.execute(httpPost)) {
-            return parseResponse(response);
+        try (CloseableHttpResponse response = client.execute(httpPost)) {
+            return ResponseDecoder.decode(response, charset, reader);
         } catch (Exception e) {
             logger.error(e.getMessage(), e);
             throw e;
@@ -348,12 +619,7 @@ public abstract class HttpClientHelper {
     }
 
     protected static String parseResponse(HttpResponse response) throws IOException {
-        if (HttpStatus.SC_OK == response.getStatusLine().getStatusCode()) {
-            return EntityUtils.toString(response.getEntity(), getCharset(null, response));
-        } else {
-            throw new RuntimeException(
-                    "http status error: " + response.getStatusLine().getStatusCode());
-        }
+        return ResponseDecoder.decode(response, null, ResponseReader.STRING);
     }
 
 }
@@ -0,0 +1,30 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.helper;
+
+/**
+ * 响应状态码不是 200
+ */
+public class HttpStatusException extends RuntimeException {
+
+    private final int statusCode;
+
+    public HttpStatusException(int statusCode) {
+        super("http status error: " + statusCode);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * 是否为服务端错误，即 5xx
+     *
+     * @return
+     */
+    public boolean isServerError() {
+        return statusCode >= 500;
+    }
+}
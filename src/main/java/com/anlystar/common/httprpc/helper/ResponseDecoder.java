@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.helper;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.entity.DeflateDecompressingEntity;
+import org.apache.http.client.entity.GzipDecompressingEntity;
+
+/**
+ * 流式解码 HTTP 响应
+ * <p>
+ * 响应体不再整体读入字符串，而是按 Content-Encoding 边解压边交给 {@link ResponseReader}，
+ * 同步客户端已自动解压的响应不会重复解压
+ */
+public abstract class ResponseDecoder {
+
+    /**
+     * 默认编码
+     */
+    public final static Charset DEFAULT_CHARSET = StandardCharsets.UTF_8;
+
+    private final static Pattern CHARSET_PATTERN = Pattern.compile("(?i)\\bcharset=\\s*\"?([^\\s;\"]*)");
+
+    /**
+     * 检查响应状态并读取响应体
+     *
+     * @param response
+     * @param charset 指定的编码，为空时从 Content-Type 中获取
+     * @param reader
+     * @param <T>
+     *
+     * @return
+     *
+     * @throws IOException
+     */
+    public static <T> T decode(HttpResponse response, String charset, ResponseReader<T> reader) throws IOException {
+        checkStatus(response);
+        try (InputStream content = getContent(response.getEntity())) {
+            return reader.read(content, getCharset(charset, response));
+        }
+    }
+
+    /**
+     * 检查响应状态，非 200 时抛出异常
+     *
+     * @param response
+     *
+     * @throws HttpStatusException
+     */
+    public static void checkStatus(HttpResponse response) {
+        if (HttpStatus.SC_OK != response.getStatusLine().getStatusCode()) {
+            throw new HttpStatusException(response.getStatusLine().getStatusCode());
+        }
+    }
+
+    /**
+     * 获取解压后的响应体
+     *
+     * @param entity
+     *
+     * @return entity 为 null 时返回空流
+     *
+     * @throws IOException
+     */
+    public static InputStream getContent(HttpEntity entity) throws IOException {
+        if (entity == null) {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+        Header contentEncoding = entity.getContentEncoding();
+        if (contentEncoding != null) {
+            String encoding = contentEncoding.getValue().trim().toLowerCase(Locale.ENGLISH);
+            if ("gzip".equals(encoding) || "x-gzip".equals(encoding)) {
+                return new GzipDecompressingEntity(entity).getContent();
+            } else if ("deflate".equals(encoding)) {
+                return new DeflateDecompressingEntity(entity).getContent();
+            }
+        }
+        return entity.getContent();
+    }
+
+    /**
+     * 获取响应编码
+     *
+     * @param charset 指定的编码，为空时从 Content-Type 中获取
+     * @param response
+     *
+     * @return 未指定且无法识别时返回 UTF-8
+     */
+    public static Charset getCharset(String charset, HttpResponse response) {
+        if (charset != null && !"".equals(charset)) {
+            return Charset.forName(charset);
+        }
+
+        Header contentType = response.getFirstHeader("Content-Type");
+        if (contentType != null) {
+            Matcher m = CHARSET_PATTERN.matcher(contentType.getValue());
+            if (m.find()) {
+                String name = m.group(1).trim();
+                if (Charset.isSupported(name)) {
+                    return Charset.forName(name);
+                }
+                name = name.toUpperCase(Locale.ENGLISH);
+                if (Charset.isSupported(name)) {
+                    return Charset.forName(name);
+                }
+            }
+        }
+        return DEFAULT_CHARSET;
+    }
+}
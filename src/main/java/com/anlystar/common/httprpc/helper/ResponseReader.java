@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.helper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+/**
+ * 从响应体读取结果
+ * <p>
+ * content 已按 Content-Encoding 解压，读取完成后由调用方关闭
+ *
+ * @param <T>
+ */
+@FunctionalInterface
+public interface ResponseReader<T> {
+
+    /**
+     * 将响应体读取为字符串
+     */
+    ResponseReader<String> STRING = (content, charset) -> {
+        StringBuilder sb = new StringBuilder();
+        Reader reader = new InputStreamReader(content, charset);
+        char[] buf = new char[4096];
+        int len;
+        while ((len = reader.read(buf)) != -1) {
+            sb.append(buf, 0, len);
+        }
+        return sb.toString();
+    };
+
+    /**
+     * 读取响应体
+     *
+     * @param content 响应体
+     * @param charset 响应编码
+     *
+     * @return
+     *
+     * @throws IOException
+     */
+    T read(InputStream content, Charset charset) throws IOException;
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.helper;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 虚拟线程支持
+ * <p>
+ * 本类为 Java 8 版本，始终不支持虚拟线程。Java 21 及以上运行时加载多版本 jar 中
+ * META-INF/versions/21 下的同名实现
+ */
+public abstract class VirtualThreadHelper {
+
+    /**
+     * 当前运行时是否支持虚拟线程
+     *
+     * @return
+     */
+    public static boolean isSupported() {
+        return false;
+    }
+
+    /**
+     * 每个任务一个虚拟线程的执行器，全局共享，不需要关闭
+     *
+     * @return
+     *
+     * @throws UnsupportedOperationException 当前运行时不支持虚拟线程
+     */
+    public static ExecutorService getExecutor() {
+        throw new UnsupportedOperationException("当前运行时不支持虚拟线程 -> " + System.getProperty("java.version"));
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.metrics;
+
+/**
+ * 熔断器状态的 JMX 视图，比率为百分比，窗口内调用数不足时为 -1
+ */
+public interface CircuitBreakerMetricsMBean {
+
+    /**
+     * @return CLOSED、OPEN 或 HALF_OPEN
+     */
+    String getState();
+
+    double getFailureRate();
+
+    double getSlowCallRate();
+
+    /**
+     * 窗口内的调用数
+     *
+     * @return
+     */
+    int getBufferedCalls();
+
+    /**
+     * 被拒绝的调用数
+     *
+     * @return
+     */
+    long getNotPermittedCount();
+
+    /**
+     * 状态变化次数
+     *
+     * @return
+     */
+    long getStateTransitionCount();
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 将调用统计注册为 JMX MBean
+ * <p>
+ * ObjectName 形如 com.anlystar.httprpc:type=ClientMethod,client="接口名",method="方法签名"，
+ * 熔断器为 type=CircuitBreaker 并多一个 endpoint="服务端地址"
+ */
+public class JmxMetricsRegistry implements MetricsRegistry {
+
+    public final static String DOMAIN = "com.anlystar.httprpc";
+
+    private static Logger logger = LoggerFactory.getLogger(JmxMetricsRegistry.class);
+
+    private final MBeanServer server;
+
+    public JmxMetricsRegistry() {
+        this(ManagementFactory.getPlatformMBeanServer());
+    }
+
+    public JmxMetricsRegistry(MBeanServer server) {
+        this.server = server;
+    }
+
+    @Override
+    public void register(Method method, MethodMetrics metrics) {
+        try {
+            ObjectName name = new ObjectName(DOMAIN + ":type=ClientMethod,client="
+                    + ObjectName.quote(method.getDeclaringClass().getName())
+                    + ",method=" + ObjectName.quote(MetricsRegistries.signature(method)));
+            server.registerMBean(metrics, name);
+        } catch (InstanceAlreadyExistsException e) {
+            // 同一接口被不同 ClassLoader 加载时只保留第一个
+            logger.warn("MBean 已存在 -> {}", metrics.getName());
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void registerCircuitBreaker(Method method, String endpoint, CircuitBreakerMetricsMBean circuitBreaker) {
+        try {
+            ObjectName name = new ObjectName(DOMAIN + ":type=CircuitBreaker,client="
+                    + ObjectName.quote(method.getDeclaringClass().getName())
+                    + ",method=" + ObjectName.quote(MetricsRegistries.signature(method))
+                    + ",endpoint=" + ObjectName.quote(endpoint));
+            server.registerMBean(new StandardMBean(circuitBreaker, CircuitBreakerMetricsMBean.class), name);
+        } catch (InstanceAlreadyExistsException e) {
+            logger.warn("MBean 已存在 -> {}", endpoint);
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+        }
+    }
+}
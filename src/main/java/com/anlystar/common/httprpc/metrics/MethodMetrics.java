@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.metrics;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.concurrent.FutureCallback;
+
+import com.anlystar.common.httprpc.helper.DeadlineExceededException;
+
+/**
+ * 单个接口方法的调用统计
+ * <p>
+ * 调用开始时 {@link #start()}，结束时 {@link #stop(long, Throwable)}。
+ * 超时（连接、读取、连接池等待）单独计数，不计入失败数；取消的调用由 {@link #cancelled(long)} 单独计数，
+ * 不计入耗时
+ */
+public class MethodMetrics implements MethodMetricsMBean {
+
+    private final static double NANOS_PER_MILLI = 1000_000D;
+
+    private final String name;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder success = new LongAdder();
+    private final LongAdder failure = new LongAdder();
+    private final LongAdder timeout = new LongAdder();
+    private final LongAdder inFlight = new LongAdder();
+    private final LongAdder hedged = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+
+    public MethodMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return 形如 com.example.UserClient.getUser(long)
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 调用开始
+     *
+     * @return 开始时间，传给 {@link #stop(long, Throwable)}
+     */
+    public long start() {
+        inFlight.increment();
+        return System.nanoTime();
+    }
+
+    /**
+     * 调用结束
+     *
+     * @param start {@link #start()} 的返回值
+     * @param error 失败的异常，成功时为 null
+     */
+    public void stop(long start, Throwable error) {
+        inFlight.decrement();
+        latency.record(System.nanoTime() - start);
+        if (error == null) {
+            success.increment();
+        } else if (isTimeout(error)) {
+            timeout.increment();
+        } else {
+            failure.increment();
+        }
+    }
+
+    /**
+     * 调用被取消，不记录耗时
+     *
+     * @param start {@link #start()} 的返回值
+     */
+    public void cancelled(long start) {
+        inFlight.decrement();
+        cancelled.increment();
+    }
+
+    /**
+     * 发送了一个对冲请求
+     */
+    public void hedged() {
+        hedged.increment();
+    }
+
+    /**
+     * 包装调用方的回调，在回调前记录调用结束
+     *
+     * @param callback
+     * @param start {@link #start()} 的返回值
+     *
+     * @return
+     */
+    public FutureCallback<HttpResponse> wrap(FutureCallback<HttpResponse> callback, long start) {
+        return new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse result) {
+                stop(start, null);
+                callback.completed(result);
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                stop(start, ex);
+                callback.failed(ex);
+            }
+
+            @Override
+            public void cancelled() {
+                MethodMetrics.this.cancelled(start);
+                callback.cancelled();
+            }
+        };
+    }
+
+    private static boolean isTimeout(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            if (t instanceof InterruptedIOException || t instanceof TimeoutException
+                    || t instanceof DeadlineExceededException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    @Override
+    public long getSuccessCount() {
+        return success.sum();
+    }
+
+    @Override
+    public long getFailureCount() {
+        return failure.sum();
+    }
+
+    @Override
+    public long getTimeoutCount() {
+        return timeout.sum();
+    }
+
+    @Override
+    public long getInFlight() {
+        return inFlight.sum();
+    }
+
+    @Override
+    public long getHedgedCount() {
+        return hedged.sum();
+    }
+
+    @Override
+    public long getCancelledCount() {
+        return cancelled.sum();
+    }
+
+    @Override
+    public long getCount() {
+        return latency.getCount();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        return latency.getMean() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return latency.getMax() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getP50Millis() {
+        return latency.getPercentile(50) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getP90Millis() {
+        return latency.getPercentile(90) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getP99Millis() {
+        return latency.getPercentile(99) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getP999Millis() {
+        return latency.getPercentile(99.9) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public void reset() {
+        latency.reset();
+        success.reset();
+        failure.reset();
+        timeout.reset();
+        hedged.reset();
+        cancelled.reset();
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.metrics;
+
+/**
+ * 接口方法调用统计的 JMX 视图，耗时单位为毫秒
+ */
+public interface MethodMetricsMBean {
+
+    long getSuccessCount();
+
+    long getFailureCount();
+
+    long getTimeoutCount();
+
+    long getInFlight();
+
+    /**
+     * 发送的对冲请求数
+     *
+     * @return
+     */
+    long getHedgedCount();
+
+    /**
+     * 被取消的调用数，不计入成功、失败和耗时统计
+     *
+     * @return
+     */
+    long getCancelledCount();
+
+    long getCount();
+
+    double getMeanMillis();
+
+    double getMaxMillis();
+
+    double getP50Millis();
+
+    double getP90Millis();
+
+    double getP99Millis();
+
+    double getP999Millis();
+
+    /**
+     * 清空计数和耗时统计，不影响进行中的调用数
+     */
+    void reset();
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.metrics;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 调用统计注册表
+ * <p>
+ * 每个接口方法对应一个全局唯一的 {@link MethodMetrics}，首次获取时通知所有 {@link MetricsRegistry}。
+ * 默认注册到 JMX，系统属性 httprpc.metrics.jmx=false 时关闭；其余实现通过 META-INF/services 加载
+ */
+public abstract class MetricsRegistries {
+
+    /**
+     * 系统属性，是否注册 JMX MBean
+     */
+    public final static String JMX_PROPERTY = "httprpc.metrics.jmx";
+
+    private static Logger logger = LoggerFactory.getLogger(MetricsRegistries.class);
+
+    private final static Map<Method, MethodMetrics> METRICS = new ConcurrentHashMap<>();
+
+    /**
+     * 熔断器状态，按接口方法和服务端地址
+     */
+    private final static Map<Method, Map<String, CircuitBreakerMetricsMBean>> CIRCUIT_BREAKERS =
+            new ConcurrentHashMap<>();
+
+    private final static List<MetricsRegistry> REGISTRIES = new CopyOnWriteArrayList<>();
+
+    static {
+        if (!"false".equalsIgnoreCase(System.getProperty(JMX_PROPERTY))) {
+            REGISTRIES.add(new JmxMetricsRegistry());
+        }
+        try {
+            for (MetricsRegistry registry : ServiceLoader.load(MetricsRegistry.class)) {
+                REGISTRIES.add(registry);
+            }
+        } catch (Throwable e) {
+            logger.error("加载 MetricsRegistry 失败", e);
+        }
+    }
+
+    /**
+     * 添加导出扩展，已有的方法统计会立即通知
+     *
+     * @param registry
+     */
+    public static void addRegistry(MetricsRegistry registry) {
+        REGISTRIES.add(registry);
+        METRICS.forEach(registry::register);
+        CIRCUIT_BREAKERS.forEach((method, breakers) -> breakers.forEach((endpoint, circuitBreaker) ->
+                registry.registerCircuitBreaker(method, endpoint, circuitBreaker)));
+    }
+
+    /**
+     * 获取接口方法的统计，首次获取时创建并通知所有扩展
+     *
+     * @param method
+     *
+     * @return
+     */
+    public static MethodMetrics forMethod(Method method) {
+        MethodMetrics metrics = METRICS.get(method);
+        if (metrics != null) {
+            return metrics;
+        }
+        MethodMetrics created = new MethodMetrics(method.getDeclaringClass().getName() + "." + signature(method));
+        metrics = METRICS.putIfAbsent(method, created);
+        if (metrics != null) {
+            return metrics;
+        }
+        for (MetricsRegistry registry : REGISTRIES) {
+            try {
+                registry.register(method, created);
+            } catch (Exception e) {
+                logger.error(e.getMessage(), e);
+            }
+        }
+        return created;
+    }
+
+    /**
+     * 通知所有扩展新的熔断器，同一方法和地址只通知一次
+     *
+     * @param method
+     * @param endpoint
+     * @param circuitBreaker
+     */
+    public static void registerCircuitBreaker(Method method, String endpoint,
+                                              CircuitBreakerMetricsMBean circuitBreaker) {
+        if (CIRCUIT_BREAKERS.computeIfAbsent(method, m -> new ConcurrentHashMap<>())
+                .putIfAbsent(endpoint, circuitBreaker) != null) {
+            return;
+        }
+        for (MetricsRegistry registry : REGISTRIES) {
+            try {
+                registry.registerCircuitBreaker(method, endpoint, circuitBreaker);
+            } catch (Exception e) {
+                logger.error(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * 所有已创建的方法统计
+     *
+     * @return
+     */
+    public static Map<Method, MethodMetrics> getAll() {
+        return Collections.unmodifiableMap(METRICS);
+    }
+
+    /**
+     * 方法签名，形如 getUser(long,String)
+     *
+     * @param method
+     *
+     * @return
+     */
+    public static String signature(Method method) {
+        StringJoiner joiner = new StringJoiner(",", method.getName() + "(", ")");
+        for (Class<?> type : method.getParameterTypes()) {
+            joiner.add(type.getSimpleName());
+        }
+        return joiner.toString();
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.metrics;
+
+import java.lang.reflect.Method;
+
+/**
+ * 调用统计的导出扩展点
+ * <p>
+ * 通过 META-INF/services 注册或调用 {@link MetricsRegistries#addRegistry(MetricsRegistry)} 添加，
+ * 每个接口方法首次调用时通知一次，之后由实现类自行读取 {@link MethodMetrics}
+ */
+public interface MetricsRegistry {
+
+    /**
+     * 接口方法开始统计
+     *
+     * @param method 接口方法
+     * @param metrics 该方法的统计
+     */
+    void register(Method method, MethodMetrics metrics);
+
+    /**
+     * 接口方法访问某个服务端地址的熔断器创建
+     *
+     * @param method 接口方法
+     * @param endpoint 服务端地址，形如 http://host:port
+     * @param circuitBreaker 熔断器状态
+     */
+    default void registerCircuitBreaker(Method method, String endpoint, CircuitBreakerMetricsMBean circuitBreaker) {
+    }
+}
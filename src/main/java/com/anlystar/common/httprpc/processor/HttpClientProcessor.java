@@ -0,0 +1,381 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+
+import com.anlystar.common.httprpc.annotation.CallFunction;
+import com.anlystar.common.httprpc.annotation.Collapse;
+import com.anlystar.common.httprpc.annotation.HttpRequest;
+import com.anlystar.common.httprpc.annotation.PathVariable;
+import com.anlystar.common.httprpc.annotation.ReqParam;
+import com.anlystar.common.httprpc.annotation.ReqSign;
+import com.anlystar.common.httprpc.annotation.RequestBody;
+import com.anlystar.common.httprpc.annotation.RequestMethod;
+import com.anlystar.common.httprpc.proxy.ClientProxyFactory;
+
+/**
+ * 编译期为带 {@link HttpRequest} 注解方法的接口生成实现类
+ * <p>
+ * 生成的类名为 接口名 + {@link ClientProxyFactory#GENERATED_SUFFIX}，{@link ClientProxyFactory} 优先使用生成的实现类，
+ * 不存在时退回到动态代理。String、基本数据类型及其包装类参数直接在生成代码中处理，其余参数交给
+ * {@link com.anlystar.common.httprpc.proxy.handler.ClientInvocationHandler} 处理
+ */
+public class HttpClientProcessor extends AbstractProcessor {
+
+    private static final String HANDLER = "com.anlystar.common.httprpc.proxy.handler.ClientInvocationHandler";
+    private static final String PLAN = "com.anlystar.common.httprpc.proxy.handler.InvocationPlan";
+    private static final String TEMPLATE = "com.anlystar.common.httprpc.proxy.handler.UrlTemplate";
+    private static final String FUTURE_CALLBACK = "org.apache.http.concurrent.FutureCallback";
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(HttpRequest.class.getCanonicalName());
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Set<TypeElement> interfaces = new LinkedHashSet<>();
+        for (Element element : roundEnv.getElementsAnnotatedWith(HttpRequest.class)) {
+            if (element.getKind() == ElementKind.METHOD
+                    && element.getEnclosingElement().getKind() == ElementKind.INTERFACE) {
+                interfaces.add((TypeElement) element.getEnclosingElement());
+            }
+        }
+        for (TypeElement clientInterface : interfaces) {
+            try {
+                generate(clientInterface);
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "生成客户端实现类失败: " + e.getMessage(), clientInterface);
+            }
+        }
+        return false;
+    }
+
+    private void generate(TypeElement clientInterface) throws IOException {
+        Elements elements = processingEnv.getElementUtils();
+        Types types = processingEnv.getTypeUtils();
+
+        List<ExecutableElement> methods = new ArrayList<>();
+        for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(clientInterface))) {
+            if (method.getEnclosingElement().getKind() == ElementKind.INTERFACE
+                    && method.getModifiers().contains(Modifier.ABSTRACT)) {
+                methods.add(method);
+            }
+        }
+
+        // 泛型接口和泛型方法交给动态代理处理
+        boolean generic = !clientInterface.getTypeParameters().isEmpty()
+                || clientInterface.getModifiers().contains(Modifier.PRIVATE);
+        for (ExecutableElement method : methods) {
+            generic |= !method.getTypeParameters().isEmpty();
+        }
+        if (generic) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+                    "泛型或私有接口不生成实现类，使用动态代理", clientInterface);
+            return;
+        }
+
+        // 未标注 HttpRequest 的方法由动态代理在调用时报错，与未生成实现类时一致
+        for (ExecutableElement method : methods) {
+            if (method.getAnnotation(HttpRequest.class) == null) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+                        "接口存在未标注 HttpRequest 的方法，不生成实现类，使用动态代理", method);
+                return;
+            }
+        }
+
+        PackageElement pkg = elements.getPackageOf(clientInterface);
+        String packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+        String interfaceName = clientInterface.getQualifiedName().toString();
+        String binaryName = elements.getBinaryName(clientInterface).toString();
+        String simpleName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1))
+                .replace('$', '_') + ClientProxyFactory.GENERATED_SUFFIX;
+        String className = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+
+        DeclaredType interfaceType = (DeclaredType) clientInterface.asType();
+
+        StringBuilder out = new StringBuilder(4096);
+        if (!packageName.isEmpty()) {
+            out.append("package ").append(packageName).append(";\n\n");
+        }
+        out.append("/**\n * 由 ").append(getClass().getName()).append(" 生成，请勿修改\n */\n");
+        out.append("@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n");
+        out.append("public final class ").append(simpleName).append(" implements ").append(interfaceName)
+                .append(" {\n\n");
+        out.append("    private final ").append(HANDLER).append(" handler;\n");
+        for (int m = 0; m < methods.size(); m++) {
+            out.append("    private final ").append(PLAN).append(" plan").append(m).append(";\n");
+        }
+
+        out.append("\n    public ").append(simpleName).append("(").append(HANDLER).append(" handler) {\n");
+        out.append("        this.handler = handler;\n");
+        for (int m = 0; m < methods.size(); m++) {
+            ExecutableElement method = methods.get(m);
+            out.append("        this.plan").append(m).append(" = handler.getPlan(").append(interfaceName)
+                    .append(".class, \"").append(method.getSimpleName()).append('"');
+            ExecutableType methodType = (ExecutableType) types.asMemberOf(interfaceType, method);
+            for (TypeMirror parameterType : methodType.getParameterTypes()) {
+                out.append(", ").append(types.erasure(parameterType)).append(".class");
+            }
+            out.append(");\n");
+        }
+        out.append("    }\n");
+
+        for (int m = 0; m < methods.size(); m++) {
+            ExecutableElement method = methods.get(m);
+            ExecutableType methodType = (ExecutableType) types.asMemberOf(interfaceType, method);
+            writeMethod(out, m, method, methodType);
+        }
+        out.append("}\n");
+
+        try (Writer writer = processingEnv.getFiler().createSourceFile(className, clientInterface).openWriter()) {
+            writer.write(out.toString());
+        }
+    }
+
+    private void writeMethod(StringBuilder out, int m, ExecutableElement method, ExecutableType methodType) {
+        Types types = processingEnv.getTypeUtils();
+        List<? extends VariableElement> parameters = method.getParameters();
+        List<? extends TypeMirror> parameterTypes = methodType.getParameterTypes();
+        TypeMirror returnType = methodType.getReturnType();
+
+        out.append("\n    @Override\n    public ").append(returnType).append(' ').append(method.getSimpleName())
+                .append('(');
+        for (int i = 0; i < parameters.size(); i++) {
+            if (i > 0) {
+                out.append(", ");
+            }
+            TypeMirror type = parameterTypes.get(i);
+            if (method.isVarArgs() && i == parameters.size() - 1) {
+                out.append(((ArrayType) type).getComponentType()).append("... ");
+            } else {
+                out.append(type).append(' ');
+            }
+            out.append("arg").append(i);
+        }
+        out.append(')');
+        List<? extends TypeMirror> thrownTypes = methodType.getThrownTypes();
+        for (int i = 0; i < thrownTypes.size(); i++) {
+            out.append(i == 0 ? " throws " : ", ").append(thrownTypes.get(i));
+        }
+        out.append(" {\n");
+
+        HttpRequest httpRequest = method.getAnnotation(HttpRequest.class);
+
+        boolean postJson = httpRequest.method() == RequestMethod.POSTJSON;
+        int last = parameters.size() - 1;
+        boolean hasCallback = last >= 0 && parameters.get(last).getAnnotation(CallFunction.class) != null;
+        int requestCount = hasCallback ? last : parameters.size();
+
+        out.append("        ").append(PLAN).append(" plan = this.plan").append(m).append(";\n");
+        out.append("        if (plan.isValidationRequired()) {\n");
+        out.append("            handler.validate(this, plan, ").append(argsArray(parameters.size())).append(");\n");
+        out.append("        }\n");
+        if (method.getAnnotation(Collapse.class) != null) {
+            // 合并请求在 handler 中按批量方法组装参数
+            writeCall(out, "handler.collapse(plan, " + argsArray(parameters.size()) + ")", returnType, thrownTypes);
+            return;
+        }
+        out.append("        ").append(PLAN).append(".ParamSlot[] slots = plan.getSlots();\n");
+        boolean pathVariables = false;
+        for (int i = 0; i < requestCount; i++) {
+            pathVariables |= parameters.get(i).getAnnotation(PathVariable.class) != null;
+        }
+        out.append("        ").append(TEMPLATE).append(" template = handler.resolveUrlTemplate(plan);\n");
+        out.append("        String[] pathValues = ").append(pathVariables ? "new String[slots.length]" : "null")
+                .append(";\n");
+        out.append("        StringBuilder query = new StringBuilder();\n");
+        out.append("        java.util.Map<String, String> headers = new java.util.HashMap<>(plan.getStaticHeaders());\n");
+        if (postJson) {
+            out.append("        Object pars = ").append(requestCount > 0 ? "arg0" : "null").append(";\n");
+        } else if (requestCount > 0) {
+            out.append("        java.util.Map<String, String> pars = new java.util.HashMap<>();\n");
+        } else {
+            out.append("        java.util.Map<String, String> pars = null;\n");
+        }
+
+        String signArg = null;
+        for (int i = 0; i < parameters.size(); i++) {
+            if (hasCallback && i == last) {
+                continue;
+            }
+            VariableElement parameter = parameters.get(i);
+            TypeMirror type = parameterTypes.get(i);
+            String arg = "arg" + i;
+            boolean primitive = type.getKind().isPrimitive();
+            boolean string = isType(type, String.class);
+            boolean form = !postJson && i < requestCount;
+
+            if (parameter.getAnnotation(ReqSign.class) != null && string) {
+                signArg = arg;
+            }
+
+            if (!(primitive || string || isBoxed(type)) || parameter.getAnnotation(RequestBody.class) != null) {
+                out.append("        if (").append(arg).append(" != null) {\n");
+                out.append("            handler.renderUrlParam(slots[").append(i).append("], ").append(arg)
+                        .append(", pathValues, query);\n");
+                out.append("            handler.encodeHeaderParam(slots[").append(i).append("], ").append(arg)
+                        .append(", headers);\n");
+                if (form) {
+                    out.append("            handler.encodeFormParam(slots[").append(i).append("], ").append(arg)
+                            .append(", pars);\n");
+                }
+                out.append("        }\n");
+                continue;
+            }
+
+            PathVariable pathVariable = parameter.getAnnotation(PathVariable.class);
+            ReqParam reqParam = parameter.getAnnotation(ReqParam.class);
+            boolean sign = parameter.getAnnotation(ReqSign.class) != null && string;
+            if (pathVariable == null && reqParam == null) {
+                continue;
+            }
+
+            String indent = primitive ? "        " : "            ";
+            if (!primitive) {
+                out.append("        if (").append(arg).append(" != null) {\n");
+            }
+            out.append(indent).append("String value").append(i).append(" = String.valueOf(").append(arg)
+                    .append(");\n");
+            String value = "value" + i;
+            if (pathVariable != null) {
+                out.append(indent).append("pathValues[").append(i).append("] = ").append(value).append(";\n");
+            }
+            if (reqParam != null && reqParam.url()) {
+                out.append(indent).append("handler.appendUrlParam(query, slots[").append(i).append("], ")
+                        .append(value).append(");\n");
+            }
+            if (reqParam != null && reqParam.header() && !sign) {
+                out.append(indent).append("headers.put(slots[").append(i).append("].getParamName(), ")
+                        .append(value).append(");\n");
+            }
+            if (reqParam != null && !reqParam.header() && !reqParam.url() && form) {
+                out.append(indent).append("pars.put(slots[").append(i).append("].getParamName(), ")
+                        .append(value).append(");\n");
+            }
+            if (!primitive) {
+                out.append("        }\n");
+            }
+        }
+
+        out.append("        String requestUrl = template.render(pathValues, query);\n");
+        if (signArg != null) {
+            out.append("        handler.sign(plan, headers, pars, ").append(signArg).append(");\n");
+        }
+
+        String callback = "null";
+        if (hasCallback && isType(types.erasure(parameterTypes.get(last)), FUTURE_CALLBACK)) {
+            callback = "(" + FUTURE_CALLBACK + ") arg" + last;
+        }
+        writeCall(out, "handler.dispatch(plan, requestUrl, headers, pars, " + callback + ")", returnType,
+                thrownTypes);
+    }
+
+    /**
+     * 输出对 handler 的调用，按方法声明的异常转换调用中抛出的异常
+     */
+    private void writeCall(StringBuilder out, String call, TypeMirror returnType,
+                           List<? extends TypeMirror> thrownTypes) {
+        out.append("        try {\n");
+        out.append("            ");
+        if (returnType.getKind() != TypeKind.VOID) {
+            out.append("return (").append(returnType).append(") ");
+        }
+        out.append(call).append(";\n");
+        out.append("        } catch (RuntimeException | Error e) {\n            throw e;\n        }");
+        boolean throwable = false;
+        for (TypeMirror thrown : thrownTypes) {
+            if (isCoveredByOther(thrown, thrownTypes)) {
+                continue;
+            }
+            throwable |= isType(thrown, Throwable.class);
+            out.append(" catch (").append(thrown).append(" e) {\n            throw e;\n        }");
+        }
+        if (!throwable) {
+            out.append(" catch (Throwable e) {\n")
+                    .append("            throw new java.lang.reflect.UndeclaredThrowableException(e);\n        }");
+        }
+        out.append("\n    }\n");
+    }
+
+    private static String argsArray(int count) {
+        StringBuilder args = new StringBuilder("new Object[] {");
+        for (int i = 0; i < count; i++) {
+            args.append(i == 0 ? "" : ", ").append("arg").append(i);
+        }
+        return args.append('}').toString();
+    }
+
+    /**
+     * 已被 RuntimeException、Error 或其它声明的异常覆盖的异常不再单独 catch
+     */
+    private boolean isCoveredByOther(TypeMirror thrown, List<? extends TypeMirror> thrownTypes) {
+        Types types = processingEnv.getTypeUtils();
+        Elements elements = processingEnv.getElementUtils();
+        if (types.isSubtype(thrown, elements.getTypeElement(RuntimeException.class.getName()).asType())
+                || types.isSubtype(thrown, elements.getTypeElement(Error.class.getName()).asType())) {
+            return true;
+        }
+        for (TypeMirror other : thrownTypes) {
+            if (other != thrown && types.isSubtype(thrown, other) && !types.isSameType(thrown, other)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isBoxed(TypeMirror type) {
+        if (type.getKind() != TypeKind.DECLARED) {
+            return false;
+        }
+        try {
+            processingEnv.getTypeUtils().unboxedType(type);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static boolean isType(TypeMirror type, Class<?> clazz) {
+        return isType(type, clazz.getCanonicalName());
+    }
+
+    private static boolean isType(TypeMirror type, String name) {
+        return type.getKind() == TypeKind.DECLARED
+                && ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().contentEquals(name);
+    }
+}
@@ -6,6 +6,7 @@ package com.anlystar.common.httprpc.proxy;
 import org.springframework.core.env.Environment;
 
 import com.anlystar.common.httprpc.proxy.handler.ClientInvocationHandler;
+import com.anlystar.common.httprpc.transport.HttpTransport;
 import com.google.common.reflect.Reflection;
 
 /**
@@ -13,8 +14,67 @@ import com.google.common.reflect.Reflection;
  */
 public abstract class ClientProxyFactory {
 
+    /**
+     * 编译期生成的客户端实现类的类名后缀
+     */
+    public static final String GENERATED_SUFFIX = "_HttpRpcClient";
+
     public static <T> T createServiceProxy(Class<T> clientInterface, Environment env) {
-        return Reflection.newProxy(clientInterface, new ClientInvocationHandler(env));
+        return createServiceProxy(clientInterface, env, null);
+    }
+
+    /**
+     * 使用指定的客户端实现创建代理
+     *
+     * @param clientInterface
+     * @param env
+     * @param transport 为 null 时使用接口的独立连接池或全局客户端
+     * @param <T>
+     *
+     * @return
+     */
+    public static <T> T createServiceProxy(Class<T> clientInterface, Environment env, HttpTransport transport) {
+        ClientInvocationHandler handler = new ClientInvocationHandler(env, clientInterface, transport);
+        T client = createGeneratedClient(clientInterface, handler);
+        if (client != null) {
+            return client;
+        }
+        return Reflection.newProxy(clientInterface, handler);
+    }
+
+    /**
+     * 生成的客户端实现类的类名，嵌套接口用 _ 连接外部类名
+     *
+     * @param clientInterface
+     *
+     * @return
+     */
+    public static String generatedClassName(Class<?> clientInterface) {
+        Package pkg = clientInterface.getPackage();
+        String packageName = pkg == null ? "" : pkg.getName();
+        String binaryName = clientInterface.getName();
+        String simpleName = packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1);
+        return (packageName.isEmpty() ? "" : packageName + ".") + simpleName.replace('$', '_') + GENERATED_SUFFIX;
+    }
+
+    /**
+     * 存在编译期生成的实现类时直接实例化，否则返回 null
+     */
+    private static <T> T createGeneratedClient(Class<T> clientInterface, ClientInvocationHandler handler) {
+        Class<?> generated;
+        try {
+            generated = Class.forName(generatedClassName(clientInterface), true, clientInterface.getClassLoader());
+        } catch (ClassNotFoundException | LinkageError e) {
+            return null;
+        }
+        if (!clientInterface.isAssignableFrom(generated)) {
+            return null;
+        }
+        try {
+            return clientInterface.cast(generated.getConstructor(ClientInvocationHandler.class).newInstance(handler));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("无法实例化客户端实现类 -> " + generated.getName(), e);
+        }
     }
 
 }
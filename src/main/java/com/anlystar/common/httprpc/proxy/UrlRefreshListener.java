@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.proxy;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+
+import com.anlystar.common.httprpc.proxy.handler.BaseUrlResolver;
+
+/**
+ * Spring 环境刷新后清空 urlKey 解析缓存
+ * <p>
+ * 需要注册为 Spring Bean，除 {@link ContextRefreshedEvent} 外也响应 Spring Cloud 的配置刷新事件
+ */
+public class UrlRefreshListener implements ApplicationListener<ApplicationEvent> {
+
+    /**
+     * Spring Cloud 配置刷新事件，按类名匹配以避免依赖 spring-cloud-context
+     */
+    private final static Set<String> REFRESH_EVENTS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "org.springframework.cloud.context.environment.EnvironmentChangeEvent",
+            "org.springframework.cloud.context.scope.refresh.RefreshScopeRefreshedEvent")));
+
+    @Override
+    public void onApplicationEvent(ApplicationEvent event) {
+        if (event instanceof ContextRefreshedEvent || REFRESH_EVENTS.contains(event.getClass().getName())) {
+            BaseUrlResolver.refreshAll();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.proxy.handler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.Logger;
+import org.springframework.core.env.Environment;
+
+import com.anlystar.common.httprpc.annotation.RequestMethod;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * RPC 访问日志
+ * <p>
+ * 正常调用按采样率以 INFO 级别输出，耗时超过慢调用阈值或调用失败时总是以 WARN 级别输出。
+ * header 和参数只在确定输出日志后才序列化，且序列化到最大长度即停止。配置项：
+ * <ul>
+ * <li>httprpc.access-log.sample-rate 采样率，0 ~ 1，默认 1</li>
+ * <li>httprpc.access-log.max-payload-length header 和参数的最大输出长度，默认 2048</li>
+ * <li>httprpc.access-log.slow-threshold 慢调用阈值（毫秒），默认 1000</li>
+ * </ul>
+ */
+public class AccessLogger {
+
+    /**
+     * 配置项前缀
+     */
+    public final static String PREFIX = "httprpc.access-log.";
+
+    private final static String TRUNCATED = "...";
+
+    private final Logger logger;
+    private final ObjectMapper mapper;
+    private final double sampleRate;
+    private final int maxPayloadLength;
+    private final long slowThreshold;
+
+    public AccessLogger(Logger logger, ObjectMapper mapper, double sampleRate, int maxPayloadLength,
+                        long slowThreshold) {
+        this.logger = logger;
+        this.mapper = mapper;
+        this.sampleRate = sampleRate;
+        this.maxPayloadLength = maxPayloadLength;
+        this.slowThreshold = slowThreshold;
+    }
+
+    /**
+     * 从 Spring 环境读取配置
+     *
+     * @param logger
+     * @param mapper
+     * @param env 为 null 时使用默认配置
+     *
+     * @return
+     */
+    public static AccessLogger create(Logger logger, ObjectMapper mapper, Environment env) {
+        if (env == null) {
+            return new AccessLogger(logger, mapper, 1, 2048, 1000);
+        }
+        return new AccessLogger(logger, mapper,
+                env.getProperty(PREFIX + "sample-rate", Double.class, 1D),
+                env.getProperty(PREFIX + "max-payload-length", Integer.class, 2048),
+                env.getProperty(PREFIX + "slow-threshold", Long.class, 1000L));
+    }
+
+    /**
+     * 记录一次调用
+     *
+     * @param type 调用类型，RPC 或 Aysnc RPC
+     * @param requestMethod
+     * @param requestUrl
+     * @param headers
+     * @param pars
+     * @param start 开始时间（毫秒）
+     * @param error 调用失败的异常，成功时为 null
+     */
+    public void log(String type, RequestMethod requestMethod, String requestUrl, Object headers, Object pars,
+                    long start, Throwable error) {
+        long cost = System.currentTimeMillis() - start;
+        if (error != null || cost >= slowThreshold) {
+            if (logger.isWarnEnabled()) {
+                logger.warn("{} ==> url: {}, method: {}, header: {}, pars: {}, cost: {}ms, {}", type, requestUrl,
+                        requestMethod.name(), toPayload(headers), toPayload(pars), cost,
+                        error == null ? "slow" : "failed: " + error);
+            }
+        } else if (logger.isInfoEnabled() && sampled()) {
+            logger.info("{} ==> url: {}, method: {}, header: {}, pars: {}, cost: {}ms", type, requestUrl,
+                    requestMethod.name(), toPayload(headers), toPayload(pars), cost);
+        }
+    }
+
+    private boolean sampled() {
+        return sampleRate >= 1 || (sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate);
+    }
+
+    /**
+     * 序列化为 JSON，超过最大长度时截断
+     */
+    private String toPayload(Object obj) {
+        if (obj == null) {
+            return "null";
+        }
+        BoundedWriter writer = new BoundedWriter(maxPayloadLength);
+        try {
+            mapper.writeValue(writer, obj);
+        } catch (Exception e) {
+            // 超出长度的异常可能被 Jackson 包装，以写入状态为准
+            return writer.exceeded ? writer.sb.append(TRUNCATED).toString() : String.valueOf(obj);
+        }
+        return writer.sb.toString();
+    }
+
+    /**
+     * 写满后抛出异常以中断序列化
+     */
+    private static final class BoundedWriter extends Writer {
+
+        private final StringBuilder sb = new StringBuilder();
+        private final int limit;
+        private boolean exceeded;
+
+        BoundedWriter(int limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            int remaining = limit - sb.length();
+            if (len > remaining) {
+                if (!exceeded) {
+                    sb.append(cbuf, off, Math.max(remaining, 0));
+                    exceeded = true;
+                }
+                throw new LimitExceededException();
+            }
+            sb.append(cbuf, off, len);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static final class LimitExceededException extends IOException {
+
+        LimitExceededException() {
+            super(null, null);
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.proxy.handler;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 单个服务端地址的自适应并发限制，TCP Vegas 算法
+ * <p>
+ * 以观测到的最小耗时作为无排队耗时，按 limit * (1 - 无排队耗时 / 当前耗时) 估算下游的排队请求数：
+ * 排队少时增大限制，排队多或超时时减小限制。每隔一段样本重新探测无排队耗时，适应下游基线的变化
+ */
+public final class AdaptiveLimit {
+
+    /**
+     * 每 limit * PROBE_MULTIPLIER 个样本重新探测一次无排队耗时
+     */
+    private final static int PROBE_MULTIPLIER = 30;
+
+    private final String route;
+    private final int minLimit;
+    private final int maxLimit;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private double limit;
+    private int inFlight;
+    private long noLoadRtt;
+    private int samples;
+    private long rejected;
+
+    /**
+     * @param route 服务端地址
+     * @param initialLimit
+     * @param minLimit
+     * @param maxLimit
+     */
+    public AdaptiveLimit(String route, int initialLimit, int minLimit, int maxLimit) {
+        this.route = route;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * 申请发送一次请求，达到限制时最多等待 timeoutNanos
+     *
+     * @param timeoutNanos 小于等于 0 时不等待
+     *
+     * @return 超时仍未获得时返回 false
+     *
+     * @throws InterruptedException
+     */
+    public boolean acquire(long timeoutNanos) throws InterruptedException {
+        lock.lock();
+        try {
+            long remaining = timeoutNanos;
+            while (inFlight >= (int) limit) {
+                if (remaining <= 0) {
+                    rejected++;
+                    return false;
+                }
+                remaining = available.awaitNanos(remaining);
+            }
+            inFlight++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 请求完成，按耗时调整限制
+     *
+     * @param rttNanos 从申请成功到收到响应的耗时
+     * @param dropped 是否超时
+     */
+    public void release(long rttNanos, boolean dropped) {
+        lock.lock();
+        try {
+            int previous = (int) limit;
+            update(rttNanos, dropped);
+            inFlight--;
+            if ((int) limit > previous) {
+                available.signalAll();
+            } else {
+                available.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 请求未得到可用于估算的结果（被取消或连接失败），只释放名额
+     */
+    public void cancel() {
+        lock.lock();
+        try {
+            inFlight--;
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void update(long rtt, boolean dropped) {
+        if (rtt <= 0) {
+            return;
+        }
+        if (++samples >= limit * PROBE_MULTIPLIER) {
+            samples = 0;
+            noLoadRtt = rtt;
+            return;
+        }
+        if (noLoadRtt == 0 || rtt < noLoadRtt) {
+            noLoadRtt = rtt;
+            return;
+        }
+        double log = Math.max(1, Math.log10(limit));
+        double next;
+        double queue = limit * (1 - (double) noLoadRtt / rtt);
+        if (dropped || queue > 6 * log) {
+            next = limit - log;
+        } else if (inFlight * 2 < limit) {
+            // 请求量不足以压满限制时无法判断是否可以增大
+            return;
+        } else if (queue <= log) {
+            next = limit + 6 * log;
+        } else if (queue < 3 * log) {
+            next = limit + log;
+        } else {
+            return;
+        }
+        limit = Math.max(minLimit, Math.min(maxLimit, next));
+    }
+
+    public String getRoute() {
+        return route;
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return 无排队耗时，单位毫秒
+     */
+    public double getNoLoadRttMillis() {
+        lock.lock();
+        try {
+            return noLoadRtt / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getRejectedCount() {
+        lock.lock();
+        try {
+            return rejected;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return route + " limit=" + getLimit();
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.proxy.handler;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.core.env.Environment;
+
+/**
+ * 从 Spring 上下文中解析 {@link com.anlystar.common.httprpc.annotation.HttpRequest#urlKey()} 对应的 URL
+ * <p>
+ * 解析结果按 key 缓存，环境刷新后调用 {@link #refreshAll()} 使所有缓存失效
+ */
+public class BaseUrlResolver {
+
+    /**
+     * 全局刷新版本号
+     */
+    private final static AtomicInteger GENERATION = new AtomicInteger();
+
+    private final Environment env;
+
+    /**
+     * 缓存的 URL 及解析时的版本号，版本号落后时重新解析
+     */
+    private final ConcurrentMap<String, Entry> urls = new ConcurrentHashMap<>();
+
+    /**
+     * 当前实例的刷新版本号
+     */
+    private final AtomicInteger version = new AtomicInteger();
+
+    public BaseUrlResolver(Environment env) {
+        this.env = env;
+    }
+
+    /**
+     * 使所有 BaseUrlResolver 的缓存失效，在 Spring 环境刷新后调用
+     */
+    public static void refreshAll() {
+        GENERATION.incrementAndGet();
+    }
+
+    /**
+     * 使当前实例的缓存失效
+     */
+    public void refresh() {
+        version.incrementAndGet();
+        urls.clear();
+    }
+
+    /**
+     * 解析 URL
+     *
+     * @param urlKey
+     *
+     * @return 未配置时返回 null
+     */
+    public String resolve(String urlKey) {
+        // 先取版本号再读取配置，读取期间发生刷新时缓存的旧值在下次解析时作废
+        int generation = GENERATION.get();
+        int version = this.version.get();
+
+        Entry entry = urls.get(urlKey);
+        if (entry != null && entry.generation == generation && entry.version == version) {
+            return entry.url;
+        }
+        String url = env == null ? System.getProperty(urlKey) : env.getProperty(urlKey, System.getProperty(urlKey));
+        if (url != null && !"".equals(url)) {
+            urls.put(urlKey, new Entry(url, generation, version));
+        }
+        return url;
+    }
+
+    private static final class Entry {
+
+        private final String url;
+        private final int generation;
+        private final int version;
+
+        private Entry(String url, int generation, int version) {
+            this.url = url;
+            this.generation = generation;
+            this.version = version;
+        }
+    }
+}
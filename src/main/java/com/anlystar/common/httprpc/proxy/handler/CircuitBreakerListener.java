@@ -0,0 +1,22 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.proxy.handler;
+
+/**
+ * 熔断器状态变化事件，通过 {@link EndpointBreaker#addListener(CircuitBreakerListener)} 注册
+ * <p>
+ * 在触发状态变化的调用线程上通知，实现不应阻塞
+ */
+@FunctionalInterface
+public interface CircuitBreakerListener {
+
+    /**
+     * 状态变化
+     *
+     * @param breaker
+     * @param from
+     * @param to
+     */
+    void onStateTransition(EndpointBreaker breaker, EndpointBreaker.State from, EndpointBreaker.State to);
+}
@@ -0,0 +1,14 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.proxy.handler;
+
+/**
+ * 熔断器打开或半开时的试探调用已满，请求未发送
+ */
+public class CircuitBreakerOpenException extends RuntimeException {
+
+    public CircuitBreakerOpenException(String name) {
+        super("熔断器已打开，拒绝调用 -> " + name);
+    }
+}
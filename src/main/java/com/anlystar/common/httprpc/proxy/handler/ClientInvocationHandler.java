@@ -4,51 +4,79 @@
 package com.anlystar.common.httprpc.proxy.handler;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Array;
 import java.lang.reflect.Method;
-import java.lang.reflect.Parameter;
-import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.StringJoiner;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.commons.collections4.MapUtils;
 import org.apache.http.HttpResponse;
-import org.apache.http.HttpStatus;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.concurrent.FutureCallback;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.env.Environment;
 
-import com.anlystar.common.helper.DateHelper;
 import com.anlystar.common.helper.RSAHelper;
-import com.anlystar.common.httprpc.annotation.CallFunction;
+import com.anlystar.common.httprpc.annotation.CircuitBreaker;
 import com.anlystar.common.httprpc.annotation.HttpRequest;
 import com.anlystar.common.httprpc.annotation.PathVariable;
-import com.anlystar.common.httprpc.annotation.ReqHeader;
 import com.anlystar.common.httprpc.annotation.ReqParam;
 import com.anlystar.common.httprpc.annotation.ReqSign;
 import com.anlystar.common.httprpc.annotation.RequestBody;
 import com.anlystar.common.httprpc.annotation.RequestMethod;
+import com.anlystar.common.httprpc.callback.Callback;
+import com.anlystar.common.httprpc.callback.CallbackCompletableFuture;
 import com.anlystar.common.httprpc.callback.CallbackFuture;
-import com.anlystar.common.httprpc.helper.AsyncHttpClientHelper;
+import com.anlystar.common.httprpc.callback.CallbackListenableFuture;
+import com.anlystar.common.httprpc.callback.CallbackPublisher;
+import com.anlystar.common.httprpc.codec.BeanFlattener;
+import com.anlystar.common.httprpc.codec.ParamCodecs;
+import com.anlystar.common.httprpc.helper.Deadline;
+import com.anlystar.common.httprpc.helper.DeadlineExceededException;
+import com.anlystar.common.httprpc.helper.HttpClientConfig;
 import com.anlystar.common.httprpc.helper.HttpClientHelper;
+import com.anlystar.common.httprpc.helper.ResponseDecoder;
+import com.anlystar.common.httprpc.helper.ResponseReader;
 import com.anlystar.common.httprpc.helper.ValidationHelper;
+import com.anlystar.common.httprpc.helper.VirtualThreadHelper;
+import com.anlystar.common.httprpc.metrics.MethodMetrics;
 import com.anlystar.common.httprpc.model.BaseModel;
+import com.anlystar.common.httprpc.proxy.handler.InvocationPlan.ParamSlot;
+import com.anlystar.common.httprpc.transport.ApacheHttpTransport;
+import com.anlystar.common.httprpc.transport.HttpTransport;
+import com.anlystar.common.httprpc.transport.TransportRequest;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.Module;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.type.TypeFactory;
 import com.google.common.collect.Maps;
 import com.google.common.reflect.AbstractInvocationHandler;
@@ -59,7 +87,7 @@ import com.google.common.reflect.AbstractInvocationHandler;
  * postJson 方式的提交 仅支持一个参数，多个参数会忽略除第一个之外的参数
  * <p>
  * Post 提交方式 方法参数必须带 {@link ReqParam} 或 {@link PathVariable} 注解， 不带该注解的不解析
- * Post 提交方式 参数必须是 String 或 八种基本数据类型，否则抛出异常
+ * 参数值通过 {@link ParamCodecs} 编码，未注册编码器的类型抛出异常
  * Created by anliyong on 18/8/23.
  */
 @SuppressWarnings("unchecked")
@@ -80,10 +108,28 @@ public class ClientInvocationHandler extends AbstractInvocationHandler {
 
     private final static TypeFactory TYPE_FACTORY = TypeFactory.defaultInstance();
 
+    private final static String RPC = "RPC";
+    private final static String ASYNC_RPC = "Aysnc RPC";
+    /**
+     * BaseModel 展开为表单或 header 参数
+     */
+    protected final static BeanFlattener BEAN_FLATTENER;
+    /**
+     * 系统属性，启用 Jackson 字节码加速模块，取值 afterburner 或 blackbird，需自行引入对应的 jackson-module 依赖
+     */
+    public final static String JACKSON_MODULE_PROPERTY = "httprpc.jackson.module";
+    /**
+     * 配置项，为 true 时返回 Future、CompletableFuture 或 ListenableFuture 的异步方法改为在虚拟线程上执行同步请求，
+     * 需运行在 Java 21 及以上
+     */
+    public final static String VIRTUAL_THREADS_PROPERTY = "httprpc.virtual-threads";
+
     static {
         OBJECT_MAPPER.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
         OBJECT_MAPPER.setSerializationInclusion(JsonInclude.Include.NON_NULL);
         OBJECT_MAPPER.setDateFormat(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss"));
+        registerJacksonModule(System.getProperty(JACKSON_MODULE_PROPERTY));
+        BEAN_FLATTENER = new BeanFlattener(OBJECT_MAPPER);
 
         REQUEST_CONFIG = RequestConfig.custom()
                 // 设置连接超时时间(单位毫秒)
@@ -98,120 +144,762 @@ public class ClientInvocationHandler extends AbstractInvocationHandler {
 
     protected Logger logger = LoggerFactory.getLogger(getClass());
     private Environment env;
+    /**
+     * urlKey 解析
+     */
+    private final BaseUrlResolver baseUrlResolver;
+    /**
+     * 访问日志
+     */
+    private final AccessLogger accessLogger;
+    /**
+     * 接口独立的连接池，未配置时使用全局客户端或按 Spring 环境中的配置共享的连接池
+     */
+    private final ClientPool clientPool;
+    /**
+     * 发送请求的客户端实现
+     */
+    private final HttpTransport transport;
+    /**
+     * 执行异步方法中同步请求的虚拟线程执行器，未启用时为 null
+     */
+    private final Executor blockingExecutor;
+    /**
+     * 进行中的请求，用于 {@link com.anlystar.common.httprpc.annotation.SingleFlight}
+     */
+    private final InFlightRequests inFlightRequests = new InFlightRequests();
+    /**
+     * 标注了 {@link com.anlystar.common.httprpc.annotation.Collapse} 的方法对应的合并器
+     */
+    private final ConcurrentMap<Method, RequestCollapser> collapsers = new ConcurrentHashMap<>();
+    /**
+     * 标注了 {@link com.anlystar.common.httprpc.annotation.Cached} 的方法对应的结果缓存
+     */
+    private final ConcurrentMap<Method, ResponseCache> caches = new ConcurrentHashMap<>();
+    /**
+     * urlKey 配置了多个基础 URL 时对应的负载均衡
+     */
+    private final ConcurrentMap<String, LoadBalancer> loadBalancers = new ConcurrentHashMap<>();
+    /**
+     * 方法调用计划缓存
+     */
+    private final ConcurrentMap<Method, InvocationPlan> plans = new ConcurrentHashMap<>();
 
     public ClientInvocationHandler(Environment env) {
+        this(env, null);
+    }
+
+    /**
+     * @param env
+     * @param clientInterface 客户端接口，标注了 {@link com.anlystar.common.httprpc.annotation.ClientConfig}
+     *         时使用独立的连接池
+     */
+    public ClientInvocationHandler(Environment env, Class<?> clientInterface) {
+        this(env, clientInterface, null);
+    }
+
+    /**
+     * @param env
+     * @param clientInterface 客户端接口，标注了 {@link com.anlystar.common.httprpc.annotation.ClientConfig}
+     *         时使用独立的连接池
+     * @param transport 发送请求的客户端实现，为 null 时使用接口的独立连接池或全局客户端
+     */
+    public ClientInvocationHandler(Environment env, Class<?> clientInterface, HttpTransport transport) {
         this.env = env;
+        this.baseUrlResolver = new BaseUrlResolver(env);
+        this.accessLogger = AccessLogger.create(logger, OBJECT_MAPPER, env);
+        this.clientPool = clientInterface == null ? null : ClientPool.forInterface(clientInterface, env);
+        if (transport == null) {
+            transport = clientPool == null ? resolveDefaultTransport(env) : clientPool.getTransport();
+        }
+        this.transport = new LoadBalancingTransport(ConcurrencyLimitingTransport.wrap(transport, env),
+                this::findEndpoint);
+        this.blockingExecutor = resolveBlockingExecutor(env);
+    }
+
+    /**
+     * 未配置独立连接池时的客户端：Spring 环境中的配置与全局客户端一致时使用全局客户端，否则使用按配置共享的连接池。
+     * 不替换全局客户端，以免关闭其他 Spring 上下文中仍在使用的客户端
+     *
+     * @param env
+     *
+     * @return
+     */
+    private static HttpTransport resolveDefaultTransport(Environment env) {
+        if (env == null) {
+            return ApacheHttpTransport.GLOBAL;
+        }
+        HttpClientConfig config = HttpClientConfig.from(env, HttpClientConfig.DEFAULT_PREFIX);
+        if (config.equals(HttpClientHelper.getConfig())) {
+            return ApacheHttpTransport.GLOBAL;
+        }
+        return ClientPool.forConfig(config).getTransport();
+    }
+
+    private Executor resolveBlockingExecutor(Environment env) {
+        if (env == null || !env.getProperty(VIRTUAL_THREADS_PROPERTY, Boolean.class, false)) {
+            return null;
+        }
+        if (!VirtualThreadHelper.isSupported()) {
+            logger.warn("当前运行时不支持虚拟线程，异步方法仍使用异步客户端 -> {}", System.getProperty("java.version"));
+            return null;
+        }
+        return VirtualThreadHelper.getExecutor();
+    }
+
+    private static void registerJacksonModule(String name) {
+        if (name == null || "".equals(name)) {
+            return;
+        }
+        String className;
+        if ("afterburner".equalsIgnoreCase(name)) {
+            className = "com.fasterxml.jackson.module.afterburner.AfterburnerModule";
+        } else if ("blackbird".equalsIgnoreCase(name)) {
+            className = "com.fasterxml.jackson.module.blackbird.BlackbirdModule";
+        } else {
+            LoggerFactory.getLogger(ClientInvocationHandler.class).warn("未知的 Jackson 模块 -> {}", name);
+            return;
+        }
+        try {
+            OBJECT_MAPPER.registerModule((Module) Class.forName(className).newInstance());
+        } catch (Exception | LinkageError e) {
+            LoggerFactory.getLogger(ClientInvocationHandler.class).warn("Jackson 模块加载失败 -> " + className, e);
+        }
     }
 
     @Override
     protected Object handleInvocation(Object proxy, Method method, Object[] args) throws Throwable {
 
-        Class<?> returnType = method.getReturnType();
+        InvocationPlan plan = getPlan(method);
 
-        HttpRequest httpRequest = method.getAnnotation(HttpRequest.class);
+        if (plan.isValidationRequired()) {
+            validate(proxy, plan, args);
+        }
 
-        if (httpRequest.async() && !("void".equals(returnType.getName())
-                                             || returnType.equals(Future.class)
-                                             || Future.class.isAssignableFrom(returnType))) {
-            throw new IllegalArgumentException("不支持的返回值");
+        if (plan.getCollapse() != null) {
+            return collapse(plan, args);
         }
 
-        if ("".equals(httpRequest.url()) && "".equals(httpRequest.urlKey())) {
-            throw new IllegalArgumentException("未配置URL信息");
+        String requestUrl = getRequestUrl(plan, args);
+
+        Object pars = processPars(plan, args);
+
+        Map<String, String> headers = processHeaders(plan, args, pars);
+
+        FutureCallback<HttpResponse> callback = null;
+        if (plan.getAsyncMode() == InvocationPlan.AsyncMode.CALLBACK) {
+            callback = (FutureCallback<HttpResponse>) args[args.length - 1];
         }
 
-        ValidationHelper.validateParameters(proxy, method, args);
+        return dispatch(plan, requestUrl, headers, pars, callback);
+    }
 
-        String requestUrl = getRequestUrl(method, args, httpRequest);
+    /**
+     * 获取方法的调用计划，首次调用时解析并缓存
+     *
+     * @param method
+     *
+     * @return
+     */
+    public InvocationPlan getPlan(Method method) {
+        InvocationPlan plan = plans.get(method);
+        if (plan == null) {
+            plan = plans.computeIfAbsent(method, m -> InvocationPlan.compile(m, OBJECT_MAPPER));
+        }
+        return plan;
+    }
 
-        RequestMethod requestMethod = httpRequest.method();
+    /**
+     * 按方法签名获取调用计划，供生成的客户端实现类在构造时调用
+     *
+     * @param clientInterface
+     * @param name
+     * @param parameterTypes
+     *
+     * @return
+     */
+    public InvocationPlan getPlan(Class<?> clientInterface, String name, Class<?>... parameterTypes) {
+        try {
+            return getPlan(clientInterface.getMethod(name, parameterTypes));
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("未找到接口方法 -> " + clientInterface.getName() + "." + name, e);
+        }
+    }
 
-        Object pars = processPars(method, args);
+    /**
+     * 注解验证参数
+     *
+     * @param target
+     * @param plan
+     * @param args
+     */
+    public void validate(Object target, InvocationPlan plan, Object[] args) {
+        ValidationHelper.validateParameters(target, plan.getMethod(), args);
+    }
 
-        Map<String, String> headers = processHeaders(method, args, pars);
+    /**
+     * 发送已组装好的请求并处理返回值
+     *
+     * @param plan
+     * @param requestUrl
+     * @param headers
+     * @param pars
+     * @param callback 调用方传入的回调，仅 {@link InvocationPlan.AsyncMode#CALLBACK} 时使用
+     *
+     * @return
+     *
+     * @throws Throwable
+     */
+    public Object dispatch(InvocationPlan plan, String requestUrl, Map<String, String> headers, Object pars,
+                           FutureCallback<HttpResponse> callback) throws Throwable {
 
-        if (!httpRequest.async()) {
-            String res = execute(requestMethod, requestUrl, headers, pars);
-            return convert(res, method);
-        } else {
+        if (plan.getCached() != null) {
+            return cached(plan, requestUrl, headers, pars);
+        }
+        if (plan.getSingleFlight() != null) {
+            return singleFlight(plan, requestUrl, headers, pars);
+        }
 
-            boolean hasCallback = hasCallback(method);
-            if (hasCallback) {
-                asyncExecute(requestMethod, requestUrl, headers, pars, args);
+        RequestMethod requestMethod = plan.getRequestMethod();
+        MethodMetrics metrics = plan.getMetrics();
+
+        switch (plan.getAsyncMode()) {
+            case CALLBACK:
+                long callbackStart = metrics.start();
+                FutureCallback<HttpResponse> recorded = metrics.wrap(callback, callbackStart);
+                Deadline deadline = getDeadline(plan);
+                if (deadline != null && deadline.isExpired()) {
+                    recorded.failed(new DeadlineExceededException(requestUrl));
+                    return null;
+                }
+                String sendUrl = chooseUrl(requestUrl);
+                EndpointBreaker breaker = getCircuitBreaker(plan, sendUrl);
+                if (breaker != null) {
+                    if (!breaker.tryAcquire()) {
+                        recorded.failed(new CircuitBreakerOpenException(breaker.getName()));
+                        return null;
+                    }
+                    recorded = breaker.wrap(recorded, callbackStart);
+                }
+                try {
+                    asyncExecute(requestMethod, sendUrl, headers, pars, plan.getBodyWriter(), recorded, deadline,
+                            plan.getGzipThreshold());
+                } catch (RuntimeException e) {
+                    metrics.stop(callbackStart, e);
+                    if (breaker != null) {
+                        breaker.onComplete(System.nanoTime() - callbackStart, EndpointBreaker.isFailure(e));
+                    }
+                    throw e;
+                }
                 return null;
-            } else {
-                CallbackFuture<Object> callbackFuture = new CallbackFuture<>();
-                asyncExecute(requestMethod, requestUrl, headers, pars, callbackFuture, method);
+            case FUTURE:
+            case COMPLETABLE:
+            case LISTENABLE:
+                // 统计在请求完成时记录
+                Callback<Object> callbackFuture = newCallbackFuture(plan.getAsyncMode());
+                asyncExecute(requestMethod, requestUrl, headers, pars, callbackFuture, plan);
                 return callbackFuture;
+            case PUBLISHER:
+                // 每次订阅各自发起请求
+                return new CallbackPublisher<Object>(subscription ->
+                        asyncExecute(requestMethod, requestUrl, headers, pars, subscription, plan));
+            default:
+                return syncExecute(plan, requestUrl, headers, pars);
+        }
+    }
+
+    /**
+     * 将单个 key 的调用合并到批量调用中
+     *
+     * @param plan 标注了 {@link com.anlystar.common.httprpc.annotation.Collapse} 的方法
+     * @param args
+     *
+     * @return
+     *
+     * @throws Throwable
+     */
+    public Object collapse(InvocationPlan plan, Object[] args) throws Throwable {
+        Object key = args[0];
+        if (key == null) {
+            throw new IllegalArgumentException("合并调用的 key 不能为 null -> " + plan.getMethod());
+        }
+        RequestCollapser collapser = collapsers.get(plan.getMethod());
+        if (collapser == null) {
+            InvocationPlan batchPlan = getPlan(plan.getBatchMethod());
+            collapser = collapsers.computeIfAbsent(plan.getMethod(), m -> new RequestCollapser(plan.getCollapse(),
+                    (keys, deadline, callback) -> executeBatch(batchPlan, keys, deadline, callback)));
+        }
+
+        // 已到期的调用方不加入批量，以免缩短其他调用方的截止时间
+        Deadline deadline = getDeadline(plan);
+        String target = plan.getMethod().toString();
+        if (plan.getAsyncMode() == InvocationPlan.AsyncMode.NONE) {
+            if (deadline != null && deadline.isExpired()) {
+                throw new DeadlineExceededException(target);
             }
+            CallbackCompletableFuture<Object> result = new CallbackCompletableFuture<>();
+            collapser.add(key, result, deadline);
+            return await(result, deadline, target);
+        }
+        Callback<Object> callbackFuture = newCallbackFuture(plan.getAsyncMode());
+        if (deadline != null && deadline.isExpired()) {
+            callbackFuture.handleError(new DeadlineExceededException(target));
+        } else {
+            collapser.add(key, callbackFuture, deadline);
         }
+        return callbackFuture;
     }
 
-    protected String getRequestUrl(Method method, Object[] args, HttpRequest httpRequest) {
+    /**
+     * 以 key 的集合调用批量方法
+     *
+     * @param batchPlan
+     * @param keys 去重后的 key
+     * @param deadline 等待中的调用方最早的截止时间，可以为 null
+     * @param callback
+     */
+    protected void executeBatch(InvocationPlan batchPlan, List<Object> keys, Deadline deadline,
+                                Callback<Object> callback) {
+        Class<?> keysType = batchPlan.getMethod().getParameterTypes()[0];
+        Object batchKeys;
+        if (keysType.isArray()) {
+            batchKeys = Array.newInstance(keysType.getComponentType(), keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                Array.set(batchKeys, i, keys.get(i));
+            }
+        } else if (keysType.isAssignableFrom(ArrayList.class)) {
+            batchKeys = keys;
+        } else {
+            batchKeys = new LinkedHashSet<>(keys);
+        }
+        Object[] args = new Object[] {batchKeys};
+
+        // 截止时间在发送线程上取，flush 可能在调度线程上执行
+        try (Deadline.Scope scope = deadline == null ? null : deadline.attach()) {
+            String requestUrl = getRequestUrl(batchPlan, args);
+            Object pars = processPars(batchPlan, args);
+            Map<String, String> headers = processHeaders(batchPlan, args, pars);
+            asyncExecute(batchPlan.getRequestMethod(), requestUrl, headers, pars, callback, batchPlan);
+        } catch (Throwable e) {
+            callback.handleError(e);
+        }
+    }
+
+    /**
+     * 合并并发的相同请求，只有第一个调用方真正发送请求
+     *
+     * @param plan
+     * @param requestUrl
+     * @param headers
+     * @param pars
+     *
+     * @return
+     *
+     * @throws Throwable
+     */
+    protected Object singleFlight(InvocationPlan plan, String requestUrl, Map<String, String> headers, Object pars)
+            throws Throwable {
+
+        // POSTJSON 按序列化后的请求体判断
+        Object body = plan.getRequestMethod() == RequestMethod.POSTJSON ? writeBody(plan.getBodyWriter(), pars) : pars;
+        InFlightRequests.Key key = InFlightRequests.key(plan, requestUrl, headers, body);
+
+        CompletableFuture<Object> flight;
+        if (plan.getAsyncMode() == InvocationPlan.AsyncMode.NONE) {
+            flight = inFlightRequests.execute(key, callback -> {
+                try {
+                    callback.handleResult(syncExecute(plan, requestUrl, headers, pars));
+                } catch (Throwable e) {
+                    callback.handleError(e);
+                }
+            });
+        } else {
+            flight = inFlightRequests.execute(key, callback ->
+                    asyncExecute(plan.getRequestMethod(), requestUrl, headers, pars, callback, plan));
+        }
+        return deliver(plan, flight, requestUrl);
+    }
+
+    /**
+     * 缓存方法的结果，未命中时异步加载
+     *
+     * @param plan
+     * @param requestUrl
+     * @param headers
+     * @param pars
+     *
+     * @return
+     *
+     * @throws Throwable
+     */
+    protected Object cached(InvocationPlan plan, String requestUrl, Map<String, String> headers, Object pars)
+            throws Throwable {
+        ResponseCache cache = caches.get(plan.getMethod());
+        if (cache == null) {
+            cache = caches.computeIfAbsent(plan.getMethod(), m -> new ResponseCache(plan.getCached(), key -> {
+                CallbackCompletableFuture<Object> result = new CallbackCompletableFuture<>();
+                try {
+                    asyncExecute(plan.getRequestMethod(), key.getRequestUrl(), key.getHeaders(), key.getPars(), result,
+                            plan);
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+                return result;
+            }));
+        }
+        return deliver(plan, cache.get(new ResponseCache.Key(requestUrl, (Map<String, String>) pars, headers)),
+                requestUrl);
+    }
+
+    /**
+     * 同步方法在截止时间内等待共享的结果，异步方法返回调用方独立的 Future，取消时不影响其他调用方
+     *
+     * @param plan
+     * @param shared
+     * @param requestUrl
+     *
+     * @return
+     *
+     * @throws Throwable
+     */
+    private Object deliver(InvocationPlan plan, CompletableFuture<Object> shared, String requestUrl)
+            throws Throwable {
+        if (plan.getAsyncMode() == InvocationPlan.AsyncMode.NONE) {
+            return await(shared, getDeadline(plan), requestUrl);
+        }
+        Callback<Object> callbackFuture = newCallbackFuture(plan.getAsyncMode());
+        shared.whenComplete((result, error) -> {
+            if (error == null) {
+                callbackFuture.handleResult(result);
+            } else {
+                callbackFuture.handleError(error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error);
+            }
+        });
+        return callbackFuture;
+    }
+
+    /**
+     * 等待结果，超过截止时间时不再等待，结果仍交给其他调用方
+     *
+     * @param result
+     * @param deadline 为 null 时一直等待
+     * @param target 请求地址或方法，用于异常信息
+     *
+     * @return
+     *
+     * @throws Throwable
+     */
+    private static Object await(CompletableFuture<Object> result, Deadline deadline, String target)
+            throws Throwable {
+        try {
+            if (deadline == null) {
+                return result.join();
+            }
+            return result.get(Math.max(0, deadline.remaining(TimeUnit.NANOSECONDS)), TimeUnit.NANOSECONDS);
+        } catch (CompletionException | ExecutionException e) {
+            throw e.getCause();
+        } catch (TimeoutException e) {
+            throw new DeadlineExceededException(target);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException exception = new InterruptedIOException("等待结果时被中断 -> " + target);
+            exception.initCause(e);
+            throw exception;
+        }
+    }
+
+    private static Callback<Object> newCallbackFuture(InvocationPlan.AsyncMode asyncMode) {
+        switch (asyncMode) {
+            case COMPLETABLE:
+                return new CallbackCompletableFuture<>();
+            case LISTENABLE:
+                return new CallbackListenableFuture<>();
+            default:
+                return new CallbackFuture<>();
+        }
+    }
+
+    /**
+     * 在当前线程同步发送请求并解析返回值
+     *
+     * @param plan
+     * @param requestUrl
+     * @param headers
+     * @param pars
+     *
+     * @return
+     *
+     * @throws Throwable
+     */
+    protected Object syncExecute(InvocationPlan plan, String requestUrl, Map<String, String> headers, Object pars)
+            throws Throwable {
+
+        if (plan.getHedgePolicy() != null) {
+            // 对冲请求通过异步客户端发送
+            CallbackCompletableFuture<Object> result = new CallbackCompletableFuture<>();
+            asyncExecute(plan.getRequestMethod(), requestUrl, headers, pars, result, plan);
+            return await(result, getDeadline(plan), requestUrl);
+        }
+
+        RequestMethod requestMethod = plan.getRequestMethod();
+        MethodMetrics metrics = plan.getMetrics();
+        Deadline deadline = getDeadline(plan);
+        String sendUrl = chooseUrl(requestUrl);
+        EndpointBreaker breaker = getCircuitBreaker(plan, sendUrl);
+        long start = metrics.start();
+        boolean permitted = false;
+        Throwable error = null;
+        try {
+            if (deadline != null && deadline.isExpired()) {
+                throw new DeadlineExceededException(sendUrl);
+            }
+            if (breaker != null) {
+                if (!breaker.tryAcquire()) {
+                    throw new CircuitBreakerOpenException(breaker.getName());
+                }
+                permitted = true;
+            }
+            if (logger.isDebugEnabled()) {
+                String res = execute(requestMethod, sendUrl, headers, pars, plan.getBodyWriter(),
+                        ResponseReader.STRING, deadline, plan.getGzipThreshold());
+                logger.debug("RPC <== url: {}, result: {}", sendUrl, res);
+                return convert(res, plan);
+            }
+            return execute(requestMethod, sendUrl, headers, pars, plan.getBodyWriter(),
+                    (content, charset) -> readResponse(content, charset, plan), deadline, plan.getGzipThreshold());
+        } catch (Throwable e) {
+            error = e;
+            throw e;
+        } finally {
+            metrics.stop(start, error);
+            if (permitted) {
+                breaker.onComplete(System.nanoTime() - start, EndpointBreaker.isFailure(error));
+            }
+        }
+    }
+
+    /**
+     * 获取方法访问请求地址的熔断器
+     *
+     * @param plan
+     * @param requestUrl
+     *
+     * @return 未配置熔断时返回 null
+     */
+    protected EndpointBreaker getCircuitBreaker(InvocationPlan plan, String requestUrl) {
+        CircuitBreaker config = plan.getCircuitBreaker();
+        if (config == null) {
+            return null;
+        }
+        return EndpointBreaker.forEndpoint(plan.getMethod(), config, EndpointBreaker.endpoint(requestUrl));
+    }
+
+    protected String getRequestUrl(InvocationPlan plan, Object[] args) {
+
+        UrlTemplate template = resolveUrlTemplate(plan);
+
+        ParamSlot[] slots = plan.getSlots();
+        String[] pathValues = plan.hasPathVariables() ? new String[slots.length] : null;
+        StringBuilder query = new StringBuilder();
+
+        for (ParamSlot slot : slots) {
+            Object arg = args[slot.getIndex()];
+            if (arg == null || slot.isCallback()) {
+                continue;
+            }
+            renderUrlParam(slot, arg, pathValues, query);
+        }
+
+        return template.render(pathValues, query);
+    }
+
+    /**
+     * 获取请求的 URL 模板
+     *
+     * @param plan
+     *
+     * @return
+     */
+    public UrlTemplate resolveUrlTemplate(InvocationPlan plan) {
+
+        HttpRequest httpRequest = plan.getHttpRequest();
 
         String requestUrl = httpRequest.url();
 
         if ("".equals(requestUrl)) {
-            requestUrl = env.getProperty(httpRequest.urlKey(), System.getProperty(httpRequest.urlKey()));
+            requestUrl = baseUrlResolver.resolve(httpRequest.urlKey());
+            // 节点在发送时选择，见 chooseUrl
+            if (requestUrl != null && LoadBalancer.isBalanced(requestUrl)) {
+                requestUrl = getLoadBalancer(httpRequest.urlKey(), requestUrl).getBaseUrl();
+            }
         }
 
         if (requestUrl == null || "".equals(requestUrl)) {
             throw new IllegalArgumentException("未查询到 URL 配置信息, key => " + httpRequest.urlKey());
         }
+        return plan.getUrlTemplate(requestUrl);
+    }
 
-        StringJoiner parsJoiner = new StringJoiner("&");
+    /**
+     * 获取 urlKey 对应的负载均衡，配置变化时重新创建
+     *
+     * @param urlKey
+     * @param source 逗号分隔的基础 URL
+     *
+     * @return
+     */
+    protected LoadBalancer getLoadBalancer(String urlKey, String source) {
+        LoadBalancer loadBalancer = loadBalancers.get(urlKey);
+        if (loadBalancer == null || !loadBalancer.getSource().equals(source)) {
+            loadBalancer = loadBalancers.compute(urlKey, (key, previous) ->
+                    previous != null && previous.getSource().equals(source) ? previous : new LoadBalancer(source, env));
+        }
+        return loadBalancer;
+    }
 
-        Parameter[] parameters = method.getParameters();
-        if (parameters != null && parameters.length > 0) {
-            for (int i = 0, len = parameters.length; i < len; i++) {
-                Parameter p = parameters[i];
-                if (args[i] == null) {
-                    continue;
-                }
-                if ((args[i] instanceof String || isWrapClass(args[i].getClass()))) {
-                    String value = args[i] == null ? "" : (args[i] + "");
-                    PathVariable pathVariable = p.getAnnotation(PathVariable.class);
-                    if (pathVariable != null) {
-                        requestUrl = requestUrl.replace(String.format("{%s}", pathVariable.value()), value);
-                    }
-                    ReqParam reqParam = p.getAnnotation(ReqParam.class);
-                    if (reqParam != null && reqParam.url()) {
-                        try {
-                            parsJoiner.add(URLEncoder.encode(reqParam.name(), "utf-8") + "=" + URLEncoder.encode(value,
-                                    "utf-8"));
-                        } catch (Exception e) {
-                            logger.error(e.getMessage(), e);
-                        }
-                    }
-                } else if (args[i] instanceof Date) {
-                    ReqParam reqParam = p.getAnnotation(ReqParam.class);
-                    if (reqParam != null && !reqParam.header() && !reqParam.url()) {
-                        String value = DateHelper.format((Date) args[i], reqParam.format());
-                        try {
-                            parsJoiner.add(URLEncoder.encode(reqParam.name(), "utf-8") + "=" + URLEncoder.encode(value,
-                                    "utf-8"));
-                        } catch (Exception e) {
-                            logger.error(e.getMessage(), e);
-                        }
-                    }
-                }
+    /**
+     * 查找请求 URL 所属的负载均衡节点
+     *
+     * @param requestUrl
+     *
+     * @return 未使用负载均衡时返回 null
+     */
+    private LoadBalancer.Endpoint findEndpoint(String requestUrl) {
+        if (loadBalancers.isEmpty()) {
+            return null;
+        }
+        for (LoadBalancer loadBalancer : loadBalancers.values()) {
+            LoadBalancer.Endpoint endpoint = loadBalancer.find(requestUrl);
+            if (endpoint != null) {
+                return endpoint;
             }
         }
+        return null;
+    }
 
-        if (parsJoiner.length() > 0) {
-            if (requestUrl.endsWith("?")) {
-                requestUrl = requestUrl + parsJoiner.toString();
-            } else {
-                requestUrl = requestUrl + "?" + parsJoiner.toString();
+    /**
+     * 发送前按负载选择节点，将请求 URL 中的节点地址替换为所选节点。缓存、合并请求都以选择前的 URL 为键，
+     * 对冲请求另选一次
+     *
+     * @param requestUrl
+     *
+     * @return 未使用负载均衡或选到同一节点时返回原 URL
+     */
+    private String chooseUrl(String requestUrl) {
+        if (loadBalancers.isEmpty()) {
+            return requestUrl;
+        }
+        for (LoadBalancer loadBalancer : loadBalancers.values()) {
+            LoadBalancer.Endpoint endpoint = loadBalancer.find(requestUrl);
+            if (endpoint != null) {
+                LoadBalancer.Endpoint other = loadBalancer.choose();
+                return other == endpoint ? requestUrl
+                        : other.getUrl() + requestUrl.substring(endpoint.getUrl().length());
             }
         }
         return requestUrl;
     }
 
-    protected void asyncExecute(RequestMethod requestMethod, String requestUrl, Map<String, String> headers,
-                                Object pars, CallbackFuture<Object> callbackFuture, Method method) {
+    /**
+     * 处理单个参数的路径变量和 URL 参数
+     *
+     * @param slot
+     * @param arg 非 null 的参数值
+     * @param pathValues 按参数下标存放的路径变量值
+     * @param query
+     */
+    public void renderUrlParam(ParamSlot slot, Object arg, String[] pathValues, StringBuilder query) {
+        if (slot.getRequestBody() != null || arg instanceof BaseModel) {
+            return;
+        }
+        ReqParam reqParam = slot.getReqParam();
+        boolean urlParam = reqParam != null && reqParam.url();
+        if (slot.getPathPlaceholder() == null && !urlParam) {
+            return;
+        }
+        String value = encodeValue(slot, arg);
+        if (slot.getPathPlaceholder() != null) {
+            pathValues[slot.getIndex()] = value;
+        }
+        if (urlParam) {
+            appendUrlParam(query, slot, value);
+        }
+    }
+
+    /**
+     * 添加一个 URL 参数
+     *
+     * @param query
+     * @param slot
+     * @param value
+     */
+    public void appendUrlParam(StringBuilder query, ParamSlot slot, String value) {
+        try {
+            String encoded = URLEncoder.encode(value, "utf-8");
+            if (query.length() > 0) {
+                query.append('&');
+            }
+            query.append(slot.getEncodedParamName()).append('=').append(encoded);
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 异步发送请求，响应按调用计划解析后交给 callback
+     *
+     * @param requestMethod
+     * @param requestUrl
+     * @param headers
+     * @param pars
+     * @param callbackFuture 返回给调用方的 Future，请求取消时若实现了 {@link Future} 则直接取消；
+     *                       {@link InvocationPlan.AsyncMode#PUBLISHER} 时结果为元素迭代器
+     * @param plan
+     * @param <T>
+     */
+    @SuppressWarnings("unchecked")
+    protected <T> void asyncExecute(RequestMethod requestMethod, String requestUrl, Map<String, String> headers,
+                                    Object pars, Callback<T> callbackFuture, InvocationPlan plan) {
+
+        if (blockingExecutor != null && plan.getAsyncMode() != InvocationPlan.AsyncMode.PUBLISHER
+                && plan.getHedgePolicy() == null) {
+            // 截止时间在调用线程上确定
+            Deadline deadline = getDeadline(plan);
+            blockingExecutor.execute(() -> {
+                try (Deadline.Scope scope = deadline == null ? null : deadline.attach()) {
+                    callbackFuture.handleResult((T) syncExecute(plan, requestUrl, headers, pars));
+                } catch (Throwable e) {
+                    callbackFuture.handleError(e);
+                }
+            });
+            return;
+        }
 
         long start = System.currentTimeMillis();
+        ObjectWriter bodyWriter = plan.getBodyWriter();
+        MethodMetrics metrics = plan.getMetrics();
+        long metricsStart = metrics.start();
+        String sendUrl = chooseUrl(requestUrl);
+
+        Deadline deadline = getDeadline(plan);
+        if (deadline != null && deadline.isExpired()) {
+            DeadlineExceededException e = new DeadlineExceededException(sendUrl);
+            metrics.stop(metricsStart, e);
+            callbackFuture.handleError(e);
+            return;
+        }
+
+        EndpointBreaker breaker = getCircuitBreaker(plan, sendUrl);
+        if (breaker != null && !breaker.tryAcquire()) {
+            CircuitBreakerOpenException e = new CircuitBreakerOpenException(breaker.getName());
+            metrics.stop(metricsStart, e);
+            callbackFuture.handleError(e);
+            return;
+        }
+        HedgePolicy hedgePolicy = plan.getHedgePolicy();
+        // 对冲时每个请求各自按所访问的节点记录熔断结果
+        EndpointBreaker resultBreaker = hedgePolicy == null ? breaker : null;
 
         try {
 
@@ -219,20 +907,26 @@ public class ClientInvocationHandler extends AbstractInvocationHandler {
                 @Override
                 public void completed(HttpResponse response) {
                     try {
-                        if (HttpStatus.SC_OK == response.getStatusLine().getStatusCode()) {
-                            String res = AsyncHttpClientHelper.parseResponse(response);
-                            long end = System.currentTimeMillis();
-                            logger.info("Aysnc RPC ==> url: {}, method: {}, header: {}, pars: {}, result: {}, "
-                                            + "cost: {}ms", requestUrl,
-                                    requestMethod.name(), toJsonString(headers), toJsonString(pars), res, end - start);
-                            Object ret = convertAsync(res, method);
-                            callbackFuture.handleResult(ret);
+                        Object ret;
+                        if (plan.getAsyncMode() == InvocationPlan.AsyncMode.PUBLISHER) {
+                            ret = readElements(response, sendUrl, plan);
+                        } else if (logger.isDebugEnabled()) {
+                            String res = ResponseDecoder.decode(response, null, ResponseReader.STRING);
+                            logger.debug("Aysnc RPC <== url: {}, result: {}", sendUrl, res);
+                            ret = convert(res, plan);
                         } else {
-                            throw new RuntimeException(
-                                    "http status error: " + response.getStatusLine().getStatusCode());
+                            ret = ResponseDecoder.decode(response, null, (content, charset) ->
+                                    readResponse(content, charset, plan));
                         }
-                    } catch (IOException e) {
+                        metrics.stop(metricsStart, null);
+                        complete(resultBreaker, metricsStart, null);
+                        accessLogger.log(ASYNC_RPC, requestMethod, sendUrl, headers, pars, start, null);
+                        callbackFuture.handleResult((T) ret);
+                    } catch (Exception e) {
                         logger.error(e.getMessage(), e);
+                        metrics.stop(metricsStart, e);
+                        complete(resultBreaker, metricsStart, e);
+                        accessLogger.log(ASYNC_RPC, requestMethod, sendUrl, headers, pars, start, e);
                         callbackFuture.handleError(e);
                     }
                 }
@@ -240,243 +934,443 @@ public class ClientInvocationHandler extends AbstractInvocationHandler {
                 @Override
                 public void failed(Exception e) {
                     logger.error(e.getMessage(), e);
+                    metrics.stop(metricsStart, e);
+                    complete(resultBreaker, metricsStart, e);
+                    accessLogger.log(ASYNC_RPC, requestMethod, sendUrl, headers, pars, start, e);
                     callbackFuture.handleError(e);
                 }
 
                 @Override
                 public void cancelled() {
-                    callbackFuture.cancel(false);
+                    metrics.cancelled(metricsStart);
+                    if (resultBreaker != null) {
+                        resultBreaker.release();
+                    }
+                    if (callbackFuture instanceof Future) {
+                        ((Future<?>) callbackFuture).cancel(false);
+                    } else {
+                        callbackFuture.handleError(new CancellationException());
+                    }
                 }
             };
 
-            if (requestMethod == RequestMethod.GET) {
-                AsyncHttpClientHelper.get(requestUrl, headers, (Map<String, String>) pars, callback);
-            } else if (requestMethod == RequestMethod.POST) {
-                AsyncHttpClientHelper.post(requestUrl, headers, (Map<String, String>) pars, callback);
+            if (hedgePolicy != null) {
+                hedgePolicy.execute((hedged, attempt) -> {
+                    if (!hedged) {
+                        return sendAttempt(breaker, requestMethod, sendUrl, headers, pars, bodyWriter, attempt,
+                                deadline, plan.getGzipThreshold());
+                    }
+                    String hedgeUrl = chooseUrl(sendUrl);
+                    EndpointBreaker hedgeBreaker = getCircuitBreaker(plan, hedgeUrl);
+                    if (hedgeBreaker != null && !hedgeBreaker.tryAcquire()) {
+                        throw new CircuitBreakerOpenException(hedgeBreaker.getName());
+                    }
+                    return sendAttempt(hedgeBreaker, requestMethod, hedgeUrl, headers, pars, bodyWriter, attempt,
+                            deadline, plan.getGzipThreshold());
+                }, callback);
             } else {
-                AsyncHttpClientHelper.postJson(requestUrl, headers, pars, callback);
+                asyncSend(requestMethod, sendUrl, headers, pars, bodyWriter, callback, deadline,
+                        plan.getGzipThreshold());
             }
         } catch (Exception e) {
             logger.error(e.getMessage(), e);
+            metrics.stop(metricsStart, e);
+            complete(resultBreaker, metricsStart, e);
+            accessLogger.log(ASYNC_RPC, requestMethod, sendUrl, headers, pars, start, e);
             throw new RuntimeException(e);
-        } finally {
-            long end = System.currentTimeMillis();
-            logger.info("Aysnc RPC ==> url: {}, method: {}, header: {}, pars:{}, cost: {}ms", requestUrl,
-                    requestMethod.name(), toJsonString(headers), toJsonString(pars), end - start);
         }
 
     }
 
+    /**
+     * 发送对冲策略中的一次请求，结果记录到该请求所访问节点的熔断器，被取消的请求归还试探名额
+     *
+     * @param breaker 已申请通过的熔断器，为 null 时不记录
+     */
+    private Future<?> sendAttempt(EndpointBreaker breaker, RequestMethod requestMethod, String requestUrl,
+                                  Map<String, String> headers, Object pars, ObjectWriter bodyWriter,
+                                  FutureCallback<HttpResponse> attempt, Deadline deadline, int gzipThreshold)
+            throws IOException {
+        if (breaker == null) {
+            return asyncSend(requestMethod, requestUrl, headers, pars, bodyWriter, attempt, deadline, gzipThreshold);
+        }
+        long start = System.nanoTime();
+        try {
+            return asyncSend(requestMethod, requestUrl, headers, pars, bodyWriter, breaker.wrap(attempt, start),
+                    deadline, gzipThreshold);
+        } catch (IOException | RuntimeException e) {
+            breaker.onComplete(System.nanoTime() - start, EndpointBreaker.isFailure(e));
+            throw e;
+        }
+    }
+
+    /**
+     * 记录调用结果到熔断器
+     *
+     * @param breaker 为 null 时不处理
+     * @param start 开始时间，{@link System#nanoTime()}
+     * @param error 成功时为 null
+     */
+    private static void complete(EndpointBreaker breaker, long start, Throwable error) {
+        if (breaker != null) {
+            breaker.onComplete(System.nanoTime() - start, EndpointBreaker.isFailure(error));
+        }
+    }
+
+    protected void asyncExecute(RequestMethod requestMethod, String requestUrl, Map<String, String> headers,
+                                Object pars, FutureCallback<HttpResponse> callback) {
+        asyncExecute(requestMethod, requestUrl, headers, pars, null, callback);
+    }
+
+    /**
+     * 异步发送请求，由调用方的回调处理响应
+     *
+     * @param requestMethod
+     * @param requestUrl
+     * @param headers
+     * @param pars
+     * @param bodyWriter POSTJSON 请求体的序列化器，为 null 时使用默认序列化
+     * @param callback
+     */
     protected void asyncExecute(RequestMethod requestMethod, String requestUrl, Map<String, String> headers,
-                                Object pars, Object[] args) {
+                                Object pars, ObjectWriter bodyWriter, FutureCallback<HttpResponse> callback) {
+        asyncExecute(requestMethod, requestUrl, headers, pars, bodyWriter, callback, null, -1);
+    }
+
+    private void asyncExecute(RequestMethod requestMethod, String requestUrl, Map<String, String> headers,
+                              Object pars, ObjectWriter bodyWriter, FutureCallback<HttpResponse> callback,
+                              Deadline deadline, int gzipThreshold) {
 
         long start = System.currentTimeMillis();
 
-        try {
+        // 请求完成时记录访问日志，再交给调用方的回调
+        FutureCallback<HttpResponse> logged = new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse response) {
+                accessLogger.log(ASYNC_RPC, requestMethod, requestUrl, headers, pars, start, null);
+                callback.completed(response);
+            }
 
-            FutureCallback<HttpResponse> callback = (FutureCallback<HttpResponse>) args[args.length - 1];
+            @Override
+            public void failed(Exception e) {
+                accessLogger.log(ASYNC_RPC, requestMethod, requestUrl, headers, pars, start, e);
+                callback.failed(e);
+            }
 
-            if (requestMethod == RequestMethod.GET) {
-                AsyncHttpClientHelper.get(requestUrl, headers, (Map<String, String>) pars, callback);
-            } else if (requestMethod == RequestMethod.POST) {
-                AsyncHttpClientHelper.post(requestUrl, headers, (Map<String, String>) pars, callback);
-            } else {
-                AsyncHttpClientHelper.postJson(requestUrl, headers, pars, callback);
+            @Override
+            public void cancelled() {
+                callback.cancelled();
             }
+        };
+
+        try {
+
+            asyncSend(requestMethod, requestUrl, headers, pars, bodyWriter, logged, deadline, gzipThreshold);
         } catch (Exception e) {
             logger.error(e.getMessage(), e);
+            accessLogger.log(ASYNC_RPC, requestMethod, requestUrl, headers, pars, start, e);
             throw new RuntimeException(e);
-        } finally {
-            long end = System.currentTimeMillis();
-            logger.info("Aysnc RPC ==> url: {}, header: {}, pars:{}, cost: {}ms", requestUrl, toJsonString(headers),
-                    toJsonString(pars), end - start);
         }
 
     }
 
+    /**
+     * 发送异步请求
+     */
+    private Future<?> asyncSend(RequestMethod requestMethod, String requestUrl, Map<String, String> headers,
+                                Object pars, ObjectWriter bodyWriter, FutureCallback<HttpResponse> callback,
+                                Deadline deadline, int gzipThreshold) throws IOException {
+        return transport.execute(newRequest(requestMethod, requestUrl, headers, pars, bodyWriter, deadline,
+                gzipThreshold), callback);
+    }
+
+    /**
+     * 组装请求，并按截止时间限制超时、按阈值压缩请求体
+     *
+     * @param requestMethod
+     * @param requestUrl
+     * @param headers
+     * @param pars
+     * @param bodyWriter
+     * @param deadline 为 null 时不限制超时
+     * @param gzipThreshold 请求体达到该字节数时 gzip 压缩，小于 0 时不压缩
+     *
+     * @return
+     *
+     * @throws IOException
+     */
+    private TransportRequest newRequest(RequestMethod requestMethod, String requestUrl, Map<String, String> headers,
+                                        Object pars, ObjectWriter bodyWriter, Deadline deadline, int gzipThreshold)
+            throws IOException {
+        TransportRequest request = withDeadline(newRequest(requestMethod, requestUrl, headers, pars, bodyWriter),
+                deadline);
+        byte[] body = request.getBody();
+        return gzipThreshold >= 0 && body != null && body.length >= gzipThreshold ? request.withGzip() : request;
+    }
+
+    /**
+     * 按截止时间的剩余时间限制请求的超时
+     *
+     * @param request
+     * @param deadline 为 null 时不限制
+     *
+     * @return
+     *
+     * @throws DeadlineExceededException 已过截止时间
+     */
+    protected static TransportRequest withDeadline(TransportRequest request, Deadline deadline) {
+        if (deadline == null) {
+            return request;
+        }
+        long remaining = deadline.remaining(TimeUnit.MILLISECONDS);
+        if (remaining <= 0) {
+            throw new DeadlineExceededException(request.getUrl());
+        }
+        return request.withTimeout((int) Math.min(remaining, Integer.MAX_VALUE));
+    }
+
+    /**
+     * 方法调用的截止时间，取当前线程的截止时间和方法超时时间中较早者
+     *
+     * @param plan
+     *
+     * @return 都未设置时返回 null
+     */
+    protected Deadline getDeadline(InvocationPlan plan) {
+        Deadline current = Deadline.current();
+        if (plan.getTimeout() <= 0) {
+            return current;
+        }
+        return Deadline.after(plan.getTimeout(), TimeUnit.MILLISECONDS).min(current);
+    }
+
+    /**
+     * 按请求方式组装请求，GET 参数拼接到 URL，POST 参数编码为表单，POSTJSON 序列化请求体
+     *
+     * @param requestMethod
+     * @param requestUrl
+     * @param headers
+     * @param pars POSTJSON 时为请求体，否则为表单参数
+     * @param bodyWriter POSTJSON 请求体的序列化器，为 null 时使用默认序列化
+     *
+     * @return
+     *
+     * @throws IOException
+     */
+    protected TransportRequest newRequest(RequestMethod requestMethod, String requestUrl, Map<String, String> headers,
+                                          Object pars, ObjectWriter bodyWriter) throws IOException {
+        switch (requestMethod) {
+            case GET:
+                return TransportRequest.get(requestUrl, headers,
+                        HttpClientHelper.toQueryString((Map<String, String>) pars));
+            case POST:
+                return TransportRequest.post(requestUrl, headers,
+                        HttpClientHelper.toFormString((Map<String, String>) pars).getBytes(StandardCharsets.UTF_8),
+                        HttpClientHelper.FORM_CONTENT_TYPE);
+            default:
+                return TransportRequest.post(requestUrl, headers, writeBody(bodyWriter, pars),
+                        HttpClientHelper.JSON_CONTENT_TYPE);
+        }
+    }
+
     protected String execute(RequestMethod requestMethod, String requestUrl, Map<String, String> headers, Object pars) {
+        return execute(requestMethod, requestUrl, headers, pars, null, ResponseReader.STRING);
+    }
 
-        String response = "";
+    /**
+     * 同步发送请求，响应体由 reader 流式读取
+     *
+     * @param requestMethod
+     * @param requestUrl
+     * @param headers
+     * @param pars
+     * @param bodyWriter POSTJSON 请求体的序列化器，为 null 时使用默认序列化
+     * @param reader
+     * @param <T>
+     *
+     * @return
+     */
+    protected <T> T execute(RequestMethod requestMethod, String requestUrl, Map<String, String> headers, Object pars,
+                            ObjectWriter bodyWriter, ResponseReader<T> reader) {
+        return execute(requestMethod, requestUrl, headers, pars, bodyWriter, reader, null, -1);
+    }
+
+    /**
+     * 同步发送请求，响应体由 reader 流式读取
+     *
+     * @param requestMethod
+     * @param requestUrl
+     * @param headers
+     * @param pars
+     * @param bodyWriter POSTJSON 请求体的序列化器，为 null 时使用默认序列化
+     * @param reader
+     * @param deadline 截止时间，为 null 时使用客户端的默认超时
+     * @param gzipThreshold 请求体达到该字节数时 gzip 压缩，小于 0 时不压缩
+     * @param <T>
+     *
+     * @return
+     */
+    protected <T> T execute(RequestMethod requestMethod, String requestUrl, Map<String, String> headers, Object pars,
+                            ObjectWriter bodyWriter, ResponseReader<T> reader, Deadline deadline,
+                            int gzipThreshold) {
 
         long start = System.currentTimeMillis();
+        Exception error = null;
 
         try {
-
-            if (requestMethod == RequestMethod.GET) {
-                response = HttpClientHelper.get(requestUrl, headers, (Map<String, String>) pars);
-            } else if (requestMethod == RequestMethod.POST) {
-                response = HttpClientHelper.post(requestUrl, headers, (Map<String, String>) pars);
-            } else {
-                response = HttpClientHelper.postJson(requestUrl, headers, pars);
-            }
+            return transport.execute(newRequest(requestMethod, requestUrl, headers, pars, bodyWriter, deadline,
+                    gzipThreshold), reader);
         } catch (Exception e) {
             logger.error(e.getMessage(), e);
+            error = e;
             throw new RuntimeException(e);
         } finally {
-            long end = System.currentTimeMillis();
-            logger.info("RPC ==> url: {}, method: {}, header: {}, pars: {}, result: {}, cost: {}ms", requestUrl,
-                    requestMethod.name(), toJsonString(headers), toJsonString(pars), response, end - start);
+            accessLogger.log(RPC, requestMethod, requestUrl, headers, pars, start, error);
         }
-        return response;
 
     }
 
-    protected Map<String, String> processHeaders(Method method, Object[] args, Object pars) throws Throwable {
-
-        Map<String, String> headers = new HashMap<>();
+    protected Map<String, String> processHeaders(InvocationPlan plan, Object[] args, Object pars) throws Throwable {
 
-        ReqHeader[] reqHeaders = method.getDeclaringClass().getAnnotationsByType(ReqHeader.class);
+        Map<String, String> headers = new HashMap<>(plan.getStaticHeaders());
 
-        if (reqHeaders != null && reqHeaders.length > 0) {
-            for (ReqHeader reqHeader : reqHeaders) {
-                headers.put(reqHeader.key(), reqHeader.value());
+        for (ParamSlot slot : plan.getSlots()) {
+            Object arg = args[slot.getIndex()];
+            if (arg == null || slot.isCallback()) {
+                continue;
             }
+            encodeHeaderParam(slot, arg, headers);
         }
 
-        reqHeaders = method.getAnnotationsByType(ReqHeader.class);
-
-        if (reqHeaders != null && reqHeaders.length > 0) {
-            for (ReqHeader reqHeader : reqHeaders) {
-                headers.put(reqHeader.key(), reqHeader.value());
-            }
+        ParamSlot signSlot = plan.getSignSlot();
+        if (signSlot != null) {
+            sign(plan, headers, pars, (String) args[signSlot.getIndex()]);
         }
 
-        String sign = null;
-        ReqSign reqSign = null;
-
-        Parameter[] parameters = method.getParameters();
-        if (parameters == null || parameters.length == 0) {
-            return headers;
-        }
-
-        for (int i = 0, len = parameters.length; i < len; i++) {
-            Parameter p = parameters[i];
-            if (p == null || args[i] == null) {
-                continue;
-            }
+        return headers;
+    }
 
-            RequestBody requestBody = p.getAnnotation(RequestBody.class);
-            if (requestBody != null) {
-                if (!requestBody.header()) {
-                    continue;
-                }
-                headers.putAll(convert2Map((BaseModel) args[i]));
-            } else if (args[i] instanceof String && p.getAnnotation(ReqSign.class) != null) {
-                sign = (String) args[i];
-                reqSign = p.getAnnotation(ReqSign.class);
-            } else if ((args[i] instanceof String || isWrapClass(args[i].getClass()))) {
-                ReqParam reqParam = p.getAnnotation(ReqParam.class);
-                if (reqParam != null && reqParam.header()) {
-                    String value = args[i] == null ? "" : (args[i] + "");
-                    headers.put(reqParam.value(), value);
-                }
-            } else if (args[i] instanceof Date) {
-                ReqParam reqParam = p.getAnnotation(ReqParam.class);
-                if (reqParam != null && reqParam.header() && !reqParam.url()) {
-                    String value = DateHelper.format((Date) args[i], reqParam.format());
-                    headers.put(reqParam.value(), value);
-                }
-            } else {
-                throw new IllegalArgumentException("不支持的参数类型 -> " + args[i].getClass());
+    /**
+     * 处理单个参数的 header
+     *
+     * @param slot
+     * @param arg 非 null 的参数值
+     * @param headers
+     */
+    public void encodeHeaderParam(ParamSlot slot, Object arg, Map<String, String> headers) {
+        RequestBody requestBody = slot.getRequestBody();
+        if (requestBody != null) {
+            if (requestBody.header()) {
+                BEAN_FLATTENER.flatten(arg, headers);
             }
+            return;
         }
-
-        if (sign != null && reqSign != null) {
-            HttpRequest httpRequest = method.getAnnotation(HttpRequest.class);
-            String stamp = headers.get("stamp");
-            if (httpRequest.method() == RequestMethod.POSTJSON) {
-                headers.put(reqSign.name(), rasSign(pars, stamp, sign));
-            } else {
-                headers.put(reqSign.name(), rasFormSign((Map<String, String>) pars, stamp, sign));
-            }
+        ReqParam reqParam = slot.getReqParam();
+        // 签名在所有参数处理完之后计算
+        if (slot.isSign() || reqParam == null || !reqParam.header() || arg instanceof BaseModel) {
+            return;
         }
+        headers.put(slot.getParamName(), encodeValue(slot, arg));
+    }
 
-        return headers;
+    /**
+     * 计算签名并写入 header
+     *
+     * @param plan
+     * @param headers
+     * @param pars
+     * @param sign 签名私钥，为 null 时不签名
+     */
+    public void sign(InvocationPlan plan, Map<String, String> headers, Object pars, String sign) {
+        ParamSlot signSlot = plan.getSignSlot();
+        if (sign == null || signSlot == null) {
+            return;
+        }
+        ReqSign reqSign = signSlot.getReqSign();
+        String stamp = headers.get("stamp");
+        if (plan.getRequestMethod() == RequestMethod.POSTJSON) {
+            headers.put(reqSign.name(), rasSign(pars, stamp, sign));
+        } else {
+            headers.put(reqSign.name(), rasFormSign((Map<String, String>) pars, stamp, sign));
+        }
     }
 
-    protected Object processPars(Method method, Object[] args) throws Throwable {
+    protected Object processPars(InvocationPlan plan, Object[] args) throws Throwable {
 
         Map<String, String> pars = null;
-        Parameter[] parameters = method.getParameters();
-        // 处理异步函数
-        if (parameters.length > 0) {
-            Parameter p = parameters[parameters.length - 1];
-            CallFunction function = p.getAnnotation(CallFunction.class);
-            if (function != null) {
-                if (parameters.length > 1) {
-                    parameters = Arrays.copyOfRange(parameters, 0, parameters.length - 1);
-                } else {
-                    parameters = new Parameter[0];
-                }
-            }
-        }
-
-        HttpRequest httpRequest = method.getAnnotation(HttpRequest.class);
-        RequestMethod requestMethod = httpRequest.method();
 
-        if (parameters == null || parameters.length < 1) {
+        int len = plan.getRequestSlotCount();
+        if (len < 1) {
             return pars;
         }
 
-        if (requestMethod == RequestMethod.POSTJSON) {
+        if (plan.getRequestMethod() == RequestMethod.POSTJSON) {
             return args[0];
         }
 
+        ParamSlot[] slots = plan.getSlots();
         pars = Maps.newHashMap();
-        for (int i = 0, len = parameters.length; i < len; i++) {
-            Parameter p = parameters[i];
-            if (p == null || args[i] == null || p.getAnnotation(ReqHeader.class) != null) {
+        for (int i = 0; i < len; i++) {
+            if (args[i] == null) {
                 continue;
             }
+            encodeFormParam(slots[i], args[i], pars);
+        }
 
-            RequestBody requestBody = p.getAnnotation(RequestBody.class);
-            if (requestBody != null && !requestBody.header()) {
-                pars.putAll(convert2Map((BaseModel) args[i]));
-            }
-
-            if (args[i] instanceof Collection) {
-                ReqParam reqParam = p.getAnnotation(ReqParam.class);
-                if (reqParam == null || reqParam.header()) {
-                    continue;
-                }
+        return pars;
+    }
 
-                Collection c = (Collection) args[i];
-                Iterator ite = c.iterator();
-                while (ite.hasNext()) {
-                    Object o = ite.next();
-                    if (o instanceof BaseModel) {
-                        pars.putAll(convert2Map((BaseModel) o));
-                    } else {
-                        String k = reqParam.value();
-                        String value = convertValue(o);
-                        if (pars.containsKey(k)) {
-                            pars.put(k, pars.get(k) + "," + value);
-                        } else {
-                            pars.put(k, value);
-                        }
-                    }
-                }
+    /**
+     * 处理单个参数的表单参数
+     *
+     * @param slot
+     * @param arg 非 null 的参数值
+     * @param pars
+     */
+    public void encodeFormParam(ParamSlot slot, Object arg, Map<String, String> pars) {
+        RequestBody requestBody = slot.getRequestBody();
+        if (requestBody != null) {
+            if (!requestBody.header()) {
+                BEAN_FLATTENER.flatten(arg, pars);
+            }
+            return;
+        }
+        if (arg instanceof BaseModel) {
+            BEAN_FLATTENER.flatten(arg, pars);
+            return;
+        }
+        ReqParam reqParam = slot.getReqParam();
+        if (reqParam == null || reqParam.header() || reqParam.url()) {
+            return;
+        }
 
-            } else if (args[i] instanceof BaseModel) {
-                pars.putAll(convert2Map((BaseModel) args[i]));
-            } else if ((args[i] instanceof String || isWrapClass(args[i].getClass()))) {
-                ReqParam reqParam = p.getAnnotation(ReqParam.class);
-                if (reqParam != null && !reqParam.header() && !reqParam.url()) {
-                    String value = args[i] == null ? "" : (args[i] + "");
-                    pars.put(reqParam.value(), value);
+        String k = slot.getParamName();
+        if (arg instanceof Collection) {
+            // 集合中的 BaseModel 展开为表单参数，其余元素用 , 连接
+            for (Object o : (Collection) arg) {
+                if (o instanceof BaseModel) {
+                    BEAN_FLATTENER.flatten(o, pars);
+                } else if (o != null) {
+                    pars.merge(k, encodeValue(slot, o), (v1, v2) -> v1 + ParamCodecs.SEPARATOR + v2);
                 }
-            } else if (args[i] instanceof Date) {
-                ReqParam reqParam = p.getAnnotation(ReqParam.class);
-                if (reqParam != null && !reqParam.header() && !reqParam.url()) {
-                    String value = DateHelper.format((Date) args[i], reqParam.format());
-                    pars.put(reqParam.value(), value);
-                }
-            } else {
-                throw new IllegalArgumentException("不支持的参数类型 -> " + args[i].getClass());
             }
+        } else {
+            pars.put(k, encodeValue(slot, arg));
         }
+    }
 
-        return pars;
+    /**
+     * 参数值编码
+     *
+     * @param slot
+     * @param arg
+     *
+     * @return
+     *
+     * @throws IllegalArgumentException 不支持的参数类型
+     */
+    protected String encodeValue(ParamSlot slot, Object arg) {
+        return ParamCodecs.encode(arg, slot.getFormat());
     }
 
     protected String rasFormSign(Map<String, String> pars, String stamp, String privateKey) {
@@ -509,14 +1403,6 @@ public class ClientInvocationHandler extends AbstractInvocationHandler {
         return RSAHelper.sign(joiner.toString(), privateKey);
     }
 
-    protected boolean isWrapClass(Class clz) {
-        try {
-            return ((Class) clz.getField("TYPE").get(null)).isPrimitive();
-        } catch (Exception e) {
-            return false;
-        }
-    }
-
     /**
      * 参数值 转换
      *
@@ -525,15 +1411,7 @@ public class ClientInvocationHandler extends AbstractInvocationHandler {
      * @return
      */
     protected String convertValue(Object obj) {
-
-        if (obj == null) {
-            return null;
-        } else if (obj instanceof String || isWrapClass(obj.getClass())) {
-            return obj + "";
-        } else {
-            throw new IllegalArgumentException("参数类型只支持八种基本数据类型以及对应的包装类、String、null");
-        }
-
+        return ParamCodecs.encode(obj, ParamCodecs.DEFAULT_FORMAT);
     }
 
     protected <T> T convert(String text, Type type) throws IOException {
@@ -548,90 +1426,92 @@ public class ClientInvocationHandler extends AbstractInvocationHandler {
         }
     }
 
-    protected <T> T convert(String text, Method method) throws IOException {
+    protected <T> T convert(String text, InvocationPlan plan) throws IOException {
 
-        if ("void".equals(method.getReturnType().getName())) {
+        if (plan.isVoidResult()) {
             return null;
-        } else if (String.class.equals(method.getReturnType())) {
-            return (T) convert(text, String.class);
-        } else if (method.getGenericReturnType() instanceof ParameterizedType) {
-            return (T) convert(text, method.getGenericReturnType());
+        } else if (plan.isStringResult()) {
+            return (T) text;
         } else {
-            return (T) convert(text, method.getReturnType());
+            return plan.getResultReader().readValue(text);
         }
     }
 
-    protected <T> T convertAsync(String text, Method method) throws IOException {
-        if ("void".equals(method.getReturnType().getName())) {
+    /**
+     * 从响应体流式解析返回值，只有返回值为 String 时才构造字符串
+     *
+     * @param content
+     * @param charset
+     * @param plan
+     *
+     * @return
+     *
+     * @throws IOException
+     */
+    protected Object readResponse(InputStream content, Charset charset, InvocationPlan plan) throws IOException {
+
+        if (plan.isVoidResult()) {
             return null;
-        } else if (String.class.equals(method.getReturnType())) {
-            return (T) convert(text, String.class);
-        } else if (method.getReturnType().equals(Future.class)
-                || Future.class.isAssignableFrom(method.getReturnType())) {
-            ParameterizedType returnType = (ParameterizedType) method.getGenericReturnType();
-            Type actualType = returnType.getActualTypeArguments()[0];
-            if (actualType instanceof ParameterizedType) { // 仍然是泛型
-                return (T) convert(text, actualType);
-            } else {
-                if (actualType.equals(String.class)) {
-                    return (T) convert(text, String.class);
-                } else {
-                    return (T) convert(text, actualType.getClass());
-                }
-            }
-        } else if (method.getGenericReturnType() instanceof ParameterizedType) {
-            return (T) convert(text, method.getGenericReturnType());
+        } else if (plan.isStringResult()) {
+            return ResponseReader.STRING.read(content, charset);
+        } else if (StandardCharsets.UTF_8.equals(charset)) {
+            // UTF-8 直接按字节解析
+            return plan.getResultReader().readValue(content);
         } else {
-            return (T) convert(text, method.getReturnType());
+            return plan.getResultReader().readValue(new InputStreamReader(content, charset));
         }
     }
 
     /**
-     * 判断是否自带callback函数参数
+     * 按元素读取 JSON 数组响应
+     * <p>
+     * 异步客户端已将响应体读入内存，元素在迭代时才反序列化
      *
-     * @param method
+     * @param response
+     * @param requestUrl
+     * @param plan
      *
-     * @return
+     * @return 元素迭代器，响应体不是数组时只有一个元素
+     *
+     * @throws IOException
      */
-    protected boolean hasCallback(Method method) {
-        Parameter[] parameters = method.getParameters();
-        if (parameters.length > 0) {
-            Parameter p = parameters[parameters.length - 1];
-            CallFunction function = p.getAnnotation(CallFunction.class);
-            if (function != null) {
-                if ("void".equals(method.getReturnType().getName())) {
-                    Type type = p.getParameterizedType();
-                    if (type instanceof ParameterizedType) {
-                        // 强制转型为带参数的泛型类型，
-                        ParameterizedType parameterizedType = (ParameterizedType) type;
-                        if (FutureCallback.class.equals(parameterizedType.getRawType())) {
-                            Type[] types = parameterizedType.getActualTypeArguments();
-                            if (types.length > 0) {
-                                Type actualType = types[0];
-                                if (HttpResponse.class.equals(actualType)) {
-                                    return true;
-                                }
-                            }
-                        }
-                    }
-                }
-            }
+    protected Iterator<Object> readElements(HttpResponse response, String requestUrl, InvocationPlan plan)
+            throws IOException {
+
+        ObjectReader reader = plan.getResultReader();
+        if (logger.isDebugEnabled()) {
+            String res = ResponseDecoder.decode(response, null, ResponseReader.STRING);
+            logger.debug("Aysnc RPC <== url: {}, result: {}", requestUrl, res);
+            return reader.readValues(res);
         }
-        return false;
-    }
 
-    protected Map<String, String> convert2Map(BaseModel baseModel) {
-        try {
-            String json = OBJECT_MAPPER.writeValueAsString(baseModel);
-            Map<String, Object> map = OBJECT_MAPPER.readValue(json, HashMap.class);
-            Map<String, String> ret = new HashMap<>();
-            map.forEach((k, v) -> ret.put(k, convertValue(v)));
-            return ret;
-        } catch (Exception e) {
-            logger.error(e.getMessage(), e);
+        ResponseDecoder.checkStatus(response);
+        InputStream content = ResponseDecoder.getContent(response.getEntity());
+        Charset charset = ResponseDecoder.getCharset(null, response);
+        if (StandardCharsets.UTF_8.equals(charset)) {
+            return reader.readValues(content);
         }
+        return reader.readValues(new InputStreamReader(content, charset));
+    }
+
+    /**
+     * 序列化 POSTJSON 请求体
+     *
+     * @param bodyWriter 为 null 时使用默认序列化
+     * @param body
+     *
+     * @return UTF-8 编码的 JSON
+     *
+     * @throws IOException
+     */
+    protected byte[] writeBody(ObjectWriter bodyWriter, Object body) throws IOException {
+        return bodyWriter == null ? OBJECT_MAPPER.writeValueAsBytes(body) : bodyWriter.writeValueAsBytes(body);
+    }
 
-        return new HashMap<>();
+    protected Map<String, String> convert2Map(BaseModel baseModel) {
+        Map<String, String> ret = new HashMap<>();
+        BEAN_FLATTENER.flatten(baseModel, ret);
+        return ret;
     }
 
     protected String toJsonString(Object obj) {
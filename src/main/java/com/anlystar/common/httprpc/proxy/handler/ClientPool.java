@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.proxy.handler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.PropertyResolver;
+
+import com.anlystar.common.httprpc.annotation.ClientConfig;
+import com.anlystar.common.httprpc.helper.AsyncHttpClientHelper;
+import com.anlystar.common.httprpc.helper.Http2Client;
+import com.anlystar.common.httprpc.helper.HttpClientConfig;
+import com.anlystar.common.httprpc.helper.HttpClientHelper;
+import com.anlystar.common.httprpc.transport.ApacheHttpTransport;
+import com.anlystar.common.httprpc.transport.HttpTransport;
+
+/**
+ * 标注了 {@link ClientConfig} 的接口独享的连接池
+ * <p>
+ * 同名客户端共享一个实例，以首次创建时的配置为准。未标注 {@link ClientConfig} 的接口按 Spring 环境中的全局配置
+ * 共享实例，见 {@link #forConfig(HttpClientConfig)}。Apache 同步和异步客户端在首次使用时才创建，启用 HTTP/2 时不创建
+ */
+public class ClientPool implements Closeable {
+
+    /**
+     * 客户端配置项前缀，完整配置项为 httprpc.clients.{name}.max-total
+     */
+    public final static String PREFIX = "httprpc.clients.";
+
+    /**
+     * 按全局配置共享的连接池名称
+     */
+    public final static String SHARED_NAME = "shared";
+
+    private final static ConcurrentMap<String, ClientPool> POOLS = new ConcurrentHashMap<>();
+
+    private final static ConcurrentMap<HttpClientConfig, ClientPool> SHARED_POOLS = new ConcurrentHashMap<>();
+
+    private final String name;
+    /**
+     * 创建连接池的注解，按配置共享的连接池为 null
+     */
+    private final ClientConfig clientConfig;
+    private final HttpClientConfig config;
+    private volatile CloseableHttpClient httpClient;
+    private final RequestConfig requestConfig;
+    private final RequestConfig asyncRequestConfig;
+    private volatile CloseableHttpAsyncClient asyncClient;
+    /**
+     * HTTP/2 客户端，未启用时为 null
+     */
+    private final Http2Client http2Client;
+    /**
+     * 发送请求的客户端实现，启用 HTTP/2 时为 {@link #http2Client}
+     */
+    private final HttpTransport transport;
+    /**
+     * 创建客户端时加锁，不使用 synchronized 以免虚拟线程被固定在载体线程上
+     */
+    private final ReentrantLock clientLock = new ReentrantLock();
+
+    private ClientPool(String name, ClientConfig clientConfig, HttpClientConfig config) {
+        this.name = name;
+        this.clientConfig = clientConfig;
+        this.config = config;
+        this.requestConfig = HttpClientHelper.createRequestConfig(config);
+        this.asyncRequestConfig = AsyncHttpClientHelper.createRequestConfig(config);
+        this.http2Client = createHttp2Client(name, config);
+        this.transport = http2Client != null ? http2Client
+                : new ApacheHttpTransport(this::getHttpClient, this::getRequestConfig, this::getAsyncClient,
+                        this::getAsyncRequestConfig);
+    }
+
+    private static Http2Client createHttp2Client(String name, HttpClientConfig config) {
+        if (!config.isHttp2()) {
+            return null;
+        }
+        if (!Http2Client.isSupported()) {
+            if (!System.getProperty("java.specification.version").startsWith("1.")) {
+                // Java 11 及以上运行时不支持说明 jar 未包含 META-INF/versions/11，需在 JDK 11 及以上构建
+                throw new IllegalStateException("jar 中缺少 Java 11 版本的 HTTP/2 客户端 -> " + name);
+            }
+            LoggerFactory.getLogger(ClientPool.class).warn("当前运行时不支持 HTTP/2 客户端，仍使用 HTTP/1.1 -> {}", name);
+            return null;
+        }
+        return Http2Client.create(config);
+    }
+
+    /**
+     * 获取接口的独立连接池
+     *
+     * @param clientInterface
+     * @param env
+     *
+     * @return 接口未标注 {@link ClientConfig} 时返回 null
+     *
+     * @throws IllegalArgumentException 显式指定了相同名称的接口注解配置不同
+     */
+    public static ClientPool forInterface(Class<?> clientInterface, PropertyResolver env) {
+        ClientConfig clientConfig = clientInterface.getAnnotation(ClientConfig.class);
+        if (clientConfig == null) {
+            return null;
+        }
+        // 未指定名称时使用全限定类名，不同包下的同名接口不共用连接池
+        String name = "".equals(clientConfig.name()) ? clientInterface.getName() : clientConfig.name();
+        ClientPool pool = POOLS.computeIfAbsent(name,
+                key -> new ClientPool(key, clientConfig, resolveConfig(key, clientConfig, env)));
+        if (!clientConfig.equals(pool.clientConfig)) {
+            throw new IllegalArgumentException("名称相同的 ClientConfig 配置不同 -> " + name + ", "
+                    + clientInterface.getName());
+        }
+        return pool;
+    }
+
+    /**
+     * 获取按配置共享的连接池，配置相同的 Spring 上下文共用一个实例，不会被其他上下文的配置替换或关闭
+     *
+     * @param config 创建后不应再修改
+     *
+     * @return
+     */
+    public static ClientPool forConfig(HttpClientConfig config) {
+        ClientPool pool = SHARED_POOLS.get(config);
+        if (pool == null) {
+            pool = SHARED_POOLS.computeIfAbsent(config, key -> new ClientPool(SHARED_NAME, null, key));
+        }
+        return pool;
+    }
+
+    /**
+     * 合并配置：默认值 -> 全局配置 -> 注解 -> 客户端配置
+     */
+    private static HttpClientConfig resolveConfig(String name, ClientConfig clientConfig, PropertyResolver env) {
+        HttpClientConfig config = HttpClientConfig.from(env, HttpClientConfig.DEFAULT_PREFIX);
+        if (clientConfig.connectTimeout() >= 0) {
+            config.setConnectTimeout(clientConfig.connectTimeout());
+        }
+        if (clientConfig.socketTimeout() >= 0) {
+            config.setSocketTimeout(clientConfig.socketTimeout());
+        }
+        if (clientConfig.connectionRequestTimeout() >= 0) {
+            config.setConnectionRequestTimeout(clientConfig.connectionRequestTimeout());
+        }
+        if (clientConfig.maxTotal() > 0) {
+            config.setMaxTotal(clientConfig.maxTotal());
+        }
+        if (clientConfig.maxPerRoute() > 0) {
+            config.setMaxPerRoute(clientConfig.maxPerRoute());
+        }
+        if (clientConfig.ioThreadCount() > 0) {
+            config.setIoThreadCount(clientConfig.ioThreadCount());
+        }
+        if (clientConfig.http2()) {
+            config.setHttp2(true);
+        }
+        return config.merge(env, PREFIX + name + ".");
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public HttpClientConfig getConfig() {
+        return config;
+    }
+
+    public CloseableHttpClient getHttpClient() {
+        CloseableHttpClient client = httpClient;
+        if (client == null) {
+            clientLock.lock();
+            try {
+                client = httpClient;
+                if (client == null) {
+                    client = HttpClientHelper.createHttpClient(config);
+                    httpClient = client;
+                }
+            } finally {
+                clientLock.unlock();
+            }
+        }
+        return client;
+    }
+
+    public RequestConfig getRequestConfig() {
+        return requestConfig;
+    }
+
+    /**
+     * 异步客户端的默认请求配置
+     *
+     * @return
+     */
+    public RequestConfig getAsyncRequestConfig() {
+        return asyncRequestConfig;
+    }
+
+    /**
+     * HTTP/2 客户端
+     *
+     * @return 未启用或当前运行时不支持时返回 null
+     */
+    public Http2Client getHttp2Client() {
+        return http2Client;
+    }
+
+    /**
+     * 使用本连接池发送请求的客户端实现
+     *
+     * @return
+     */
+    public HttpTransport getTransport() {
+        return transport;
+    }
+
+    public CloseableHttpAsyncClient getAsyncClient() {
+        CloseableHttpAsyncClient client = asyncClient;
+        if (client == null) {
+            clientLock.lock();
+            try {
+                client = asyncClient;
+                if (client == null) {
+                    client = AsyncHttpClientHelper.createHttpAsyncClient(config);
+                    asyncClient = client;
+                }
+            } finally {
+                clientLock.unlock();
+            }
+        }
+        return client;
+    }
+
+    @Override
+    public void close() throws IOException {
+        POOLS.remove(name, this);
+        SHARED_POOLS.remove(config, this);
+        if (httpClient != null) {
+            httpClient.close();
+        }
+        if (http2Client != null) {
+            http2Client.close();
+        }
+        if (asyncClient != null) {
+            asyncClient.close();
+        }
+    }
+}
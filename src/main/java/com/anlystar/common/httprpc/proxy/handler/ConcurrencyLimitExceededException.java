@@ -0,0 +1,16 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.proxy.handler;
+
+/**
+ * 发往同一服务端地址的并发请求数达到自适应限制，请求未发送
+ * <p>
+ * 属于本地过载保护，不计入负载均衡节点和熔断器的失败
+ */
+public class ConcurrencyLimitExceededException extends RuntimeException {
+
+    public ConcurrencyLimitExceededException(String route, int limit) {
+        super("并发请求数达到限制 " + limit + "，拒绝请求 -> " + route);
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.proxy.handler;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.concurrent.FutureCallback;
+import org.springframework.core.env.PropertyResolver;
+
+import com.anlystar.common.httprpc.helper.HttpStatusException;
+import com.anlystar.common.httprpc.helper.ResponseReader;
+import com.anlystar.common.httprpc.transport.HttpTransport;
+import com.anlystar.common.httprpc.transport.TransportRequest;
+import com.google.common.collect.MapMaker;
+
+/**
+ * 按服务端地址限制并发请求数，限制由 {@link AdaptiveLimit} 根据耗时自动调整
+ * <p>
+ * 达到限制时同步请求最多等待 queue-timeout，异步请求不占用调用线程，直接以
+ * {@link ConcurrencyLimitExceededException} 失败。同一个客户端实现的所有接口共享限制
+ */
+public class ConcurrencyLimitingTransport implements HttpTransport {
+
+    /**
+     * 配置项前缀，完整配置项为 httprpc.concurrency-limit.enabled
+     */
+    public final static String PREFIX = "httprpc.concurrency-limit.";
+    /**
+     * 默认初始限制
+     */
+    public final static int DEFAULT_INITIAL_LIMIT = 20;
+    /**
+     * 默认最小限制
+     */
+    public final static int DEFAULT_MIN_LIMIT = 4;
+    /**
+     * 默认最大限制
+     */
+    public final static int DEFAULT_MAX_LIMIT = 200;
+    /**
+     * 默认同步请求的最长排队时间，单位毫秒
+     */
+    public final static long DEFAULT_QUEUE_TIMEOUT = 20;
+
+    /**
+     * 包装后的实现引用了被包装的实现，键和值都是弱引用：使用该客户端实现的调用处理器都被回收后，
+     * 包装和被包装的实现随之回收
+     */
+    private final static ConcurrentMap<HttpTransport, ConcurrencyLimitingTransport> TRANSPORTS =
+            new MapMaker().weakKeys().weakValues().makeMap();
+
+    private final HttpTransport delegate;
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long queueTimeoutNanos;
+    private final ConcurrentMap<String, AdaptiveLimit> limits = new ConcurrentHashMap<>();
+
+    /**
+     * @param delegate
+     * @param env 为 null 时使用默认配置
+     */
+    public ConcurrencyLimitingTransport(HttpTransport delegate, PropertyResolver env) {
+        this.delegate = delegate;
+        this.initialLimit = env == null ? DEFAULT_INITIAL_LIMIT
+                : env.getProperty(PREFIX + "initial-limit", Integer.class, DEFAULT_INITIAL_LIMIT);
+        this.minLimit = env == null ? DEFAULT_MIN_LIMIT
+                : env.getProperty(PREFIX + "min-limit", Integer.class, DEFAULT_MIN_LIMIT);
+        this.maxLimit = env == null ? DEFAULT_MAX_LIMIT
+                : env.getProperty(PREFIX + "max-limit", Integer.class, DEFAULT_MAX_LIMIT);
+        long queueTimeout = env == null ? DEFAULT_QUEUE_TIMEOUT
+                : env.getProperty(PREFIX + "queue-timeout", Long.class, DEFAULT_QUEUE_TIMEOUT);
+        this.queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(queueTimeout);
+        if (minLimit <= 0 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("并发限制的最小值必须大于 0 且不大于最大值 -> " + minLimit + ", " + maxLimit);
+        }
+    }
+
+    /**
+     * 配置了 httprpc.concurrency-limit.enabled=true 时包装客户端实现，同一个客户端实现在仍被使用时只包装一次
+     *
+     * @param delegate
+     * @param env
+     *
+     * @return 未启用时返回 delegate
+     */
+    public static HttpTransport wrap(HttpTransport delegate, PropertyResolver env) {
+        if (env == null || !env.getProperty(PREFIX + "enabled", Boolean.class, false)) {
+            return delegate;
+        }
+        return TRANSPORTS.computeIfAbsent(delegate, d -> new ConcurrencyLimitingTransport(d, env));
+    }
+
+    /**
+     * 获取服务端地址的并发限制
+     *
+     * @param requestUrl
+     *
+     * @return
+     */
+    public AdaptiveLimit getLimit(String requestUrl) {
+        String route = EndpointBreaker.endpoint(requestUrl);
+        AdaptiveLimit limit = limits.get(route);
+        if (limit == null) {
+            limit = limits.computeIfAbsent(route, r -> new AdaptiveLimit(r, initialLimit, minLimit, maxLimit));
+        }
+        return limit;
+    }
+
+    @Override
+    public <T> T execute(TransportRequest request, ResponseReader<T> reader) throws IOException {
+        AdaptiveLimit limit = getLimit(request.getUrl());
+        try {
+            if (!limit.acquire(queueTimeoutNanos)) {
+                throw new ConcurrencyLimitExceededException(limit.getRoute(), limit.getLimit());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException exception = new InterruptedIOException("等待并发限制时被中断 -> " + request.getUrl());
+            exception.initCause(e);
+            throw exception;
+        }
+
+        long start = System.nanoTime();
+        // reader 被调用或状态码异常说明已收到响应，耗时可用于调整限制
+        boolean[] responded = new boolean[1];
+        try {
+            T result = delegate.execute(request, (content, charset) -> {
+                responded[0] = true;
+                return reader.read(content, charset);
+            });
+            limit.release(System.nanoTime() - start, false);
+            return result;
+        } catch (IOException | RuntimeException | Error e) {
+            if (responded[0] || e instanceof HttpStatusException) {
+                limit.release(System.nanoTime() - start, false);
+            } else if (e instanceof InterruptedIOException) {
+                limit.release(System.nanoTime() - start, true);
+            } else {
+                limit.cancel();
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public Future<?> execute(TransportRequest request, FutureCallback<HttpResponse> callback) {
+        AdaptiveLimit limit = getLimit(request.getUrl());
+        boolean acquired;
+        try {
+            acquired = limit.acquire(0);
+        } catch (InterruptedException e) {
+            // 不等待时不会被中断
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            callback.failed(new ConcurrencyLimitExceededException(limit.getRoute(), limit.getLimit()));
+            return CompletableFuture.completedFuture(null);
+        }
+
+        long start = System.nanoTime();
+        FutureCallback<HttpResponse> limited = new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse response) {
+                limit.release(System.nanoTime() - start, false);
+                callback.completed(response);
+            }
+
+            @Override
+            public void failed(Exception e) {
+                if (e instanceof InterruptedIOException) {
+                    limit.release(System.nanoTime() - start, true);
+                } else {
+                    limit.cancel();
+                }
+                callback.failed(e);
+            }
+
+            @Override
+            public void cancelled() {
+                limit.cancel();
+                callback.cancelled();
+            }
+        };
+        try {
+            return delegate.execute(request, limited);
+        } catch (RuntimeException e) {
+            limit.cancel();
+            throw e;
+        }
+    }
+}
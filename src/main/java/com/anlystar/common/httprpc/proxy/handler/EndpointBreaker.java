@@ -0,0 +1,388 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.proxy.handler;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.concurrent.FutureCallback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.anlystar.common.httprpc.annotation.CircuitBreaker;
+import com.anlystar.common.httprpc.helper.HttpStatusException;
+import com.anlystar.common.httprpc.metrics.CircuitBreakerMetricsMBean;
+import com.anlystar.common.httprpc.metrics.MetricsRegistries;
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+/**
+ * 单个接口方法访问单个服务端地址的熔断器
+ * <p>
+ * 按最近若干次调用的结果统计失败率和慢调用率。关闭状态下只读一次 volatile 字段，
+ * 调用结束时在锁内更新窗口。同一方法和地址全局共享一个实例
+ */
+public final class EndpointBreaker implements CircuitBreakerMetricsMBean {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final static int FAILED = 1;
+    private final static int SLOW = 2;
+
+    private final static ConcurrentMap<Method, ConcurrentMap<String, EndpointBreaker>> BREAKERS =
+            new ConcurrentHashMap<>();
+
+    private final static List<CircuitBreakerListener> LISTENERS = new CopyOnWriteArrayList<>();
+
+    private static Logger logger = LoggerFactory.getLogger(EndpointBreaker.class);
+
+    private final String name;
+    private final CircuitBreaker config;
+    private final int minimumCalls;
+    private final long slowCallNanos;
+
+    /**
+     * 只在窗口更新和状态变化时加锁，不做 IO
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * 环形窗口，每次调用的结果为 {@link #FAILED} 和 {@link #SLOW} 的组合
+     */
+    private final byte[] outcomes;
+    private int position;
+    private int bufferedCalls;
+    private int failedCalls;
+    private int slowCalls;
+    private long openUntil;
+    private int halfOpenPermits;
+    private volatile State state = State.CLOSED;
+
+    private final LongAdder notPermitted = new LongAdder();
+    private final AtomicLong transitions = new AtomicLong();
+
+    private EndpointBreaker(String name, CircuitBreaker config) {
+        this.name = name;
+        this.config = config;
+        this.outcomes = new byte[config.slidingWindowSize()];
+        this.minimumCalls = Math.min(config.minimumNumberOfCalls(), config.slidingWindowSize());
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(config.slowCallDuration());
+    }
+
+    /**
+     * 获取方法访问某个地址的熔断器，首次获取时创建并注册统计
+     *
+     * @param method
+     * @param config
+     * @param endpoint 服务端地址，见 {@link #endpoint(String)}
+     *
+     * @return
+     */
+    public static EndpointBreaker forEndpoint(Method method, CircuitBreaker config, String endpoint) {
+        ConcurrentMap<String, EndpointBreaker> breakers = BREAKERS.get(method);
+        if (breakers == null) {
+            breakers = BREAKERS.computeIfAbsent(method, m -> new ConcurrentHashMap<>());
+        }
+        EndpointBreaker breaker = breakers.get(endpoint);
+        if (breaker != null) {
+            return breaker;
+        }
+        EndpointBreaker created = new EndpointBreaker(method.getDeclaringClass().getName() + "."
+                + MetricsRegistries.signature(method) + " -> " + endpoint, config);
+        breaker = breakers.putIfAbsent(endpoint, created);
+        if (breaker != null) {
+            return breaker;
+        }
+        MetricsRegistries.registerCircuitBreaker(method, endpoint, created);
+        return created;
+    }
+
+    /**
+     * 请求 URL 的服务端地址，即 scheme://host:port 部分
+     *
+     * @param requestUrl
+     *
+     * @return
+     */
+    public static String endpoint(String requestUrl) {
+        int start = requestUrl.indexOf("://");
+        start = start < 0 ? 0 : start + 3;
+        for (int i = start; i < requestUrl.length(); i++) {
+            char c = requestUrl.charAt(i);
+            if (c == '/' || c == '?' || c == '#') {
+                return requestUrl.substring(0, i);
+            }
+        }
+        return requestUrl;
+    }
+
+    public static void addListener(CircuitBreakerListener listener) {
+        LISTENERS.add(listener);
+    }
+
+    public static void removeListener(CircuitBreakerListener listener) {
+        LISTENERS.remove(listener);
+    }
+
+    /**
+     * 是否计为失败：连接失败、IO 异常和 5xx 响应，响应体解析失败和 4xx 不计
+     *
+     * @param error
+     *
+     * @return
+     */
+    public static boolean isFailure(Throwable error) {
+        for (Throwable e = error; e != null; e = e.getCause() == e ? null : e.getCause()) {
+            if (e instanceof HttpStatusException) {
+                return ((HttpStatusException) e).isServerError();
+            }
+            if (e instanceof JsonProcessingException) {
+                return false;
+            }
+            if (e instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 申请发送一次请求，打开时等待时间已过则进入半开
+     *
+     * @return 不允许发送时返回 false，调用方应直接失败
+     */
+    public boolean tryAcquire() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        State from = null;
+        boolean permitted;
+        lock.lock();
+        try {
+            if (state == State.OPEN && System.currentTimeMillis() >= openUntil) {
+                from = transition(State.HALF_OPEN);
+                halfOpenPermits = config.permittedNumberOfCallsInHalfOpenState();
+            }
+            if (state == State.CLOSED) {
+                permitted = true;
+            } else if (state == State.HALF_OPEN && halfOpenPermits > 0) {
+                halfOpenPermits--;
+                permitted = true;
+            } else {
+                permitted = false;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (from != null) {
+            fire(from, State.HALF_OPEN);
+        }
+        if (!permitted) {
+            notPermitted.increment();
+        }
+        return permitted;
+    }
+
+    /**
+     * 记录一次调用结果
+     *
+     * @param durationNanos 耗时
+     * @param failed 是否失败，见 {@link #isFailure(Throwable)}
+     */
+    public void onComplete(long durationNanos, boolean failed) {
+        int outcome = (failed ? FAILED : 0) | (durationNanos >= slowCallNanos ? SLOW : 0);
+        State from = null;
+        State to = null;
+        lock.lock();
+        try {
+            // 打开前发出的调用不再计入
+            if (state == State.OPEN) {
+                return;
+            }
+            add(outcome);
+            if (state == State.HALF_OPEN) {
+                if (bufferedCalls >= config.permittedNumberOfCallsInHalfOpenState()) {
+                    to = isExceeded() ? State.OPEN : State.CLOSED;
+                }
+            } else if (bufferedCalls >= minimumCalls && isExceeded()) {
+                to = State.OPEN;
+            }
+            if (to == State.OPEN) {
+                openUntil = System.currentTimeMillis() + config.waitDurationInOpenState();
+            }
+            if (to != null) {
+                from = transition(to);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (to != null) {
+            fire(from, to);
+        }
+    }
+
+    /**
+     * 已申请但未完成的调用被取消，半开时归还试探名额
+     */
+    public void release() {
+        if (state != State.HALF_OPEN) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (state == State.HALF_OPEN) {
+                halfOpenPermits++;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 包装调用方的回调，在回调前记录调用结果，5xx 响应计为失败
+     *
+     * @param callback
+     * @param start 开始时间，{@link System#nanoTime()}
+     *
+     * @return
+     */
+    public FutureCallback<HttpResponse> wrap(FutureCallback<HttpResponse> callback, long start) {
+        return new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse result) {
+                onComplete(System.nanoTime() - start, result.getStatusLine().getStatusCode() >= 500);
+                callback.completed(result);
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                onComplete(System.nanoTime() - start, isFailure(ex));
+                callback.failed(ex);
+            }
+
+            @Override
+            public void cancelled() {
+                release();
+                callback.cancelled();
+            }
+        };
+    }
+
+    private void add(int outcome) {
+        if (bufferedCalls == outcomes.length) {
+            int evicted = outcomes[position];
+            failedCalls -= evicted & FAILED;
+            slowCalls -= (evicted & SLOW) >> 1;
+        } else {
+            bufferedCalls++;
+        }
+        outcomes[position] = (byte) outcome;
+        position = (position + 1) % outcomes.length;
+        failedCalls += outcome & FAILED;
+        slowCalls += (outcome & SLOW) >> 1;
+    }
+
+    private boolean isExceeded() {
+        return failedCalls * 100L >= (long) config.failureRateThreshold() * bufferedCalls
+                || slowCalls * 100L >= (long) config.slowCallRateThreshold() * bufferedCalls;
+    }
+
+    /**
+     * 切换状态并清空窗口，在锁内调用
+     *
+     * @return 原状态
+     */
+    private State transition(State to) {
+        State from = state;
+        state = to;
+        position = 0;
+        bufferedCalls = 0;
+        failedCalls = 0;
+        slowCalls = 0;
+        transitions.incrementAndGet();
+        return from;
+    }
+
+    private void fire(State from, State to) {
+        if (to == State.OPEN) {
+            logger.warn("熔断器打开 -> {}", name);
+        } else {
+            logger.info("熔断器 {} -> {}, {}", from, to, name);
+        }
+        for (CircuitBreakerListener listener : LISTENERS) {
+            try {
+                listener.onStateTransition(this, from, to);
+            } catch (RuntimeException e) {
+                logger.error(e.getMessage(), e);
+            }
+        }
+    }
+
+    public State getCurrentState() {
+        return state;
+    }
+
+    @Override
+    public String getState() {
+        return state.name();
+    }
+
+    @Override
+    public double getFailureRate() {
+        lock.lock();
+        try {
+            return bufferedCalls < minimumCalls ? -1 : failedCalls * 100D / bufferedCalls;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public double getSlowCallRate() {
+        lock.lock();
+        try {
+            return bufferedCalls < minimumCalls ? -1 : slowCalls * 100D / bufferedCalls;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getBufferedCalls() {
+        lock.lock();
+        try {
+            return bufferedCalls;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getNotPermittedCount() {
+        return notPermitted.sum();
+    }
+
+    @Override
+    public long getStateTransitionCount() {
+        return transitions.get();
+    }
+
+    @Override
+    public String toString() {
+        return name + " " + state;
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.proxy.handler;
+
+import java.io.IOException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.concurrent.FutureCallback;
+
+import com.anlystar.common.httprpc.annotation.Hedge;
+import com.anlystar.common.httprpc.metrics.MethodMetrics;
+
+/**
+ * 单个接口方法的对冲策略
+ * <p>
+ * 对冲延迟按方法已观测的耗时分位数计算，每秒最多重新计算一次；
+ * 预算为令牌桶，初始为满，每次调用存入 maxHedgePercent 个单位，每个对冲请求消耗 100 个单位
+ */
+public final class HedgePolicy {
+
+    /**
+     * 已观测调用数达到该值后才按分位数对冲
+     */
+    private final static long MIN_SAMPLES = 100;
+    private final static long REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private final static long HEDGE_COST = 100;
+    /**
+     * 最多积累 10 个对冲请求的预算
+     */
+    private final static long MAX_TOKENS = 10 * HEDGE_COST;
+
+    /**
+     * 只负责到期发送对冲请求，请求本身是异步的，单线程即可
+     */
+    private final static ScheduledThreadPoolExecutor SCHEDULER;
+
+    static {
+        SCHEDULER = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "httprpc-hedge");
+            thread.setDaemon(true);
+            return thread;
+        });
+        SCHEDULER.setRemoveOnCancelPolicy(true);
+    }
+
+    private final Hedge hedge;
+    private final MethodMetrics metrics;
+    private final AtomicLong tokens = new AtomicLong(MAX_TOKENS);
+    private volatile long delayNanos = -1;
+    private volatile long refreshAt = System.nanoTime();
+
+    public HedgePolicy(Hedge hedge, MethodMetrics metrics) {
+        this.hedge = hedge;
+        this.metrics = metrics;
+    }
+
+    /**
+     * 发送请求，超过对冲延迟未响应时再发送一份，先返回的成功响应交给 callback
+     *
+     * @param sender
+     * @param callback
+     *
+     * @throws IOException 首个请求发送失败
+     */
+    public void execute(Sender sender, FutureCallback<HttpResponse> callback) throws IOException {
+        deposit();
+        long delay = getDelayNanos();
+        if (delay < 0) {
+            sender.send(false, callback);
+            return;
+        }
+        Race race = new Race(callback);
+        race.sent(0, sender.send(false, race.attempts[0]));
+        race.timer = SCHEDULER.schedule(() -> race.hedge(sender), delay, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return 对冲延迟（纳秒），已观测的调用数不足时返回 -1
+     */
+    public long getDelayNanos() {
+        if (hedge.delay() > 0) {
+            return TimeUnit.MILLISECONDS.toNanos(hedge.delay());
+        }
+        long now = System.nanoTime();
+        if (now - refreshAt >= 0) {
+            refreshAt = now + REFRESH_NANOS;
+            delayNanos = metrics.getLatency().getCount() < MIN_SAMPLES
+                    ? -1 : metrics.getLatency().getPercentile(hedge.percentile());
+        }
+        return delayNanos;
+    }
+
+    private void deposit() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current >= MAX_TOKENS) {
+                return;
+            }
+        } while (!tokens.compareAndSet(current, Math.min(current + hedge.maxHedgePercent(), MAX_TOKENS)));
+    }
+
+    private boolean tryAcquire() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current < HEDGE_COST) {
+                return false;
+            }
+        } while (!tokens.compareAndSet(current, current - HEDGE_COST));
+        return true;
+    }
+
+    /**
+     * 发送一次请求
+     */
+    @FunctionalInterface
+    public interface Sender {
+
+        /**
+         * @param hedged 是否为对冲请求
+         * @param callback
+         *
+         * @return 用于取消落后的请求
+         *
+         * @throws IOException
+         */
+        Future<?> send(boolean hedged, FutureCallback<HttpResponse> callback) throws IOException;
+    }
+
+    /**
+     * 首个请求和对冲请求的竞争，只回调一次
+     */
+    private final class Race {
+
+        private final FutureCallback<HttpResponse> callback;
+        private final AtomicBoolean done = new AtomicBoolean();
+        /**
+         * 已发送且未结束的请求数
+         */
+        private final AtomicInteger pending = new AtomicInteger(1);
+        private final AtomicReferenceArray<Future<?>> requests = new AtomicReferenceArray<>(2);
+        private final Attempt[] attempts = {new Attempt(0), new Attempt(1)};
+        private volatile ScheduledFuture<?> timer;
+
+        Race(FutureCallback<HttpResponse> callback) {
+            this.callback = callback;
+        }
+
+        void hedge(Sender sender) {
+            if (done.get() || !tryAcquire()) {
+                return;
+            }
+            pending.incrementAndGet();
+            if (done.get()) {
+                pending.decrementAndGet();
+                tokens.addAndGet(HEDGE_COST);
+                return;
+            }
+            metrics.hedged();
+            try {
+                sent(1, sender.send(true, attempts[1]));
+            } catch (IOException | RuntimeException e) {
+                attempts[1].failed(e);
+            }
+        }
+
+        void sent(int index, Future<?> request) {
+            requests.set(index, request);
+            // 已有结果时取消，对已完成的请求无影响
+            if (done.get() && request != null) {
+                request.cancel(true);
+            }
+        }
+
+        /**
+         * 成功响应直接作为结果，失败时只有最后一个请求的结果交给调用方
+         */
+        void finish(int index, boolean success, Runnable deliver) {
+            boolean last = pending.decrementAndGet() == 0;
+            if ((success || last) && done.compareAndSet(false, true)) {
+                ScheduledFuture<?> scheduled = timer;
+                if (scheduled != null) {
+                    scheduled.cancel(false);
+                }
+                Future<?> other = requests.get(1 - index);
+                if (other != null) {
+                    other.cancel(true);
+                }
+                deliver.run();
+            }
+        }
+
+        private final class Attempt implements FutureCallback<HttpResponse> {
+
+            private final int index;
+
+            Attempt(int index) {
+                this.index = index;
+            }
+
+            @Override
+            public void completed(HttpResponse response) {
+                finish(index, response.getStatusLine().getStatusCode() < 500, () -> callback.completed(response));
+            }
+
+            @Override
+            public void failed(Exception e) {
+                finish(index, false, () -> callback.failed(e));
+            }
+
+            @Override
+            public void cancelled() {
+                finish(index, false, callback::cancelled);
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.proxy.handler;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+
+import com.anlystar.common.httprpc.annotation.RequestMethod;
+import com.anlystar.common.httprpc.annotation.SingleFlight;
+import com.anlystar.common.httprpc.callback.Callback;
+
+/**
+ * 进行中的请求，用于合并并发的相同请求
+ * <p>
+ * 第一个调用方发起请求，之后的相同请求在其完成前直接等待同一个结果，请求完成后立即移除
+ */
+public final class InFlightRequests {
+
+    private final ConcurrentMap<Key, CompletableFuture<Object>> flights = new ConcurrentHashMap<>();
+
+    /**
+     * 加入进行中的相同请求，没有时由 call 发起请求
+     *
+     * @param key
+     * @param call 发起请求，完成时回调结果；在当前线程同步执行时返回前已完成
+     *
+     * @return 请求结果，失败时以原始异常完成
+     */
+    public CompletableFuture<Object> execute(Key key, Consumer<Callback<Object>> call) {
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> existing = flights.putIfAbsent(key, flight);
+        if (existing != null) {
+            return existing;
+        }
+
+        Callback<Object> callback = new Callback<Object>() {
+            @Override
+            public void handleResult(Object result) {
+                // 先移除再通知，之后到达的请求重新发起
+                flights.remove(key, flight);
+                flight.complete(result);
+            }
+
+            @Override
+            public void handleError(Throwable error) {
+                flights.remove(key, flight);
+                flight.completeExceptionally(error);
+            }
+        };
+        try {
+            call.accept(callback);
+        } catch (RuntimeException e) {
+            callback.handleError(e);
+        }
+        return flight;
+    }
+
+    /**
+     * 进行中的请求数
+     *
+     * @return
+     */
+    public int size() {
+        return flights.size();
+    }
+
+    /**
+     * 生成请求标识
+     *
+     * @param plan
+     * @param requestUrl
+     * @param headers
+     * @param body 表单参数，POSTJSON 时为序列化后的请求体
+     *
+     * @return
+     */
+    public static Key key(InvocationPlan plan, String requestUrl, Map<String, String> headers, Object body) {
+        SingleFlight singleFlight = plan.getSingleFlight();
+        Map<String, String> keyHeaders;
+        if (singleFlight == null || singleFlight.headers().length == 0) {
+            keyHeaders = headers;
+        } else {
+            // header 名称不区分大小写
+            keyHeaders = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            for (String name : singleFlight.headers()) {
+                for (Map.Entry<String, String> header : headers.entrySet()) {
+                    if (name.equalsIgnoreCase(header.getKey())) {
+                        keyHeaders.put(header.getKey(), header.getValue());
+                    }
+                }
+            }
+        }
+        return new Key(plan.getMethod(), plan.getRequestMethod(), requestUrl, keyHeaders, body);
+    }
+
+    /**
+     * 请求标识
+     */
+    public static final class Key {
+
+        private final Method method;
+        private final RequestMethod requestMethod;
+        private final String requestUrl;
+        private final Map<String, String> headers;
+        private final Object body;
+        private final int hash;
+
+        Key(Method method, RequestMethod requestMethod, String requestUrl, Map<String, String> headers,
+            Object body) {
+            this.method = method;
+            this.requestMethod = requestMethod;
+            this.requestUrl = requestUrl;
+            this.headers = headers;
+            this.body = body;
+            int h = Objects.hash(method, requestMethod, requestUrl, headers);
+            this.hash = 31 * h + (body instanceof byte[] ? Arrays.hashCode((byte[]) body) : Objects.hashCode(body));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) o;
+            return hash == that.hash && method.equals(that.method) && requestMethod == that.requestMethod
+                    && requestUrl.equals(that.requestUrl) && Objects.equals(headers, that.headers)
+                    && Objects.deepEquals(body, that.body);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
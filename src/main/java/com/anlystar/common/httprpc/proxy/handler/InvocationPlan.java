@@ -0,0 +1,747 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.proxy.handler;
+
+import java.io.UnsupportedEncodingException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AnnotatedArrayType;
+import java.lang.reflect.AnnotatedParameterizedType;
+import java.lang.reflect.AnnotatedType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Parameter;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.validation.Constraint;
+import javax.validation.Valid;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.concurrent.FutureCallback;
+
+import com.anlystar.common.httprpc.annotation.CallFunction;
+import com.anlystar.common.httprpc.annotation.Cached;
+import com.anlystar.common.httprpc.annotation.CircuitBreaker;
+import com.anlystar.common.httprpc.annotation.Collapse;
+import com.anlystar.common.httprpc.annotation.GzipRequest;
+import com.anlystar.common.httprpc.annotation.Hedge;
+import com.anlystar.common.httprpc.annotation.HttpRequest;
+import com.anlystar.common.httprpc.annotation.PathVariable;
+import com.anlystar.common.httprpc.annotation.ReqHeader;
+import com.anlystar.common.httprpc.annotation.ReqParam;
+import com.anlystar.common.httprpc.annotation.ReqSign;
+import com.anlystar.common.httprpc.annotation.RequestBody;
+import com.anlystar.common.httprpc.annotation.RequestMethod;
+import com.anlystar.common.httprpc.annotation.SingleFlight;
+import com.anlystar.common.httprpc.annotation.Timeout;
+import com.anlystar.common.httprpc.callback.CallbackCompletableFuture;
+import com.anlystar.common.httprpc.callback.CallbackFuture;
+import com.anlystar.common.httprpc.callback.CallbackListenableFuture;
+import com.anlystar.common.httprpc.codec.ParamCodecs;
+import com.anlystar.common.httprpc.metrics.MethodMetrics;
+import com.anlystar.common.httprpc.metrics.MetricsRegistries;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+
+/**
+ * 单个接口方法的调用计划
+ * <p>
+ * 注解、参数、返回值等反射信息只在首次调用时解析一次，之后每次调用直接使用解析结果
+ */
+public final class InvocationPlan {
+
+    private final static TypeFactory TYPE_FACTORY = TypeFactory.defaultInstance();
+
+    /**
+     * Reactive Streams 为可选依赖，按类名识别以免未引入时加载失败
+     */
+    private final static String PUBLISHER_CLASS = "org.reactivestreams.Publisher";
+    /**
+     * 按基础 URL 缓存的模板数上限，超过时清空，避免配置多次刷新后无限增长
+     */
+    private final static int MAX_URL_TEMPLATES = 64;
+
+    /**
+     * 对应的接口方法
+     */
+    private final Method method;
+    /**
+     * 请求注解
+     */
+    private final HttpRequest httpRequest;
+    /**
+     * 请求方法
+     */
+    private final RequestMethod requestMethod;
+    /**
+     * 异步方式
+     */
+    private final AsyncMode asyncMode;
+    /**
+     * 类和方法上声明的固定 header
+     */
+    private final Map<String, String> staticHeaders;
+    /**
+     * 全部参数（含回调参数）
+     */
+    private final ParamSlot[] slots;
+    /**
+     * 参与请求的参数个数（不含回调参数）
+     */
+    private final int requestSlotCount;
+    /**
+     * 签名参数，没有时为 null
+     */
+    private final ParamSlot signSlot;
+    /**
+     * 参数上是否声明了校验注解
+     */
+    private final boolean validationRequired;
+    /**
+     * 是否有路径变量参数
+     */
+    private final boolean pathVariables;
+    /**
+     * 最近一次使用的 URL 模板，基础 URL 变化时重新解析
+     */
+    private volatile UrlTemplate urlTemplate;
+    /**
+     * 负载均衡时多个基础 URL 交替使用，按基础 URL 缓存模板
+     */
+    private final ConcurrentMap<String, UrlTemplate> urlTemplates = new ConcurrentHashMap<>();
+    /**
+     * 返回值是否为 void
+     */
+    private final boolean voidResult;
+    /**
+     * 返回值是否为 String
+     */
+    private final boolean stringResult;
+    /**
+     * 结果的反序列化类型，异步方法为 Future 的泛型参数，Publisher 为元素类型
+     */
+    private final JavaType resultType;
+    /**
+     * 返回值的反序列化器，void 方法为 null
+     */
+    private final ObjectReader resultReader;
+    /**
+     * POSTJSON 请求体的序列化器，其它请求方式为 null
+     */
+    private final ObjectWriter bodyWriter;
+    /**
+     * 调用统计
+     */
+    private final MethodMetrics metrics;
+    /**
+     * 合并并发相同请求的配置，未标注时为 null
+     */
+    private final SingleFlight singleFlight;
+    /**
+     * 合并为批量调用的配置，未标注时为 null
+     */
+    private final Collapse collapse;
+    /**
+     * 合并调用对应的批量方法
+     */
+    private final Method batchMethod;
+    /**
+     * 结果缓存配置，未标注时为 null
+     */
+    private final Cached cached;
+    /**
+     * 熔断配置，方法和接口都未标注时为 null
+     */
+    private final CircuitBreaker circuitBreaker;
+    /**
+     * 对冲策略，未标注 {@link Hedge} 时为 null
+     */
+    private final HedgePolicy hedgePolicy;
+    /**
+     * 超时时间，单位毫秒，方法和接口都未标注 {@link Timeout} 时为 0
+     */
+    private final long timeout;
+    /**
+     * 请求体达到该字节数时 gzip 压缩，未标注 {@link GzipRequest} 或 GET 请求时为 -1
+     */
+    private final int gzipThreshold;
+
+    private InvocationPlan(Method method, ObjectMapper mapper) {
+        this.method = method;
+        this.httpRequest = method.getAnnotation(HttpRequest.class);
+
+        if (httpRequest == null) {
+            throw new IllegalArgumentException("未配置 HttpRequest 注解 -> " + method);
+        }
+
+        if ("".equals(httpRequest.url()) && "".equals(httpRequest.urlKey())) {
+            throw new IllegalArgumentException("未配置URL信息");
+        }
+
+        Class<?> returnType = method.getReturnType();
+        boolean voidReturn = void.class.equals(returnType);
+        boolean publisher = PUBLISHER_CLASS.equals(returnType.getName());
+
+        if (httpRequest.async() && !(voidReturn || publisher || returnType.isAssignableFrom(CallbackFuture.class)
+                || returnType.isAssignableFrom(CallbackCompletableFuture.class)
+                || returnType.isAssignableFrom(CallbackListenableFuture.class))) {
+            throw new IllegalArgumentException("不支持的返回值");
+        }
+
+        this.requestMethod = httpRequest.method();
+        this.staticHeaders = resolveStaticHeaders(method);
+
+        Parameter[] parameters = method.getParameters();
+        this.slots = new ParamSlot[parameters.length];
+        for (int i = 0; i < parameters.length; i++) {
+            slots[i] = new ParamSlot(i, parameters[i]);
+        }
+
+        boolean callback = httpRequest.async() && voidReturn && slots.length > 0
+                && slots[slots.length - 1].callback && isHttpResponseCallback(parameters[slots.length - 1]);
+        if (publisher) {
+            this.asyncMode = AsyncMode.PUBLISHER;
+        } else if (httpRequest.async()) {
+            this.asyncMode = callback ? AsyncMode.CALLBACK : futureMode(returnType);
+        } else {
+            this.asyncMode = AsyncMode.NONE;
+        }
+
+        // 末尾的 CallFunction 参数不参与请求
+        this.requestSlotCount = slots.length > 0 && slots[slots.length - 1].callback ? slots.length - 1 : slots.length;
+
+        ParamSlot sign = null;
+        boolean hasPathVariables = false;
+        for (ParamSlot slot : slots) {
+            if (slot.isSign()) {
+                sign = slot;
+            }
+            hasPathVariables |= slot.pathPlaceholder != null && !slot.callback;
+        }
+        this.signSlot = sign;
+        this.pathVariables = hasPathVariables;
+        if (!"".equals(httpRequest.url())) {
+            this.urlTemplate = UrlTemplate.compile(httpRequest.url(), slots);
+        }
+        this.validationRequired = hasConstraints(method);
+
+        Type resultGenericType = method.getGenericReturnType();
+        if (asyncMode != AsyncMode.NONE && !voidReturn) {
+            resultGenericType = resultGenericType instanceof ParameterizedType
+                    ? ((ParameterizedType) resultGenericType).getActualTypeArguments()[0] : Object.class;
+        }
+        this.voidResult = voidReturn;
+        this.stringResult = String.class.equals(resultGenericType);
+        this.resultType = voidReturn ? null : TYPE_FACTORY.constructType(resultGenericType);
+        this.resultReader = voidReturn ? null : mapper.readerFor(resultType);
+
+        if (requestMethod == RequestMethod.POSTJSON && requestSlotCount > 0) {
+            this.bodyWriter = resolveBodyWriter(mapper, method.getGenericParameterTypes()[0]);
+        } else {
+            this.bodyWriter = null;
+        }
+        this.metrics = MetricsRegistries.forMethod(method);
+
+        this.singleFlight = method.getAnnotation(SingleFlight.class);
+        if (singleFlight != null && (asyncMode == AsyncMode.CALLBACK || asyncMode == AsyncMode.PUBLISHER)) {
+            throw new IllegalArgumentException("SingleFlight 不支持回调参数和 Publisher 返回值 -> " + method);
+        }
+
+        this.collapse = method.getAnnotation(Collapse.class);
+        if (collapse != null) {
+            if (slots.length != 1 || requestSlotCount != 1 || singleFlight != null
+                    || asyncMode == AsyncMode.PUBLISHER) {
+                throw new IllegalArgumentException("Collapse 方法只能有一个参数，且不支持 Publisher 返回值和 SingleFlight -> "
+                        + method);
+            }
+            if (collapse.window() < 0 || collapse.maxBatchSize() <= 0) {
+                throw new IllegalArgumentException("Collapse 时间窗口不能小于 0，批量大小必须大于 0 -> " + method);
+            }
+            this.batchMethod = resolveBatchMethod(method, collapse.batchMethod());
+        } else {
+            this.batchMethod = null;
+        }
+
+        this.cached = method.getAnnotation(Cached.class);
+        if (cached != null) {
+            if (voidReturn || requestMethod == RequestMethod.POSTJSON || collapse != null
+                    || asyncMode == AsyncMode.CALLBACK || asyncMode == AsyncMode.PUBLISHER) {
+                throw new IllegalArgumentException("Cached 仅支持有返回值的 GET 和 POST 方法，且不支持回调参数、Publisher 返回值和"
+                        + " Collapse -> " + method);
+            }
+            if (cached.ttl() <= 0 || cached.maxSize() <= 0) {
+                throw new IllegalArgumentException("Cached 过期时间和最大条数必须大于 0 -> " + method);
+            }
+            if (signSlot != null) {
+                // 刷新时会重用首次加载时的签名
+                throw new IllegalArgumentException("Cached 不支持 ReqSign 签名参数 -> " + method);
+            }
+        }
+
+        CircuitBreaker breaker = method.getAnnotation(CircuitBreaker.class);
+        if (breaker == null) {
+            breaker = method.getDeclaringClass().getAnnotation(CircuitBreaker.class);
+        }
+        this.circuitBreaker = breaker;
+        if (circuitBreaker != null) {
+            if (circuitBreaker.failureRateThreshold() <= 0 || circuitBreaker.failureRateThreshold() > 100
+                    || circuitBreaker.slowCallRateThreshold() <= 0 || circuitBreaker.slowCallRateThreshold() > 100) {
+                throw new IllegalArgumentException("CircuitBreaker 阈值必须在 1 到 100 之间 -> " + method);
+            }
+            if (circuitBreaker.slidingWindowSize() <= 0 || circuitBreaker.minimumNumberOfCalls() <= 0
+                    || circuitBreaker.permittedNumberOfCallsInHalfOpenState() <= 0
+                    || circuitBreaker.slowCallDuration() <= 0 || circuitBreaker.waitDurationInOpenState() < 0) {
+                throw new IllegalArgumentException("CircuitBreaker 窗口、调用数和时间必须大于 0 -> " + method);
+            }
+        }
+
+        Timeout methodTimeout = method.getAnnotation(Timeout.class);
+        if (methodTimeout == null) {
+            methodTimeout = method.getDeclaringClass().getAnnotation(Timeout.class);
+        }
+        if (methodTimeout != null && methodTimeout.value() <= 0) {
+            throw new IllegalArgumentException("Timeout 必须大于 0 -> " + method);
+        }
+        this.timeout = methodTimeout == null ? 0 : methodTimeout.value();
+
+        GzipRequest gzip = method.getAnnotation(GzipRequest.class);
+        if (gzip != null && requestMethod == RequestMethod.GET) {
+            throw new IllegalArgumentException("GzipRequest 仅支持 POST 请求 -> " + method);
+        }
+        if (gzip == null && requestMethod != RequestMethod.GET) {
+            gzip = method.getDeclaringClass().getAnnotation(GzipRequest.class);
+        }
+        if (gzip != null && gzip.threshold() < 0) {
+            throw new IllegalArgumentException("GzipRequest 阈值不能小于 0 -> " + method);
+        }
+        this.gzipThreshold = gzip == null ? -1 : gzip.threshold();
+
+        Hedge hedge = method.getAnnotation(Hedge.class);
+        if (hedge != null) {
+            if (requestMethod != RequestMethod.GET || asyncMode == AsyncMode.CALLBACK || collapse != null) {
+                throw new IllegalArgumentException("Hedge 仅支持 GET 请求，且不支持回调参数和 Collapse -> " + method);
+            }
+            if (hedge.delay() <= 0 && (hedge.percentile() <= 0 || hedge.percentile() > 100)) {
+                throw new IllegalArgumentException("Hedge 分位数必须在 0 到 100 之间 -> " + method);
+            }
+            if (hedge.maxHedgePercent() <= 0 || hedge.maxHedgePercent() > 100) {
+                throw new IllegalArgumentException("Hedge 对冲比例必须在 1 到 100 之间 -> " + method);
+            }
+            this.hedgePolicy = new HedgePolicy(hedge, metrics);
+        } else {
+            this.hedgePolicy = null;
+        }
+    }
+
+    /**
+     * 查找同一接口上的批量方法
+     */
+    private static Method resolveBatchMethod(Method method, String name) {
+        Method found = null;
+        for (Method candidate : method.getDeclaringClass().getMethods()) {
+            if (!candidate.getName().equals(name)) {
+                continue;
+            }
+            if (found != null) {
+                throw new IllegalArgumentException("批量方法不唯一 -> " + name);
+            }
+            found = candidate;
+        }
+        if (found == null || found.getAnnotation(HttpRequest.class) == null || found.getParameterCount() != 1) {
+            throw new IllegalArgumentException("未找到只有一个参数且配置了 HttpRequest 的批量方法 -> " + name);
+        }
+        Class<?> keysType = found.getParameterTypes()[0];
+        if (!keysType.isArray() && !keysType.isAssignableFrom(ArrayList.class)
+                && !keysType.isAssignableFrom(LinkedHashSet.class)) {
+            throw new IllegalArgumentException("批量方法的参数必须为 List、Set、Collection 或数组 -> " + name);
+        }
+        return found;
+    }
+
+    /**
+     * 解析方法的调用计划
+     *
+     * @param method
+     * @param mapper 用于预先解析返回值和请求体的序列化器
+     *
+     * @return
+     */
+    public static InvocationPlan compile(Method method, ObjectMapper mapper) {
+        return new InvocationPlan(method, mapper);
+    }
+
+    /**
+     * 按参数的声明类型预先解析序列化器
+     * <p>
+     * 声明类型可能被子类实现时按运行时类型序列化，避免丢失子类属性
+     */
+    private static ObjectWriter resolveBodyWriter(ObjectMapper mapper, Type bodyType) {
+        JavaType type = TYPE_FACTORY.constructType(bodyType);
+        Class<?> rawType = type.getRawClass();
+        if (Modifier.isFinal(rawType.getModifiers()) || type.isContainerType()) {
+            return mapper.writerFor(type);
+        }
+        return mapper.writer();
+    }
+
+    /**
+     * 按返回值类型选择异步结果的实现，返回值为 void 时也使用 Future
+     */
+    private static AsyncMode futureMode(Class<?> returnType) {
+        if (void.class.equals(returnType) || returnType.isAssignableFrom(CallbackFuture.class)) {
+            return AsyncMode.FUTURE;
+        } else if (returnType.isAssignableFrom(CallbackCompletableFuture.class)) {
+            return AsyncMode.COMPLETABLE;
+        } else {
+            return AsyncMode.LISTENABLE;
+        }
+    }
+
+    private static Map<String, String> resolveStaticHeaders(Method method) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (ReqHeader reqHeader : method.getDeclaringClass().getAnnotationsByType(ReqHeader.class)) {
+            headers.put(reqHeader.key(), reqHeader.value());
+        }
+        for (ReqHeader reqHeader : method.getAnnotationsByType(ReqHeader.class)) {
+            headers.put(reqHeader.key(), reqHeader.value());
+        }
+        return Collections.unmodifiableMap(headers);
+    }
+
+    /**
+     * 方法或参数上是否有 javax.validation 注解，没有时可以跳过参数校验
+     */
+    private static boolean hasConstraints(Method method) {
+        if (hasConstraints(method.getAnnotations())) {
+            return true;
+        }
+        for (Parameter p : method.getParameters()) {
+            if (hasConstraints(p.getAnnotations()) || hasConstraints(p.getAnnotatedType())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasConstraints(AnnotatedType type) {
+        if (hasConstraints(type.getAnnotations())) {
+            return true;
+        }
+        if (type instanceof AnnotatedParameterizedType) {
+            for (AnnotatedType t : ((AnnotatedParameterizedType) type).getAnnotatedActualTypeArguments()) {
+                if (hasConstraints(t)) {
+                    return true;
+                }
+            }
+        } else if (type instanceof AnnotatedArrayType) {
+            return hasConstraints(((AnnotatedArrayType) type).getAnnotatedGenericComponentType());
+        }
+        return false;
+    }
+
+    private static boolean hasConstraints(Annotation[] annotations) {
+        for (Annotation annotation : annotations) {
+            Class<? extends Annotation> type = annotation.annotationType();
+            if (type == Valid.class || type.isAnnotationPresent(Constraint.class)) {
+                return true;
+            }
+            // 同一约束重复声明时的容器注解，如 @NotNull.List
+            if (type.getEnclosingClass() != null && type.getEnclosingClass().isAnnotationPresent(Constraint.class)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 判断参数是否为 FutureCallback&lt;HttpResponse&gt;
+     */
+    private static boolean isHttpResponseCallback(Parameter p) {
+        Type type = p.getParameterizedType();
+        if (type instanceof ParameterizedType) {
+            ParameterizedType parameterizedType = (ParameterizedType) type;
+            if (FutureCallback.class.equals(parameterizedType.getRawType())) {
+                Type[] types = parameterizedType.getActualTypeArguments();
+                return types.length > 0 && HttpResponse.class.equals(types[0]);
+            }
+        }
+        return false;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public HttpRequest getHttpRequest() {
+        return httpRequest;
+    }
+
+    public RequestMethod getRequestMethod() {
+        return requestMethod;
+    }
+
+    public AsyncMode getAsyncMode() {
+        return asyncMode;
+    }
+
+    public Map<String, String> getStaticHeaders() {
+        return staticHeaders;
+    }
+
+    public ParamSlot[] getSlots() {
+        return slots;
+    }
+
+    public int getRequestSlotCount() {
+        return requestSlotCount;
+    }
+
+    public ParamSlot getSignSlot() {
+        return signSlot;
+    }
+
+    public boolean isValidationRequired() {
+        return validationRequired;
+    }
+
+    /**
+     * 是否有路径变量参数
+     *
+     * @return
+     */
+    public boolean hasPathVariables() {
+        return pathVariables;
+    }
+
+    /**
+     * 获取基础 URL 对应的模板，与上次相同时直接复用
+     *
+     * @param baseUrl
+     *
+     * @return
+     */
+    public UrlTemplate getUrlTemplate(String baseUrl) {
+        UrlTemplate template = urlTemplate;
+        if (template != null && template.getSource().equals(baseUrl)) {
+            return template;
+        }
+        template = urlTemplates.get(baseUrl);
+        if (template == null) {
+            if (urlTemplates.size() >= MAX_URL_TEMPLATES) {
+                urlTemplates.clear();
+            }
+            template = urlTemplates.computeIfAbsent(baseUrl, url -> UrlTemplate.compile(url, slots));
+        }
+        urlTemplate = template;
+        return template;
+    }
+
+    public boolean isVoidResult() {
+        return voidResult;
+    }
+
+    public boolean isStringResult() {
+        return stringResult;
+    }
+
+    public JavaType getResultType() {
+        return resultType;
+    }
+
+    public ObjectReader getResultReader() {
+        return resultReader;
+    }
+
+    public ObjectWriter getBodyWriter() {
+        return bodyWriter;
+    }
+
+    public MethodMetrics getMetrics() {
+        return metrics;
+    }
+
+    public SingleFlight getSingleFlight() {
+        return singleFlight;
+    }
+
+    public Collapse getCollapse() {
+        return collapse;
+    }
+
+    public Method getBatchMethod() {
+        return batchMethod;
+    }
+
+    public Cached getCached() {
+        return cached;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public HedgePolicy getHedgePolicy() {
+        return hedgePolicy;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    public int getGzipThreshold() {
+        return gzipThreshold;
+    }
+
+    /**
+     * 异步方式
+     */
+    public enum AsyncMode {
+        /**
+         * 同步调用
+         */
+        NONE,
+        /**
+         * 返回 Future
+         */
+        FUTURE,
+        /**
+         * 返回 CompletableFuture 或 CompletionStage
+         */
+        COMPLETABLE,
+        /**
+         * 返回 Guava ListenableFuture
+         */
+        LISTENABLE,
+        /**
+         * 返回 Reactive Streams Publisher，响应为 JSON 数组时按需逐个发送元素
+         */
+        PUBLISHER,
+        /**
+         * 由调用方传入 FutureCallback&lt;HttpResponse&gt;
+         */
+        CALLBACK
+    }
+
+    /**
+     * 单个参数的解析结果
+     */
+    public static final class ParamSlot {
+
+        private final int index;
+        private final Class<?> type;
+        private final PathVariable pathVariable;
+        private final String pathPlaceholder;
+        private final ReqParam reqParam;
+        private final String paramName;
+        /**
+         * URL 编码后的参数名
+         */
+        private final String encodedParamName;
+        private final String format;
+        private final RequestBody requestBody;
+        private final ReqSign reqSign;
+        private final boolean callback;
+
+        ParamSlot(int index, Parameter p) {
+            this.index = index;
+            this.type = p.getType();
+            this.pathVariable = p.getAnnotation(PathVariable.class);
+            this.pathPlaceholder = pathVariable == null ? null
+                    : "{" + firstNonEmpty(pathVariable.value(), pathVariable.name()) + "}";
+            this.reqParam = p.getAnnotation(ReqParam.class);
+            this.paramName = reqParam == null ? null : firstNonEmpty(reqParam.value(), reqParam.name());
+            this.encodedParamName = paramName == null ? null : urlEncode(paramName);
+            this.format = reqParam == null ? ParamCodecs.DEFAULT_FORMAT : reqParam.format();
+            this.requestBody = p.getAnnotation(RequestBody.class);
+            this.reqSign = p.getAnnotation(ReqSign.class);
+            this.callback = p.getAnnotation(CallFunction.class) != null;
+        }
+
+        private static String firstNonEmpty(String value, String name) {
+            return "".equals(value) ? name : value;
+        }
+
+        private static String urlEncode(String name) {
+            try {
+                return URLEncoder.encode(name, "utf-8");
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public Class<?> getType() {
+            return type;
+        }
+
+        public PathVariable getPathVariable() {
+            return pathVariable;
+        }
+
+        /**
+         * URL 中的占位符，形如 {id}
+         */
+        public String getPathPlaceholder() {
+            return pathPlaceholder;
+        }
+
+        public ReqParam getReqParam() {
+            return reqParam;
+        }
+
+        /**
+         * 请求参数名，优先取 value，为空时取 name
+         */
+        public String getParamName() {
+            return paramName;
+        }
+
+        /**
+         * URL 编码后的参数名
+         */
+        public String getEncodedParamName() {
+            return encodedParamName;
+        }
+
+        /**
+         * 参数编码格式
+         */
+        public String getFormat() {
+            return format;
+        }
+
+        public RequestBody getRequestBody() {
+            return requestBody;
+        }
+
+        public ReqSign getReqSign() {
+            return reqSign;
+        }
+
+        public boolean isCallback() {
+            return callback;
+        }
+
+        /**
+         * 是否为签名参数
+         */
+        public boolean isSign() {
+            return reqSign != null && String.class.equals(type);
+        }
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.proxy.handler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.PropertyResolver;
+
+/**
+ * urlKey 配置为逗号分隔的多个基础 URL 时，在客户端按节点负载选择
+ * <p>
+ * 每次随机取两个节点，选进行中请求较少的一个，相同时选 EWMA 延迟较低的一个。
+ * 连续失败达到阈值的节点被摘除，按指数退避时间后重新加入，成功一次后恢复正常。全部节点都被摘除时仍然选择，不直接拒绝请求
+ */
+public final class LoadBalancer {
+
+    /**
+     * 配置项前缀，完整配置项为 httprpc.load-balancer.max-failures
+     */
+    public final static String PREFIX = "httprpc.load-balancer.";
+    /**
+     * 默认连续失败多少次后摘除节点
+     */
+    public final static int DEFAULT_MAX_FAILURES = 5;
+    /**
+     * 默认首次摘除时间，单位毫秒
+     */
+    public final static long DEFAULT_EJECT_TIME = 1000;
+    /**
+     * 默认最长摘除时间，单位毫秒
+     */
+    public final static long DEFAULT_MAX_EJECT_TIME = 30000;
+    /**
+     * 新样本在 EWMA 延迟中的权重
+     */
+    private final static double EWMA_WEIGHT = 0.3;
+
+    private final static Logger logger = LoggerFactory.getLogger(LoadBalancer.class);
+
+    /**
+     * 原始配置
+     */
+    private final String source;
+    private final Endpoint[] endpoints;
+    private final int maxFailures;
+    private final long ejectTime;
+    private final long maxEjectTime;
+
+    /**
+     * @param source 逗号分隔的基础 URL
+     * @param env 为 null 时使用默认配置
+     */
+    public LoadBalancer(String source, PropertyResolver env) {
+        this.source = source;
+        List<String> urls = parse(source);
+        if (urls.isEmpty()) {
+            throw new IllegalArgumentException("未配置负载均衡节点 -> " + source);
+        }
+        this.endpoints = new Endpoint[urls.size()];
+        for (int i = 0; i < endpoints.length; i++) {
+            endpoints[i] = new Endpoint(urls.get(i));
+        }
+        this.maxFailures = env == null ? DEFAULT_MAX_FAILURES
+                : env.getProperty(PREFIX + "max-failures", Integer.class, DEFAULT_MAX_FAILURES);
+        this.ejectTime = env == null ? DEFAULT_EJECT_TIME
+                : env.getProperty(PREFIX + "eject-time", Long.class, DEFAULT_EJECT_TIME);
+        this.maxEjectTime = env == null ? DEFAULT_MAX_EJECT_TIME
+                : env.getProperty(PREFIX + "max-eject-time", Long.class, DEFAULT_MAX_EJECT_TIME);
+    }
+
+    /**
+     * 是否配置了多个节点
+     *
+     * @param url urlKey 解析出的配置
+     *
+     * @return
+     */
+    public static boolean isBalanced(String url) {
+        return url.indexOf(',') >= 0;
+    }
+
+    /**
+     * 拆分逗号分隔的基础 URL，忽略空项
+     *
+     * @param source
+     *
+     * @return
+     */
+    public static List<String> parse(String source) {
+        List<String> urls = new ArrayList<>();
+        for (String url : source.split(",")) {
+            url = url.trim();
+            if (!url.isEmpty()) {
+                urls.add(url);
+            }
+        }
+        return urls;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * 第一个节点的地址，作为选择节点前的请求 URL，使缓存和合并请求的键与所选节点无关
+     *
+     * @return
+     */
+    public String getBaseUrl() {
+        return endpoints[0].url;
+    }
+
+    /**
+     * 选择一个节点
+     *
+     * @return
+     */
+    public Endpoint choose() {
+        Endpoint[] all = endpoints;
+        if (all.length == 1) {
+            return all[0];
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int i = random.nextInt(all.length);
+        int j = random.nextInt(all.length - 1);
+        if (j >= i) {
+            j++;
+        }
+        Endpoint a = all[i];
+        Endpoint b = all[j];
+        long now = System.currentTimeMillis();
+        boolean aAvailable = a.isAvailable(now);
+        boolean bAvailable = b.isAvailable(now);
+        if (aAvailable && bAvailable) {
+            return a.compareLoad(b) <= 0 ? a : b;
+        }
+        if (aAvailable) {
+            return a;
+        }
+        if (bAvailable) {
+            return b;
+        }
+        // 两个都被摘除时从随机位置开始找一个可用的
+        for (int k = 1; k < all.length; k++) {
+            Endpoint endpoint = all[(i + k) % all.length];
+            if (endpoint.isAvailable(now)) {
+                return endpoint;
+            }
+        }
+        return a.compareLoad(b) <= 0 ? a : b;
+    }
+
+    /**
+     * 查找请求 URL 所属的节点，多个节点匹配时取最长的
+     *
+     * @param requestUrl
+     *
+     * @return 不属于任何节点时返回 null
+     */
+    public Endpoint find(String requestUrl) {
+        Endpoint found = null;
+        for (Endpoint endpoint : endpoints) {
+            String url = endpoint.url;
+            if (requestUrl.startsWith(url) && isBoundary(requestUrl, url)
+                    && (found == null || url.length() > found.url.length())) {
+                found = endpoint;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * 避免 http://host:80 匹配到 http://host:8080
+     */
+    private static boolean isBoundary(String requestUrl, String url) {
+        if (requestUrl.length() == url.length() || url.endsWith("/")) {
+            return true;
+        }
+        char c = requestUrl.charAt(url.length());
+        return c == '/' || c == '?' || c == '#';
+    }
+
+    /**
+     * 单个节点的负载和健康状态
+     */
+    public final class Endpoint {
+
+        private final String url;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private final AtomicInteger ejections = new AtomicInteger();
+        private final AtomicLong ejectedUntil = new AtomicLong();
+        /**
+         * EWMA 延迟，单位毫秒，没有样本时为 0。并发更新时丢失个别样本不影响选择
+         */
+        private volatile double latency;
+
+        Endpoint(String url) {
+            this.url = url;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        /**
+         * 进行中的请求数
+         *
+         * @return
+         */
+        public int getOutstanding() {
+            return outstanding.get();
+        }
+
+        public double getLatency() {
+            return latency;
+        }
+
+        public boolean isEjected() {
+            return !isAvailable(System.currentTimeMillis());
+        }
+
+        boolean isAvailable(long now) {
+            return ejectedUntil.get() <= now;
+        }
+
+        int compareLoad(Endpoint other) {
+            int result = Integer.compare(outstanding.get(), other.outstanding.get());
+            return result != 0 ? result : Double.compare(latency, other.latency);
+        }
+
+        /**
+         * 开始一次请求
+         *
+         * @return 开始时间，交给 {@link #stop(long, boolean)}
+         */
+        public long start() {
+            outstanding.incrementAndGet();
+            return System.nanoTime();
+        }
+
+        /**
+         * 结束一次请求
+         *
+         * @param start
+         * @param failed 连接失败、IO 异常或 5xx 响应
+         */
+        public void stop(long start, boolean failed) {
+            outstanding.decrementAndGet();
+            double elapsed = (System.nanoTime() - start) / 1e6;
+            double current = latency;
+            latency = current == 0 ? elapsed : current + EWMA_WEIGHT * (elapsed - current);
+
+            if (!failed) {
+                failures.set(0);
+                ejections.set(0);
+                return;
+            }
+            if (failures.incrementAndGet() < maxFailures) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            long until = ejectedUntil.get();
+            // 已被摘除，摘除前发出的请求失败不再延长
+            if (until > now) {
+                return;
+            }
+            long backoff = Math.min(maxEjectTime, ejectTime << Math.min(ejections.get(), 20));
+            if (ejectedUntil.compareAndSet(until, now + backoff)) {
+                ejections.incrementAndGet();
+                logger.warn("节点连续失败 {} 次，摘除 {} ms -> {}", failures.get(), backoff, url);
+            }
+        }
+
+        /**
+         * 请求被取消，不计入延迟和失败
+         */
+        public void cancel() {
+            outstanding.decrementAndGet();
+        }
+
+        @Override
+        public String toString() {
+            return url;
+        }
+    }
+}
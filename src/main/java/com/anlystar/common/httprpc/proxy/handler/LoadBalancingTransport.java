@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.proxy.handler;
+
+import java.io.IOException;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.concurrent.FutureCallback;
+
+import com.anlystar.common.httprpc.helper.HttpStatusException;
+import com.anlystar.common.httprpc.helper.ResponseReader;
+import com.anlystar.common.httprpc.transport.HttpTransport;
+import com.anlystar.common.httprpc.transport.TransportRequest;
+
+/**
+ * 记录发往负载均衡节点的请求结果，供 {@link LoadBalancer} 选择节点和摘除故障节点
+ * <p>
+ * 只有连接失败、IO 异常和 5xx 响应计为节点失败，响应体解析失败和 4xx 不计。
+ * 被并发限制拒绝的请求未发出，不计入延迟和失败
+ */
+public class LoadBalancingTransport implements HttpTransport {
+
+    private final HttpTransport delegate;
+    /**
+     * 按请求 URL 查找节点，不属于负载均衡节点时返回 null
+     */
+    private final Function<String, LoadBalancer.Endpoint> endpoints;
+
+    public LoadBalancingTransport(HttpTransport delegate, Function<String, LoadBalancer.Endpoint> endpoints) {
+        this.delegate = delegate;
+        this.endpoints = endpoints;
+    }
+
+    @Override
+    public <T> T execute(TransportRequest request, ResponseReader<T> reader) throws IOException {
+        LoadBalancer.Endpoint endpoint = endpoints.apply(request.getUrl());
+        if (endpoint == null) {
+            return delegate.execute(request, reader);
+        }
+
+        long start = endpoint.start();
+        // reader 被调用说明已收到 200 响应
+        boolean[] responded = new boolean[1];
+        try {
+            T result = delegate.execute(request, (content, charset) -> {
+                responded[0] = true;
+                return reader.read(content, charset);
+            });
+            endpoint.stop(start, false);
+            return result;
+        } catch (IOException | RuntimeException | Error e) {
+            if (e instanceof ConcurrencyLimitExceededException) {
+                endpoint.cancel();
+            } else {
+                endpoint.stop(start, !responded[0] && isFailure(e));
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public Future<?> execute(TransportRequest request, FutureCallback<HttpResponse> callback) {
+        LoadBalancer.Endpoint endpoint = endpoints.apply(request.getUrl());
+        if (endpoint == null) {
+            return delegate.execute(request, callback);
+        }
+
+        long start = endpoint.start();
+        FutureCallback<HttpResponse> recorded = new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse response) {
+                endpoint.stop(start, response.getStatusLine().getStatusCode() >= 500);
+                callback.completed(response);
+            }
+
+            @Override
+            public void failed(Exception e) {
+                if (e instanceof ConcurrencyLimitExceededException) {
+                    endpoint.cancel();
+                } else {
+                    endpoint.stop(start, isFailure(e));
+                }
+                callback.failed(e);
+            }
+
+            @Override
+            public void cancelled() {
+                endpoint.cancel();
+                callback.cancelled();
+            }
+        };
+        try {
+            return delegate.execute(request, recorded);
+        } catch (RuntimeException e) {
+            endpoint.stop(start, true);
+            throw e;
+        }
+    }
+
+    /**
+     * 是否为节点故障
+     *
+     * @param error
+     *
+     * @return
+     */
+    public static boolean isFailure(Throwable error) {
+        for (Throwable e = error; e != null; e = e.getCause()) {
+            if (e instanceof HttpStatusException) {
+                return ((HttpStatusException) e).isServerError();
+            }
+            if (e instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.proxy.handler;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.PropertyAccessorFactory;
+
+import com.anlystar.common.httprpc.annotation.Collapse;
+import com.anlystar.common.httprpc.callback.Callback;
+import com.anlystar.common.httprpc.helper.Deadline;
+
+/**
+ * 将单个 key 的调用合并为批量调用
+ * <p>
+ * 时间窗口内的调用按 key 去重后交给批量调用，达到最大批量时立即发送。批量调用使用发送时仍未到期的调用方中最早的截止时间，
+ * 批量结果按 key 的字符串形式拆分给各调用方
+ */
+public final class RequestCollapser {
+
+    /**
+     * 只负责到期发送，批量调用本身是异步的，单线程即可
+     */
+    private final static ScheduledThreadPoolExecutor SCHEDULER;
+
+    static {
+        SCHEDULER = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "httprpc-collapser");
+            thread.setDaemon(true);
+            return thread;
+        });
+        SCHEDULER.setRemoveOnCancelPolicy(true);
+    }
+
+    private final Collapse collapse;
+    private final BatchCall batchCall;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * 当前窗口内等待的调用
+     */
+    private Batch pending;
+    private ScheduledFuture<?> flushTask;
+
+    public RequestCollapser(Collapse collapse, BatchCall batchCall) {
+        this.collapse = collapse;
+        this.batchCall = batchCall;
+    }
+
+    /**
+     * 加入当前窗口，批量调用完成时回调该 key 对应的结果
+     *
+     * @param key
+     * @param callback
+     * @param deadline 调用方的截止时间，可以为 null
+     */
+    public void add(Object key, Callback<Object> callback, Deadline deadline) {
+        Batch batch = null;
+        lock.lock();
+        try {
+            if (pending == null) {
+                Batch current = new Batch();
+                pending = current;
+                if (collapse.window() > 0) {
+                    flushTask = SCHEDULER.schedule(() -> flushWindow(current), collapse.window(),
+                            TimeUnit.MILLISECONDS);
+                }
+            }
+            pending.callbacks.computeIfAbsent(key, k -> new ArrayList<>(1)).add(callback);
+            if (deadline != null) {
+                pending.deadlines.add(deadline);
+            }
+            if (pending.callbacks.size() >= collapse.maxBatchSize() || collapse.window() == 0) {
+                batch = pending;
+                pending = null;
+                if (flushTask != null) {
+                    flushTask.cancel(false);
+                    flushTask = null;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (batch != null) {
+            flush(batch);
+        }
+    }
+
+    private void flushWindow(Batch window) {
+        lock.lock();
+        try {
+            // 已因达到最大批量发送
+            if (pending != window) {
+                return;
+            }
+            pending = null;
+            flushTask = null;
+        } finally {
+            lock.unlock();
+        }
+        flush(window);
+    }
+
+    private void flush(Batch pendingBatch) {
+        Map<Object, List<Callback<Object>>> batch = pendingBatch.callbacks;
+        List<Object> keys = new ArrayList<>(batch.keySet());
+        Callback<Object> callback = new Callback<Object>() {
+            @Override
+            public void handleResult(Object result) {
+                Map<String, Object> index;
+                try {
+                    index = index(keys, result);
+                } catch (RuntimeException e) {
+                    handleError(e);
+                    return;
+                }
+                batch.forEach((key, callbacks) -> {
+                    Object value = index.get(String.valueOf(key));
+                    callbacks.forEach(c -> c.handleResult(value));
+                });
+            }
+
+            @Override
+            public void handleError(Throwable error) {
+                batch.values().forEach(callbacks -> callbacks.forEach(c -> c.handleError(error)));
+            }
+        };
+        try {
+            batchCall.call(keys, pendingBatch.getDeadline(), callback);
+        } catch (RuntimeException e) {
+            callback.handleError(e);
+        }
+    }
+
+    /**
+     * 按 key 的字符串形式索引批量结果
+     */
+    private Map<String, Object> index(List<Object> keys, Object result) {
+        Map<String, Object> index = new HashMap<>();
+        if (result == null) {
+            return index;
+        }
+        if (result instanceof Map) {
+            ((Map<?, ?>) result).forEach((key, value) -> index.put(String.valueOf(key), value));
+            return index;
+        }
+
+        List<Object> elements = new ArrayList<>();
+        if (result instanceof Collection) {
+            elements.addAll((Collection<?>) result);
+        } else if (result instanceof Iterator) {
+            ((Iterator<?>) result).forEachRemaining(elements::add);
+        } else if (result.getClass().isArray()) {
+            for (int i = 0; i < Array.getLength(result); i++) {
+                elements.add(Array.get(result, i));
+            }
+        } else {
+            throw new IllegalStateException("不支持的批量结果类型 -> " + result.getClass().getName());
+        }
+
+        String keyProperty = collapse.keyProperty();
+        if ("".equals(keyProperty)) {
+            if (elements.size() != keys.size()) {
+                throw new IllegalStateException("批量结果数量与 key 数量不一致 -> " + elements.size() + " / " + keys.size());
+            }
+            for (int i = 0; i < keys.size(); i++) {
+                index.put(String.valueOf(keys.get(i)), elements.get(i));
+            }
+            return index;
+        }
+        for (Object element : elements) {
+            if (element == null) {
+                continue;
+            }
+            Object key = element instanceof Map ? ((Map<?, ?>) element).get(keyProperty)
+                    : PropertyAccessorFactory.forBeanPropertyAccess(element).getPropertyValue(keyProperty);
+            index.put(String.valueOf(key), element);
+        }
+        return index;
+    }
+
+    /**
+     * 批量调用
+     */
+    @FunctionalInterface
+    public interface BatchCall {
+
+        /**
+         * @param keys 去重后的 key
+         * @param deadline 仍在等待的调用方中最早的截止时间，都未设置时为 null
+         * @param callback 完成时回调批量结果
+         */
+        void call(List<Object> keys, Deadline deadline, Callback<Object> callback);
+    }
+
+    /**
+     * 一个窗口内等待的调用
+     */
+    private static final class Batch {
+
+        /**
+         * 按 key 分组的回调
+         */
+        private final Map<Object, List<Callback<Object>>> callbacks = new LinkedHashMap<>();
+        private final List<Deadline> deadlines = new ArrayList<>();
+
+        /**
+         * 已到期的调用方不再等待结果，不限制批量调用
+         */
+        Deadline getDeadline() {
+            Deadline earliest = null;
+            for (Deadline deadline : deadlines) {
+                if (!deadline.isExpired()) {
+                    earliest = deadline.min(earliest);
+                }
+            }
+            return earliest;
+        }
+    }
+}
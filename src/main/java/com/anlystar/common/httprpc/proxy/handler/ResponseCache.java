@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.proxy.handler;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import com.anlystar.common.httprpc.annotation.Cached;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * 单个方法的结果缓存
+ * <p>
+ * 同一 key 同时只加载一次，加载失败的结果不缓存。刷新在后台进行，刷新期间读取返回旧值
+ */
+public final class ResponseCache {
+
+    private final AsyncLoadingCache<Key, Object> cache;
+
+    /**
+     * @param cached
+     * @param loader 按 key 异步发送请求并解析结果
+     */
+    public ResponseCache(Cached cached, Function<Key, CompletableFuture<Object>> loader) {
+        Caffeine<Object, Object> builder = Caffeine.newBuilder()
+                .maximumSize(cached.maxSize())
+                .expireAfterWrite(cached.ttl(), TimeUnit.MILLISECONDS);
+        if (cached.refreshAfterWrite() > 0) {
+            builder.refreshAfterWrite(cached.refreshAfterWrite(), TimeUnit.MILLISECONDS);
+        }
+        this.cache = builder.buildAsync((key, executor) -> loader.apply(key));
+    }
+
+    /**
+     * 获取缓存结果，未命中时加载
+     *
+     * @param key
+     *
+     * @return
+     */
+    public CompletableFuture<Object> get(Key key) {
+        return cache.get(key);
+    }
+
+    /**
+     * 缓存 key
+     * <p>
+     * 按 URL、表单参数和 header 判断是否相同，以免将一个调用方的结果返回给 header 不同的调用方
+     */
+    public static final class Key {
+
+        private final String requestUrl;
+        private final Map<String, String> pars;
+        private final Map<String, String> headers;
+        private final int hash;
+
+        public Key(String requestUrl, Map<String, String> pars, Map<String, String> headers) {
+            this.requestUrl = requestUrl;
+            this.pars = pars;
+            this.headers = headers;
+            this.hash = 31 * (31 * requestUrl.hashCode() + Objects.hashCode(pars)) + Objects.hashCode(headers);
+        }
+
+        public String getRequestUrl() {
+            return requestUrl;
+        }
+
+        public Map<String, String> getPars() {
+            return pars;
+        }
+
+        public Map<String, String> getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) o;
+            return hash == that.hash && requestUrl.equals(that.requestUrl) && Objects.equals(pars, that.pars)
+                    && Objects.equals(headers, that.headers);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.proxy.handler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.anlystar.common.httprpc.proxy.handler.InvocationPlan.ParamSlot;
+
+/**
+ * 预解析的 URL 模板
+ * <p>
+ * URL 按 {name} 占位符拆分为常量段和路径变量段，渲染时路径变量和 URL 参数一次写入预估好容量的 StringBuilder。
+ * 没有对应 {@link com.anlystar.common.httprpc.annotation.PathVariable} 参数的占位符按原样保留
+ */
+public final class UrlTemplate {
+
+    /**
+     * 原始 URL
+     */
+    private final String source;
+    /**
+     * 常量段，比路径变量段多一个
+     */
+    private final String[] literals;
+    /**
+     * 每个路径变量段对应的参数下标
+     */
+    private final int[] slotIndexes;
+    /**
+     * 每个路径变量段的占位符，参数值为 null 时原样输出
+     */
+    private final String[] placeholders;
+    /**
+     * 常量段总长度
+     */
+    private final int literalLength;
+    /**
+     * 拼接 URL 参数前的分隔符
+     */
+    private final String querySeparator;
+
+    private UrlTemplate(String source, String[] literals, int[] slotIndexes, String[] placeholders) {
+        this.source = source;
+        this.literals = literals;
+        this.slotIndexes = slotIndexes;
+        this.placeholders = placeholders;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+        if (source.endsWith("?") || source.endsWith("&")) {
+            this.querySeparator = "";
+        } else {
+            this.querySeparator = source.indexOf('?') >= 0 ? "&" : "?";
+        }
+    }
+
+    /**
+     * 解析 URL 模板
+     *
+     * @param url
+     * @param slots 方法参数，用于将占位符映射到参数下标
+     *
+     * @return
+     */
+    public static UrlTemplate compile(String url, ParamSlot[] slots) {
+        List<String> literals = new ArrayList<>();
+        List<Integer> slotIndexes = new ArrayList<>();
+        List<String> placeholders = new ArrayList<>();
+
+        StringBuilder literal = new StringBuilder();
+        int pos = 0;
+        while (pos < url.length()) {
+            int open = url.indexOf('{', pos);
+            int close = open < 0 ? -1 : url.indexOf('}', open);
+            if (close < 0) {
+                break;
+            }
+            String placeholder = url.substring(open, close + 1);
+            int index = findSlot(placeholder, slots);
+            literal.append(url, pos, open);
+            if (index < 0) {
+                literal.append(placeholder);
+            } else {
+                literals.add(literal.toString());
+                literal.setLength(0);
+                slotIndexes.add(index);
+                placeholders.add(placeholder);
+            }
+            pos = close + 1;
+        }
+        literal.append(url, pos, url.length());
+        literals.add(literal.toString());
+
+        int[] indexes = new int[slotIndexes.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = slotIndexes.get(i);
+        }
+        return new UrlTemplate(url, literals.toArray(new String[0]), indexes, placeholders.toArray(new String[0]));
+    }
+
+    private static int findSlot(String placeholder, ParamSlot[] slots) {
+        for (ParamSlot slot : slots) {
+            if (!slot.isCallback() && placeholder.equals(slot.getPathPlaceholder())) {
+                return slot.getIndex();
+            }
+        }
+        return -1;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * 是否包含路径变量
+     *
+     * @return
+     */
+    public boolean hasPathVariables() {
+        return slotIndexes.length > 0;
+    }
+
+    /**
+     * 渲染 URL
+     *
+     * @param pathValues 按参数下标存放的路径变量值，没有路径变量时可以为 null
+     * @param query 已编码的 URL 参数，形如 a=1&b=2
+     *
+     * @return
+     */
+    public String render(String[] pathValues, CharSequence query) {
+        int queryLength = query == null ? 0 : query.length();
+        if (slotIndexes.length == 0 && queryLength == 0) {
+            return source;
+        }
+
+        int size = literalLength + (queryLength > 0 ? querySeparator.length() + queryLength : 0);
+        for (int i = 0; i < slotIndexes.length; i++) {
+            String value = pathValues == null ? null : pathValues[slotIndexes[i]];
+            size += value == null ? placeholders[i].length() : value.length();
+        }
+
+        StringBuilder url = new StringBuilder(size);
+        url.append(literals[0]);
+        for (int i = 0; i < slotIndexes.length; i++) {
+            String value = pathValues == null ? null : pathValues[slotIndexes[i]];
+            url.append(value == null ? placeholders[i] : value).append(literals[i + 1]);
+        }
+        if (queryLength > 0) {
+            url.append(querySeparator).append(query);
+        }
+        return url.toString();
+    }
+}
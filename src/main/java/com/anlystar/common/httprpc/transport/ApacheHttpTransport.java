@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.transport;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.GzipCompressingEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+
+import com.anlystar.common.httprpc.helper.AsyncHttpClientHelper;
+import com.anlystar.common.httprpc.helper.HttpClientHelper;
+import com.anlystar.common.httprpc.helper.ResponseDecoder;
+import com.anlystar.common.httprpc.helper.ResponseReader;
+
+/**
+ * 基于 Apache HttpClient 的实现，同步请求使用阻塞连接池，异步请求使用 NIO 客户端
+ * <p>
+ * 客户端通过 Supplier 获取，全局客户端被重新配置或异步客户端延迟创建时取到的都是当前实例
+ */
+public class ApacheHttpTransport implements HttpTransport {
+
+    /**
+     * 使用 {@link HttpClientHelper} 和 {@link AsyncHttpClientHelper} 的全局客户端
+     */
+    public final static ApacheHttpTransport GLOBAL = new ApacheHttpTransport(HttpClientHelper::getHttpClient,
+            HttpClientHelper::getRequestConfig, AsyncHttpClientHelper::getDefaultHttpAsyncClient,
+            AsyncHttpClientHelper::getDefaultRequestConfig);
+
+    private final Supplier<CloseableHttpClient> httpClient;
+    private final Supplier<RequestConfig> requestConfig;
+    private final Supplier<CloseableHttpAsyncClient> asyncClient;
+    private final Supplier<RequestConfig> asyncRequestConfig;
+
+    /**
+     * @param httpClient 同步客户端
+     * @param requestConfig 同步请求的配置，取到 null 时使用客户端的默认配置
+     * @param asyncClient 异步客户端，首次异步请求时才获取
+     * @param asyncRequestConfig 异步客户端的默认配置，请求带超时时在此基础上收紧，取到 null 时使用
+     *         {@link RequestConfig#DEFAULT}
+     */
+    public ApacheHttpTransport(Supplier<CloseableHttpClient> httpClient, Supplier<RequestConfig> requestConfig,
+                               Supplier<CloseableHttpAsyncClient> asyncClient,
+                               Supplier<RequestConfig> asyncRequestConfig) {
+        this.httpClient = httpClient;
+        this.requestConfig = requestConfig;
+        this.asyncClient = asyncClient;
+        this.asyncRequestConfig = asyncRequestConfig;
+    }
+
+    @Override
+    public <T> T execute(TransportRequest request, ResponseReader<T> reader) throws IOException {
+        try (CloseableHttpResponse response = httpClient.get().execute(newRequest(request, requestConfig.get(),
+                true))) {
+            return ResponseDecoder.decode(response, null, reader);
+        }
+    }
+
+    @Override
+    public Future<?> execute(TransportRequest request, FutureCallback<HttpResponse> callback) {
+        HttpUriRequest asyncRequest;
+        try {
+            // 没有超时时不设置请求配置，使用客户端的默认配置
+            asyncRequest = newRequest(request, request.getTimeout() > 0 ? asyncRequestConfig.get() : null, false);
+        } catch (IOException e) {
+            callback.failed(e);
+            return CompletableFuture.completedFuture(null);
+        }
+        return asyncClient.get().execute(asyncRequest, callback);
+    }
+
+    /**
+     * 转换为 Apache 请求
+     *
+     * @param request
+     * @param config 为 null 时使用客户端的默认配置
+     * @param streaming 是否在发送时流式压缩请求体，NIO 客户端不支持，需预先压缩
+     *
+     * @return
+     *
+     * @throws IOException
+     */
+    protected HttpUriRequest newRequest(TransportRequest request, RequestConfig config, boolean streaming)
+            throws IOException {
+        RequestBuilder builder = RequestBuilder.create(request.getMethod()).setUri(request.getUrl());
+        if (request.getTimeout() > 0) {
+            config = limitTimeout(config == null ? RequestConfig.DEFAULT : config, request.getTimeout());
+        }
+        if (config != null) {
+            builder.setConfig(config);
+        }
+        request.getHeaders().forEach(builder::setHeader);
+        builder.setHeader("Accept-Encoding", "gzip, deflate");
+        if (request.getContentType() != null) {
+            builder.setHeader("Content-Type", request.getContentType());
+        }
+        if (request.getBody() != null) {
+            builder.setEntity(newEntity(request, streaming));
+        }
+        return builder.build();
+    }
+
+    /**
+     * 请求体，压缩时由 entity 提供 Content-Encoding: gzip
+     */
+    private static HttpEntity newEntity(TransportRequest request, boolean streaming) throws IOException {
+        if (!request.isGzip()) {
+            return new ByteArrayEntity(request.getBody());
+        }
+        if (streaming) {
+            // 写出时边压缩边发送，不生成压缩后的副本
+            return new GzipCompressingEntity(new ByteArrayEntity(request.getBody()));
+        }
+        ByteArrayEntity entity = new ByteArrayEntity(request.compressBody());
+        entity.setContentEncoding("gzip");
+        return entity;
+    }
+
+    /**
+     * 连接、获取连接和读取超时都不超过 timeout
+     *
+     * @param config
+     * @param timeout 单位毫秒
+     *
+     * @return
+     */
+    protected static RequestConfig limitTimeout(RequestConfig config, int timeout) {
+        return RequestConfig.copy(config)
+                .setConnectTimeout(limit(config.getConnectTimeout(), timeout))
+                .setConnectionRequestTimeout(limit(config.getConnectionRequestTimeout(), timeout))
+                .setSocketTimeout(limit(config.getSocketTimeout(), timeout))
+                .build();
+    }
+
+    /**
+     * 小于等于 0 的超时表示不限制
+     */
+    private static int limit(int configured, int timeout) {
+        return configured > 0 ? Math.min(configured, timeout) : timeout;
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.transport;
+
+import java.io.IOException;
+import java.util.concurrent.Future;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.concurrent.FutureCallback;
+
+import com.anlystar.common.httprpc.helper.ResponseDecoder;
+import com.anlystar.common.httprpc.helper.ResponseReader;
+
+/**
+ * 发送请求的客户端实现，每个客户端接口在创建代理时选定一个
+ * <p>
+ * 异步响应以 Apache {@link HttpResponse} 表示，由 {@link ResponseDecoder} 统一解压和解析
+ */
+public interface HttpTransport {
+
+    /**
+     * 同步发送请求，响应体交给 reader 读取，返回前释放连接
+     *
+     * @param request
+     * @param reader
+     * @param <T>
+     *
+     * @return
+     *
+     * @throws IOException
+     */
+    <T> T execute(TransportRequest request, ResponseReader<T> reader) throws IOException;
+
+    /**
+     * 异步发送请求
+     *
+     * @param request
+     * @param callback
+     *
+     * @return 取消时中止请求并回调 {@link FutureCallback#cancelled()}
+     */
+    Future<?> execute(TransportRequest request, FutureCallback<HttpResponse> callback);
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.transport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 已组装好的 HTTP 请求，与具体的客户端实现无关
+ * <p>
+ * URL 参数已拼接到 url 中，表单和 JSON 请求体已编码为字节
+ */
+public final class TransportRequest {
+
+    private final String method;
+    private final String url;
+    private final Map<String, String> headers;
+    private final byte[] body;
+    private final String contentType;
+    /**
+     * 超时时间上限，单位毫秒，小于等于 0 时使用客户端的默认超时
+     */
+    private final int timeout;
+    /**
+     * 是否以 gzip 压缩请求体发送
+     */
+    private final boolean gzip;
+
+    /**
+     * @param method 请求方法，如 GET
+     * @param url
+     * @param headers 为 null 时不设置
+     * @param body 请求体，为 null 时不发送
+     * @param contentType 请求体类型，为 null 时不设置
+     */
+    public TransportRequest(String method, String url, Map<String, String> headers, byte[] body,
+                            String contentType) {
+        this(method, url, headers, body, contentType, 0, false);
+    }
+
+    private TransportRequest(String method, String url, Map<String, String> headers, byte[] body,
+                             String contentType, int timeout, boolean gzip) {
+        this.method = method;
+        this.url = url;
+        this.headers = headers == null ? Collections.emptyMap() : headers;
+        this.body = body;
+        this.contentType = contentType;
+        this.timeout = timeout;
+        this.gzip = gzip;
+    }
+
+    /**
+     * 限制连接、获取连接和读取超时不超过 timeout
+     *
+     * @param timeout 单位毫秒
+     *
+     * @return 新的请求
+     */
+    public TransportRequest withTimeout(int timeout) {
+        return new TransportRequest(method, url, headers, body, contentType, timeout, gzip);
+    }
+
+    /**
+     * 以 gzip 压缩请求体发送，并设置 Content-Encoding: gzip
+     *
+     * @return 新的请求
+     */
+    public TransportRequest withGzip() {
+        return new TransportRequest(method, url, headers, body, contentType, timeout, true);
+    }
+
+    /**
+     * GET 请求
+     *
+     * @param url
+     * @param headers
+     * @param query 已编码的 URL 参数，为空时不拼接
+     *
+     * @return
+     */
+    public static TransportRequest get(String url, Map<String, String> headers, String query) {
+        return new TransportRequest("GET", appendQuery(url, query), headers, null, null);
+    }
+
+    /**
+     * POST 请求
+     *
+     * @param url
+     * @param headers
+     * @param body
+     * @param contentType
+     *
+     * @return
+     */
+    public static TransportRequest post(String url, Map<String, String> headers, byte[] body, String contentType) {
+        return new TransportRequest("POST", url, headers, body, contentType);
+    }
+
+    /**
+     * 拼接 URL 参数，url 中已有参数时用 &amp; 连接
+     *
+     * @param url
+     * @param query 为空时返回原 url
+     *
+     * @return
+     */
+    public static String appendQuery(String url, String query) {
+        if (query == null || query.isEmpty()) {
+            return url;
+        }
+        return url + (url.indexOf('?') < 0 ? '?' : '&') + query;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public int getTimeout() {
+        return timeout;
+    }
+
+    public boolean isGzip() {
+        return gzip;
+    }
+
+    /**
+     * gzip 压缩后的请求体，供不能在发送时流式压缩的客户端使用
+     *
+     * @return
+     *
+     * @throws IOException
+     */
+    public byte[] compressBody() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+        try (GZIPOutputStream gzipOut = new GZIPOutputStream(out, 8192)) {
+            gzipOut.write(body);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public String toString() {
+        return method + " " + url;
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.helper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+
+import com.anlystar.common.httprpc.transport.HttpTransport;
+import com.anlystar.common.httprpc.transport.TransportRequest;
+
+/**
+ * 基于 JDK HttpClient 的 HTTP/2 客户端，Java 11 版本
+ * <p>
+ * 明文地址通过 h2c 升级协商，服务端不支持时退回 HTTP/1.1
+ */
+public class Http2Client implements HttpTransport, Closeable {
+
+    private final static ProtocolVersion HTTP_2 = new ProtocolVersion("HTTP", 2, 0);
+
+    /**
+     * JDK HttpClient 不允许设置的 header
+     */
+    private final static Set<String> RESTRICTED_HEADERS = new HashSet<>(Arrays.asList("connection",
+            "content-length", "expect", "host", "upgrade"));
+
+    private final HttpClient client;
+    private final Duration requestTimeout;
+
+    protected Http2Client() {
+        this.client = null;
+        this.requestTimeout = null;
+    }
+
+    private Http2Client(HttpClient client, Duration requestTimeout) {
+        this.client = client;
+        this.requestTimeout = requestTimeout;
+    }
+
+    /**
+     * 当前运行时是否支持
+     *
+     * @return
+     */
+    public static boolean isSupported() {
+        return true;
+    }
+
+    /**
+     * 按配置创建客户端，使用连接超时和 socket 读写超时
+     *
+     * @param config
+     *
+     * @return
+     */
+    public static Http2Client create(HttpClientConfig config) {
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL);
+        if (config.getConnectTimeout() > 0) {
+            builder.connectTimeout(Duration.ofMillis(config.getConnectTimeout()));
+        }
+        Duration requestTimeout = config.getSocketTimeout() > 0 ? Duration.ofMillis(config.getSocketTimeout()) : null;
+        return new Http2Client(builder.build(), requestTimeout);
+    }
+
+    /**
+     * 同步发送请求，响应体以流的方式交给 reader 边读边解码
+     */
+    @Override
+    public <T> T execute(TransportRequest request, ResponseReader<T> reader) throws IOException {
+        java.net.http.HttpResponse<InputStream> response;
+        try {
+            response = client.send(newRequest(request), java.net.http.HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException exception = new InterruptedIOException("请求被中断 -> " + request.getUrl());
+            exception.initCause(e);
+            throw exception;
+        }
+        InputStream body = response.body();
+        try {
+            return ResponseDecoder.decode(toHttpResponse(response,
+                    new InputStreamEntity(body, response.headers().firstValueAsLong("Content-Length").orElse(-1))),
+                    null, reader);
+        } finally {
+            // 状态码异常时未读取响应体，关闭流以释放连接
+            body.close();
+        }
+    }
+
+    @Override
+    public Future<?> execute(TransportRequest request, FutureCallback<HttpResponse> callback) {
+        HttpRequest httpRequest;
+        try {
+            httpRequest = newRequest(request);
+        } catch (IOException e) {
+            callback.failed(e);
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<java.net.http.HttpResponse<byte[]>> future =
+                client.sendAsync(httpRequest, java.net.http.HttpResponse.BodyHandlers.ofByteArray());
+        future.whenComplete((response, error) -> {
+            if (error == null) {
+                callback.completed(toHttpResponse(response, new ByteArrayEntity(response.body())));
+                return;
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause() : error;
+            if (cause instanceof CancellationException) {
+                callback.cancelled();
+            } else if (cause instanceof Exception) {
+                callback.failed((Exception) cause);
+            } else {
+                callback.failed(new ExecutionException(cause));
+            }
+        });
+        return future;
+    }
+
+    private HttpRequest newRequest(TransportRequest request) throws IOException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(request.getUrl()));
+        Duration timeout = requestTimeout;
+        if (request.getTimeout() > 0 && (timeout == null || timeout.toMillis() > request.getTimeout())) {
+            timeout = Duration.ofMillis(request.getTimeout());
+        }
+        if (timeout != null) {
+            builder.timeout(timeout);
+        }
+        request.getHeaders().forEach((name, value) -> {
+            if (value != null && !RESTRICTED_HEADERS.contains(name.toLowerCase(Locale.ENGLISH))) {
+                builder.setHeader(name, value);
+            }
+        });
+        builder.setHeader("Accept-Encoding", "gzip, deflate");
+        if (request.getContentType() != null) {
+            builder.setHeader("Content-Type", request.getContentType());
+        }
+        byte[] body = request.getBody();
+        if (body != null && request.isGzip()) {
+            body = request.compressBody();
+            builder.setHeader("Content-Encoding", "gzip");
+        }
+        builder.method(request.getMethod(), body == null ? HttpRequest.BodyPublishers.noBody()
+                : HttpRequest.BodyPublishers.ofByteArray(body));
+        return builder.build();
+    }
+
+    /**
+     * 转换为 Apache 响应，保留状态码、header 和 Content-Encoding，由 {@link ResponseDecoder} 统一解压
+     */
+    private static HttpResponse toHttpResponse(java.net.http.HttpResponse<?> response, AbstractHttpEntity entity) {
+        ProtocolVersion version = response.version() == HttpClient.Version.HTTP_2 ? HTTP_2 : HttpVersion.HTTP_1_1;
+        BasicHttpResponse result = new BasicHttpResponse(new BasicStatusLine(version, response.statusCode(), null));
+        response.headers().map().forEach((name, values) -> {
+            // 跳过 :status 等伪 header
+            if (!name.startsWith(":")) {
+                values.forEach(value -> result.addHeader(name, value));
+            }
+        });
+        response.headers().firstValue("Content-Type").ifPresent(entity::setContentType);
+        response.headers().firstValue("Content-Encoding").ifPresent(entity::setContentEncoding);
+        result.setEntity(entity);
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.helper;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 虚拟线程支持，Java 21 版本
+ */
+public abstract class VirtualThreadHelper {
+
+    private final static ExecutorService EXECUTOR = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("httprpc-virtual-", 0).factory());
+
+    /**
+     * 当前运行时是否支持虚拟线程
+     *
+     * @return
+     */
+    public static boolean isSupported() {
+        return true;
+    }
+
+    /**
+     * 每个任务一个虚拟线程的执行器，全局共享，不需要关闭
+     *
+     * @return
+     */
+    public static ExecutorService getExecutor() {
+        return EXECUTOR;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.codec;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class BeanFlattenerTest {
+
+    public static class Plain {
+
+        public String name = "";
+        public int count;
+        public Long id;
+        @JsonProperty("alias")
+        public Boolean flag = true;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public static class ClassNonEmpty {
+
+        public String name = "";
+        public String title = "t";
+        @JsonInclude(JsonInclude.Include.ALWAYS)
+        public String always = "";
+    }
+
+    public static class PropertyInclusion {
+
+        @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+        public int count;
+        @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+        public int size = 3;
+        @JsonInclude(JsonInclude.Include.NON_EMPTY)
+        public String name = "";
+        private String field = "";
+
+        @JsonInclude(JsonInclude.Include.NON_EMPTY)
+        public String getField() {
+            return field;
+        }
+    }
+
+    private static Map<String, String> flatten(ObjectMapper mapper, Object bean) {
+        Map<String, String> target = new TreeMap<>();
+        new BeanFlattener(mapper).flatten(bean, target);
+        return target;
+    }
+
+    @Test
+    public void plainPropertiesReadDirectly() {
+        assertEquals("{alias=true, count=0, name=}", flatten(new ObjectMapper(), new Plain()).toString());
+    }
+
+    @Test
+    public void classInclusionRespected() {
+        assertEquals("{always=, title=t}", flatten(new ObjectMapper(), new ClassNonEmpty()).toString());
+    }
+
+    @Test
+    public void propertyInclusionRespected() {
+        assertEquals("{size=3}", flatten(new ObjectMapper(), new PropertyInclusion()).toString());
+    }
+
+    @Test
+    public void mapperInclusionRespected() {
+        ObjectMapper mapper = new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_EMPTY);
+        assertEquals("{alias=true, count=0}", flatten(mapper, new Plain()).toString());
+    }
+
+    @Test
+    public void sameFieldsAsJson() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        for (Object bean : new Object[] {new Plain(), new ClassNonEmpty(), new PropertyInclusion()}) {
+            Map<String, Object> json = mapper.readValue(mapper.writeValueAsString(bean), TreeMap.class);
+            // 展开时不输出 null
+            json.values().removeIf(Objects::isNull);
+            assertEquals(json.keySet(), flatten(mapper, bean).keySet());
+        }
+    }
+}
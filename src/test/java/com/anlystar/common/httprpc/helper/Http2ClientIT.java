@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPairGenerator;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.anlystar.common.helper.RSAHelper;
+import com.anlystar.common.httprpc.annotation.ClientConfig;
+import com.anlystar.common.httprpc.annotation.GzipRequest;
+import com.anlystar.common.httprpc.annotation.HttpRequest;
+import com.anlystar.common.httprpc.annotation.ReqParam;
+import com.anlystar.common.httprpc.annotation.ReqSign;
+import com.anlystar.common.httprpc.annotation.RequestMethod;
+import com.anlystar.common.httprpc.proxy.ClientProxyFactory;
+import com.anlystar.common.httprpc.proxy.handler.ClientPool;
+
+/**
+ * 通过进程内 h2c 服务端验证 {@link Http2Client}，多版本类只在 jar 中生效，由 failsafe 在打包后运行。
+ * 同一服务端也接受 HTTP/1.1，用于对比全局客户端同步请求流式压缩的请求体
+ */
+public class Http2ClientIT {
+
+    private final static String URL_KEY = "httprpc.it.h2c.url";
+
+    /**
+     * 超过压缩阈值的请求体
+     */
+    private final static Map<String, Object> LARGE_BODY = Collections.singletonMap("k", repeat('x', 200));
+
+    private static Server server;
+    private static Api api;
+    private static Http1Api http1Api;
+
+    @ClientConfig(name = "h2c-it", http2 = true)
+    public interface Api {
+
+        @HttpRequest(urlKey = URL_KEY)
+        String get(@ReqParam("id") String id);
+
+        @HttpRequest(urlKey = URL_KEY, method = RequestMethod.POSTJSON)
+        String post(Map<String, Object> body);
+
+        @HttpRequest(urlKey = URL_KEY, method = RequestMethod.POSTJSON, async = true)
+        CompletableFuture<String> postAsync(Map<String, Object> body);
+
+        @HttpRequest(urlKey = URL_KEY, method = RequestMethod.POSTJSON)
+        String signed(Map<String, Object> body, @ReqSign String privateKey);
+
+        @GzipRequest(threshold = 64)
+        @HttpRequest(urlKey = URL_KEY, method = RequestMethod.POSTJSON)
+        String gzipPost(Map<String, Object> body);
+
+        @GzipRequest(threshold = 64)
+        @HttpRequest(urlKey = URL_KEY, method = RequestMethod.POSTJSON, async = true)
+        CompletableFuture<String> gzipPostAsync(Map<String, Object> body);
+    }
+
+    /**
+     * 未启用 HTTP/2，同步请求通过全局 Apache 客户端发送
+     */
+    public interface Http1Api {
+
+        @GzipRequest(threshold = 64)
+        @HttpRequest(urlKey = URL_KEY, method = RequestMethod.POSTJSON)
+        String gzipPost(Map<String, Object> body);
+    }
+
+    @BeforeClass
+    public static void startServer() throws Exception {
+        server = new Server();
+        HttpConfiguration config = new HttpConfiguration();
+        ServerConnector connector = new ServerConnector(server, new HttpConnectionFactory(config),
+                new HTTP2CServerConnectionFactory(config));
+        connector.setHost("127.0.0.1");
+        server.addConnector(connector);
+        server.setHandler(new EchoHandler());
+        server.start();
+        System.setProperty(URL_KEY, "http://127.0.0.1:" + connector.getLocalPort() + "/echo");
+        api = ClientProxyFactory.createServiceProxy(Api.class, null);
+        http1Api = ClientProxyFactory.createServiceProxy(Http1Api.class, null);
+    }
+
+    @AfterClass
+    public static void stopServer() throws Exception {
+        System.clearProperty(URL_KEY);
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void http2Transport() {
+        assertTrue(Http2Client.isSupported());
+        assertNotNull(ClientPool.forInterface(Api.class, null).getHttp2Client());
+    }
+
+    @Test
+    public void syncGet() {
+        assertEquals("HTTP/2.0 GET id=1 sign=null encoding=null body=", api.get("1"));
+    }
+
+    @Test
+    public void syncPost() {
+        assertEquals("HTTP/2.0 POST id=null sign=null encoding=null body={\"k\":\"v\"}",
+                api.post(Collections.singletonMap("k", "v")));
+    }
+
+    @Test
+    public void asyncPost() throws Exception {
+        assertEquals("HTTP/2.0 POST id=null sign=null encoding=null body={\"k\":\"v\"}",
+                api.postAsync(Collections.singletonMap("k", "v")).get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void signedPost() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024);
+        String privateKey = Base64.getEncoder().encodeToString(generator.generateKeyPair().getPrivate().getEncoded());
+        String sign = RSAHelper.sign("{\"k\":\"v\"}", privateKey);
+        assertNotNull(sign);
+        assertEquals("HTTP/2.0 POST id=null sign=" + sign + " encoding=null body={\"k\":\"v\"}",
+                api.signed(Collections.singletonMap("k", "v"), privateKey));
+    }
+
+    @Test
+    public void gzipBelowThreshold() {
+        assertEquals("HTTP/2.0 POST id=null sign=null encoding=null body={\"k\":\"v\"}",
+                api.gzipPost(Collections.singletonMap("k", "v")));
+    }
+
+    @Test
+    public void gzipPost() {
+        assertEquals("HTTP/2.0 POST id=null sign=null encoding=gzip body={\"k\":\"" + LARGE_BODY.get("k") + "\"}",
+                api.gzipPost(LARGE_BODY));
+    }
+
+    @Test
+    public void gzipPostAsync() throws Exception {
+        assertEquals("HTTP/2.0 POST id=null sign=null encoding=gzip body={\"k\":\"" + LARGE_BODY.get("k") + "\"}",
+                api.gzipPostAsync(LARGE_BODY).get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void gzipPostHttp1Streaming() {
+        assertEquals("HTTP/1.1 POST id=null sign=null encoding=gzip body={\"k\":\"" + LARGE_BODY.get("k") + "\"}",
+                http1Api.gzipPost(LARGE_BODY));
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    /**
+     * 返回协议、请求方法、参数 id、签名 header、Content-Encoding 和解压后的请求体
+     */
+    private static class EchoHandler extends AbstractHandler {
+
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request,
+                           HttpServletResponse response) throws IOException {
+            baseRequest.setHandled(true);
+            String body = new String(readBody(request), StandardCharsets.UTF_8);
+            String echo = request.getProtocol() + " " + request.getMethod() + " id=" + request.getParameter("id")
+                    + " sign=" + request.getHeader("sign") + " encoding=" + request.getHeader("Content-Encoding")
+                    + " body=" + body;
+            response.setContentType("text/plain;charset=utf-8");
+            response.getOutputStream().write(echo.getBytes(StandardCharsets.UTF_8));
+        }
+
+        protected byte[] readBody(HttpServletRequest request) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            InputStream body = request.getInputStream();
+            if ("gzip".equalsIgnoreCase(request.getHeader("Content-Encoding"))) {
+                body = new GZIPInputStream(body);
+            }
+            try (InputStream in = body) {
+                for (int n; (n = in.read(buffer)) > 0; ) {
+                    out.write(buffer, 0, n);
+                }
+            }
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void emptyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0D, histogram.getMean(), 0);
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(0, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 16; i++) {
+            histogram.record(i);
+        }
+        assertEquals(16, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(0));
+        assertEquals(7, histogram.getPercentile(50));
+        assertEquals(14, histogram.getPercentile(90));
+        assertEquals(15, histogram.getPercentile(100));
+        assertEquals(7.5D, histogram.getMean(), 0);
+    }
+
+    @Test
+    public void negativeRecordedAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void relativeErrorWithinOneSixteenth() {
+        for (int exponent = 4; exponent < 63; exponent++) {
+            long power = 1L << exponent;
+            for (long value : new long[] {power - 1, power, power + 1, power + power / 3}) {
+                if (value < 0) {
+                    continue;
+                }
+                // 较大的值使分位数不被最大值截断
+                LatencyHistogram histogram = new LatencyHistogram();
+                histogram.record(value);
+                histogram.record(Long.MAX_VALUE);
+                long reported = histogram.getPercentile(50);
+                assertTrue("value=" + value + " reported=" + reported, reported >= value);
+                assertTrue("value=" + value + " reported=" + reported, reported - value <= value / 16);
+            }
+        }
+    }
+
+    @Test
+    public void bucketUpperBounds() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(16);
+        histogram.record(1000);
+        assertEquals(16, histogram.getPercentile(50));
+
+        histogram = new LatencyHistogram();
+        histogram.record(32);
+        histogram.record(1000);
+        // 32 ~ 63 每桶宽 2
+        assertEquals(33, histogram.getPercentile(50));
+
+        histogram = new LatencyHistogram();
+        histogram.record(1000);
+        histogram.record(100000);
+        // 512 ~ 1023 每桶宽 32，1000 落在 992 ~ 1023
+        assertEquals(1023, histogram.getPercentile(50));
+    }
+
+    @Test
+    public void percentileCappedByMax() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000);
+        assertEquals(1000, histogram.getPercentile(50));
+        assertEquals(1000, histogram.getPercentile(100));
+        assertEquals(1000, histogram.getMax());
+    }
+
+    @Test
+    public void percentilesAreMonotonic() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 10000; i++) {
+            histogram.record(i * 997);
+        }
+        long previous = 0;
+        for (double percentile = 0; percentile <= 100; percentile += 0.5) {
+            long value = histogram.getPercentile(percentile);
+            assertTrue(value >= previous);
+            previous = value;
+        }
+        long p99 = histogram.getPercentile(99);
+        assertTrue(p99 >= 9900L * 997 && p99 <= 9900L * 997 * 17 / 16);
+        assertEquals(10000L * 997, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void reset() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(100);
+        histogram.record(200);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(99));
+    }
+}
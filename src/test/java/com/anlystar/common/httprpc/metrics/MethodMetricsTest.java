@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.metrics;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.concurrent.FutureCallback;
+import org.junit.Test;
+
+public class MethodMetricsTest {
+
+    @Test
+    public void countsByOutcome() {
+        MethodMetrics metrics = new MethodMetrics("test");
+        metrics.stop(metrics.start(), null);
+        metrics.stop(metrics.start(), new IOException());
+        metrics.stop(metrics.start(), new SocketTimeoutException());
+        assertEquals(1, metrics.getSuccessCount());
+        assertEquals(1, metrics.getFailureCount());
+        assertEquals(1, metrics.getTimeoutCount());
+        assertEquals(3, metrics.getCount());
+        assertEquals(0, metrics.getInFlight());
+    }
+
+    @Test
+    public void cancelledNotCountedAsSuccess() {
+        MethodMetrics metrics = new MethodMetrics("test");
+        long start = metrics.start();
+        assertEquals(1, metrics.getInFlight());
+        metrics.wrap(new NoopCallback(), start).cancelled();
+        assertEquals(0, metrics.getInFlight());
+        assertEquals(1, metrics.getCancelledCount());
+        assertEquals(0, metrics.getSuccessCount());
+        // 不计入耗时
+        assertEquals(0, metrics.getCount());
+    }
+
+    private static class NoopCallback implements FutureCallback<HttpResponse> {
+
+        @Override
+        public void completed(HttpResponse result) {
+        }
+
+        @Override
+        public void failed(Exception ex) {
+        }
+
+        @Override
+        public void cancelled() {
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.proxy.handler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class AdaptiveLimitTest {
+
+    private final static long RTT = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private static void acquire(AdaptiveLimit limit, int count) throws InterruptedException {
+        for (int i = 0; i < count; i++) {
+            assertTrue(limit.acquire(0));
+        }
+    }
+
+    @Test
+    public void initialLimitBounded() {
+        assertEquals(4, new AdaptiveLimit("r", 1, 4, 10).getLimit());
+        assertEquals(10, new AdaptiveLimit("r", 100, 4, 10).getLimit());
+        assertEquals(6, new AdaptiveLimit("r", 6, 4, 10).getLimit());
+    }
+
+    @Test
+    public void rejectsAtLimit() throws Exception {
+        AdaptiveLimit limit = new AdaptiveLimit("r", 4, 1, 10);
+        acquire(limit, 4);
+        assertFalse(limit.acquire(0));
+        assertEquals(4, limit.getInFlight());
+        assertEquals(1, limit.getRejectedCount());
+
+        limit.cancel();
+        assertEquals(3, limit.getInFlight());
+        assertTrue(limit.acquire(0));
+        // 取消不调整限制
+        assertEquals(4, limit.getLimit());
+    }
+
+    @Test
+    public void queueTimeout() throws Exception {
+        AdaptiveLimit limit = new AdaptiveLimit("r", 1, 1, 1);
+        acquire(limit, 1);
+        long start = System.nanoTime();
+        assertFalse(limit.acquire(TimeUnit.MILLISECONDS.toNanos(50)));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(1, limit.getRejectedCount());
+    }
+
+    @Test
+    public void releaseWakesWaiter() throws Exception {
+        AdaptiveLimit limit = new AdaptiveLimit("r", 1, 1, 1);
+        acquire(limit, 1);
+        CompletableFuture<Boolean> waiter = CompletableFuture.supplyAsync(() -> {
+            try {
+                return limit.acquire(TimeUnit.SECONDS.toNanos(10));
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(50);
+        assertFalse(waiter.isDone());
+        limit.release(RTT, false);
+        assertTrue(waiter.get(10, TimeUnit.SECONDS));
+        assertEquals(1, limit.getInFlight());
+    }
+
+    @Test
+    public void firstSampleSetsNoLoadRtt() throws Exception {
+        AdaptiveLimit limit = new AdaptiveLimit("r", 10, 1, 100);
+        acquire(limit, 1);
+        limit.release(RTT, false);
+        assertEquals(10D, limit.getNoLoadRttMillis(), 0);
+        assertEquals(10, limit.getLimit());
+    }
+
+    @Test
+    public void increasesWithoutQueueing() throws Exception {
+        AdaptiveLimit limit = new AdaptiveLimit("r", 10, 1, 100);
+        acquire(limit, 10);
+        limit.release(RTT, false);
+        // 耗时与无排队耗时相同，排队数为 0，限制增加 6 * max(1, log10(10))
+        limit.release(RTT, false);
+        assertEquals(16, limit.getLimit());
+    }
+
+    @Test
+    public void notIncreasedWhenUnderused() throws Exception {
+        AdaptiveLimit limit = new AdaptiveLimit("r", 10, 1, 100);
+        acquire(limit, 2);
+        limit.release(RTT, false);
+        limit.release(RTT, false);
+        assertEquals(10, limit.getLimit());
+    }
+
+    @Test
+    public void decreasesWhenQueueing() throws Exception {
+        AdaptiveLimit limit = new AdaptiveLimit("r", 10, 1, 100);
+        acquire(limit, 3);
+        limit.release(RTT, false);
+        // 排队数 10 * (1 - 1 / 10) = 9，超过 6 * log 时减小
+        limit.release(RTT * 10, false);
+        assertEquals(9, limit.getLimit());
+        // 超时同样减小
+        limit.release(RTT, true);
+        assertEquals(8, limit.getLimit());
+    }
+
+    @Test
+    public void boundedByMinAndMax() throws Exception {
+        AdaptiveLimit limit = new AdaptiveLimit("r", 5, 4, 100);
+        acquire(limit, 4);
+        limit.release(RTT, false);
+        for (int i = 0; i < 3; i++) {
+            limit.release(RTT, true);
+        }
+        assertEquals(4, limit.getLimit());
+
+        limit = new AdaptiveLimit("r", 10, 1, 12);
+        acquire(limit, 10);
+        limit.release(RTT, false);
+        limit.release(RTT, false);
+        assertEquals(12, limit.getLimit());
+    }
+
+    @Test
+    public void probesNoLoadRtt() throws Exception {
+        AdaptiveLimit limit = new AdaptiveLimit("r", 1, 1, 1);
+        // 每 limit * 30 个样本以当前耗时重新作为无排队耗时
+        for (int i = 0; i < 29; i++) {
+            acquire(limit, 1);
+            limit.release(RTT, false);
+        }
+        assertEquals(10D, limit.getNoLoadRttMillis(), 0);
+        acquire(limit, 1);
+        limit.release(RTT * 2, false);
+        assertEquals(20D, limit.getNoLoadRttMillis(), 0);
+    }
+}
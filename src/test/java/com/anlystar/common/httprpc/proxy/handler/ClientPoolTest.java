@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.proxy.handler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import com.anlystar.common.httprpc.annotation.ClientConfig;
+
+public class ClientPoolTest {
+
+    static class A {
+
+        @ClientConfig(socketTimeout = 1000)
+        interface UserClient {
+        }
+    }
+
+    static class B {
+
+        @ClientConfig(socketTimeout = 2000)
+        interface UserClient {
+        }
+    }
+
+    @ClientConfig(name = "pool-test-shared", maxTotal = 10)
+    interface SharedA {
+    }
+
+    @ClientConfig(name = "pool-test-shared", maxTotal = 10)
+    interface SharedB {
+    }
+
+    @ClientConfig(name = "pool-test-shared", maxTotal = 20)
+    interface SharedConflict {
+    }
+
+    interface Unconfigured {
+    }
+
+    @Test
+    public void sameSimpleNameNotShared() {
+        ClientPool a = ClientPool.forInterface(A.UserClient.class, null);
+        ClientPool b = ClientPool.forInterface(B.UserClient.class, null);
+        assertNotSame(a, b);
+        assertEquals(A.UserClient.class.getName(), a.getName());
+        assertEquals(1000, a.getConfig().getSocketTimeout());
+        assertEquals(2000, b.getConfig().getSocketTimeout());
+        assertSame(a, ClientPool.forInterface(A.UserClient.class, null));
+    }
+
+    @Test
+    public void explicitNameShared() {
+        assertSame(ClientPool.forInterface(SharedA.class, null), ClientPool.forInterface(SharedB.class, null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void explicitNameWithDifferentConfigRejected() {
+        ClientPool.forInterface(SharedA.class, null);
+        ClientPool.forInterface(SharedConflict.class, null);
+    }
+
+    @Test
+    public void unconfiguredInterface() {
+        assertNull(ClientPool.forInterface(Unconfigured.class, null));
+    }
+}
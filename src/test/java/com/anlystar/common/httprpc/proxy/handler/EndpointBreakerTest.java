@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.proxy.handler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.concurrent.FutureCallback;
+import org.junit.Test;
+
+import com.anlystar.common.httprpc.annotation.CircuitBreaker;
+import com.anlystar.common.httprpc.helper.HttpStatusException;
+import com.fasterxml.jackson.core.JsonParseException;
+
+public class EndpointBreakerTest {
+
+    private final static long SLOW = TimeUnit.MILLISECONDS.toNanos(200);
+    private final static long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final static AtomicInteger ENDPOINTS = new AtomicInteger();
+
+    interface Api {
+
+        /**
+         * 打开后长时间不进入半开
+         */
+        @CircuitBreaker(slidingWindowSize = 10, minimumNumberOfCalls = 5, failureRateThreshold = 50,
+                slowCallDuration = 100, slowCallRateThreshold = 50, waitDurationInOpenState = 3600000)
+        void stayOpen();
+
+        /**
+         * 打开后下一次申请即进入半开
+         */
+        @CircuitBreaker(slidingWindowSize = 4, minimumNumberOfCalls = 4, failureRateThreshold = 50,
+                waitDurationInOpenState = 0, permittedNumberOfCallsInHalfOpenState = 2)
+        void halfOpenAtOnce();
+    }
+
+    private static EndpointBreaker breaker(String methodName) throws Exception {
+        Method method = Api.class.getDeclaredMethod(methodName);
+        return EndpointBreaker.forEndpoint(method, method.getAnnotation(CircuitBreaker.class),
+                "http://breaker-test-" + ENDPOINTS.incrementAndGet());
+    }
+
+    private static void record(EndpointBreaker breaker, int calls, boolean failed, long duration) {
+        for (int i = 0; i < calls; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.onComplete(duration, failed);
+        }
+    }
+
+    @Test
+    public void sharedPerMethodAndEndpoint() throws Exception {
+        Method method = Api.class.getDeclaredMethod("stayOpen");
+        CircuitBreaker config = method.getAnnotation(CircuitBreaker.class);
+        EndpointBreaker a = EndpointBreaker.forEndpoint(method, config, "http://shared-test");
+        assertTrue(a == EndpointBreaker.forEndpoint(method, config, "http://shared-test"));
+        assertFalse(a == EndpointBreaker.forEndpoint(method, config, "http://shared-test-2"));
+    }
+
+    @Test
+    public void endpointOfUrl() {
+        assertEquals("http://host:8080", EndpointBreaker.endpoint("http://host:8080/a/b?c=d"));
+        assertEquals("https://host", EndpointBreaker.endpoint("https://host?c=d"));
+        assertEquals("http://host", EndpointBreaker.endpoint("http://host"));
+    }
+
+    @Test
+    public void staysClosedBelowMinimumCalls() throws Exception {
+        EndpointBreaker breaker = breaker("stayOpen");
+        record(breaker, 4, true, FAST);
+        assertEquals(EndpointBreaker.State.CLOSED, breaker.getCurrentState());
+        assertEquals(-1D, breaker.getFailureRate(), 0);
+        assertEquals(4, breaker.getBufferedCalls());
+    }
+
+    @Test
+    public void staysClosedBelowThreshold() throws Exception {
+        EndpointBreaker breaker = breaker("stayOpen");
+        record(breaker, 6, false, FAST);
+        record(breaker, 4, true, FAST);
+        assertEquals(EndpointBreaker.State.CLOSED, breaker.getCurrentState());
+        assertEquals(40D, breaker.getFailureRate(), 0);
+    }
+
+    @Test
+    public void opensOnFailureRate() throws Exception {
+        EndpointBreaker breaker = breaker("stayOpen");
+        record(breaker, 2, false, FAST);
+        record(breaker, 3, true, FAST);
+        assertEquals(EndpointBreaker.State.OPEN, breaker.getCurrentState());
+        assertFalse(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(2, breaker.getNotPermittedCount());
+        assertEquals(1, breaker.getStateTransitionCount());
+    }
+
+    @Test
+    public void opensOnSlowCallRate() throws Exception {
+        EndpointBreaker breaker = breaker("stayOpen");
+        record(breaker, 2, false, FAST);
+        record(breaker, 2, false, SLOW);
+        assertEquals(EndpointBreaker.State.CLOSED, breaker.getCurrentState());
+        record(breaker, 1, false, SLOW);
+        assertEquals(EndpointBreaker.State.OPEN, breaker.getCurrentState());
+    }
+
+    @Test
+    public void slidingWindowEvictsOldCalls() throws Exception {
+        EndpointBreaker breaker = breaker("halfOpenAtOnce");
+        record(breaker, 1, true, FAST);
+        record(breaker, 3, false, FAST);
+        assertEquals(25D, breaker.getFailureRate(), 0);
+        record(breaker, 1, false, FAST);
+        assertEquals(0D, breaker.getFailureRate(), 0);
+        assertEquals(4, breaker.getBufferedCalls());
+        assertEquals(EndpointBreaker.State.CLOSED, breaker.getCurrentState());
+    }
+
+    @Test
+    public void ignoresCallsInFlightWhenOpened() throws Exception {
+        EndpointBreaker breaker = breaker("stayOpen");
+        // 打开前发出的调用
+        for (int i = 0; i < 3; i++) {
+            assertTrue(breaker.tryAcquire());
+        }
+        record(breaker, 5, true, FAST);
+        assertEquals(EndpointBreaker.State.OPEN, breaker.getCurrentState());
+        for (int i = 0; i < 3; i++) {
+            breaker.onComplete(FAST, false);
+        }
+        assertEquals(EndpointBreaker.State.OPEN, breaker.getCurrentState());
+        assertEquals(0, breaker.getBufferedCalls());
+    }
+
+    @Test
+    public void halfOpenPermitsLimited() throws Exception {
+        EndpointBreaker breaker = breaker("halfOpenAtOnce");
+        record(breaker, 4, true, FAST);
+        assertEquals(EndpointBreaker.State.OPEN, breaker.getCurrentState());
+
+        assertTrue(breaker.tryAcquire());
+        assertEquals(EndpointBreaker.State.HALF_OPEN, breaker.getCurrentState());
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(1, breaker.getNotPermittedCount());
+
+        breaker.onComplete(FAST, false);
+        assertEquals(EndpointBreaker.State.HALF_OPEN, breaker.getCurrentState());
+        breaker.onComplete(FAST, false);
+        assertEquals(EndpointBreaker.State.CLOSED, breaker.getCurrentState());
+        assertEquals(0, breaker.getBufferedCalls());
+    }
+
+    @Test
+    public void halfOpenFailureReopens() throws Exception {
+        EndpointBreaker breaker = breaker("halfOpenAtOnce");
+        record(breaker, 4, true, FAST);
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        breaker.onComplete(FAST, false);
+        breaker.onComplete(FAST, true);
+        assertEquals(EndpointBreaker.State.OPEN, breaker.getCurrentState());
+        // CLOSED -> OPEN -> HALF_OPEN -> OPEN
+        assertEquals(3, breaker.getStateTransitionCount());
+    }
+
+    @Test
+    public void releaseReturnsHalfOpenPermit() throws Exception {
+        EndpointBreaker breaker = breaker("halfOpenAtOnce");
+        record(breaker, 4, true, FAST);
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+
+        breaker.release();
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+
+        // 包装的回调取消时同样归还
+        breaker.wrap(new NoopCallback(), System.nanoTime()).cancelled();
+        assertTrue(breaker.tryAcquire());
+        assertEquals(EndpointBreaker.State.HALF_OPEN, breaker.getCurrentState());
+    }
+
+    @Test
+    public void releaseIgnoredWhenClosed() throws Exception {
+        EndpointBreaker breaker = breaker("halfOpenAtOnce");
+        breaker.release();
+        record(breaker, 4, true, FAST);
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    public void wrapRecordsServerErrorsAsFailures() throws Exception {
+        EndpointBreaker breaker = breaker("halfOpenAtOnce");
+        for (int i = 0; i < 4; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.wrap(new NoopCallback(), System.nanoTime()).failed(new IOException());
+        }
+        assertEquals(EndpointBreaker.State.OPEN, breaker.getCurrentState());
+    }
+
+    @Test
+    public void listenersNotified() throws Exception {
+        EndpointBreaker breaker = breaker("halfOpenAtOnce");
+        List<String> transitions = new ArrayList<>();
+        CircuitBreakerListener listener = (b, from, to) -> {
+            if (b == breaker) {
+                transitions.add(from + "->" + to);
+            }
+        };
+        EndpointBreaker.addListener(listener);
+        try {
+            record(breaker, 4, true, FAST);
+            record(breaker, 2, false, FAST);
+        } finally {
+            EndpointBreaker.removeListener(listener);
+        }
+        assertEquals("[CLOSED->OPEN, OPEN->HALF_OPEN, HALF_OPEN->CLOSED]", transitions.toString());
+    }
+
+    @Test
+    public void failureClassification() {
+        assertTrue(EndpointBreaker.isFailure(new IOException()));
+        assertTrue(EndpointBreaker.isFailure(new RuntimeException(new IOException())));
+        assertTrue(EndpointBreaker.isFailure(new HttpStatusException(503)));
+        assertFalse(EndpointBreaker.isFailure(new HttpStatusException(404)));
+        assertFalse(EndpointBreaker.isFailure(new JsonParseException(null, "bad")));
+        assertFalse(EndpointBreaker.isFailure(new IllegalStateException()));
+        assertFalse(EndpointBreaker.isFailure(null));
+    }
+
+    private static class NoopCallback implements FutureCallback<HttpResponse> {
+
+        @Override
+        public void completed(HttpResponse result) {
+        }
+
+        @Override
+        public void failed(Exception ex) {
+        }
+
+        @Override
+        public void cancelled() {
+        }
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.proxy.handler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Test;
+
+import com.anlystar.common.httprpc.annotation.Hedge;
+import com.anlystar.common.httprpc.metrics.MethodMetrics;
+
+public class HedgePolicyTest {
+
+    interface Api {
+
+        @Hedge(delay = 1)
+        void immediate();
+
+        @Hedge(delay = 3600000)
+        void never();
+
+        @Hedge(delay = 1, maxHedgePercent = 0)
+        void noDeposit();
+
+        @Hedge
+        void byPercentile();
+    }
+
+    private static Hedge hedge(String name) throws Exception {
+        return Api.class.getDeclaredMethod(name).getAnnotation(Hedge.class);
+    }
+
+    private static HttpResponse response(int status) {
+        return new BasicHttpResponse(HttpVersion.HTTP_1_1, status, null);
+    }
+
+    /**
+     * 记录每次发送，由测试决定请求何时结束
+     */
+    private static class RecordingSender implements HedgePolicy.Sender {
+
+        private final LinkedBlockingQueue<Attempt> attempts = new LinkedBlockingQueue<>();
+
+        @Override
+        public CompletableFuture<?> send(boolean hedged, FutureCallback<HttpResponse> callback) {
+            Attempt attempt = new Attempt(hedged, callback);
+            attempts.add(attempt);
+            return attempt.request;
+        }
+
+        Attempt next() throws InterruptedException {
+            Attempt attempt = attempts.poll(10, TimeUnit.SECONDS);
+            assertTrue("请求未发送", attempt != null);
+            return attempt;
+        }
+
+        Attempt poll(long millis) throws InterruptedException {
+            return attempts.poll(millis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static class Attempt {
+
+        private final boolean hedged;
+        private final FutureCallback<HttpResponse> callback;
+        private final CompletableFuture<Object> request = new CompletableFuture<>();
+
+        Attempt(boolean hedged, FutureCallback<HttpResponse> callback) {
+            this.hedged = hedged;
+            this.callback = callback;
+        }
+    }
+
+    private static class Result implements FutureCallback<HttpResponse> {
+
+        private final List<Object> outcomes = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void completed(HttpResponse result) {
+            outcomes.add(result);
+        }
+
+        @Override
+        public void failed(Exception ex) {
+            outcomes.add(ex);
+        }
+
+        @Override
+        public void cancelled() {
+            outcomes.add("cancelled");
+        }
+    }
+
+    @Test
+    public void primaryWinsWithoutHedge() throws Exception {
+        MethodMetrics metrics = new MethodMetrics("test");
+        HedgePolicy policy = new HedgePolicy(hedge("never"), metrics);
+        RecordingSender sender = new RecordingSender();
+        Result result = new Result();
+
+        policy.execute(sender, result);
+        Attempt primary = sender.next();
+        assertFalse(primary.hedged);
+        HttpResponse ok = response(200);
+        primary.callback.completed(ok);
+
+        assertEquals(1, result.outcomes.size());
+        assertSame(ok, result.outcomes.get(0));
+        assertEquals(0, metrics.getHedgedCount());
+    }
+
+    @Test
+    public void hedgeWinsAndCancelsPrimary() throws Exception {
+        MethodMetrics metrics = new MethodMetrics("test");
+        HedgePolicy policy = new HedgePolicy(hedge("immediate"), metrics);
+        RecordingSender sender = new RecordingSender();
+        Result result = new Result();
+
+        policy.execute(sender, result);
+        Attempt primary = sender.next();
+        Attempt hedged = sender.next();
+        assertTrue(hedged.hedged);
+        assertEquals(1, metrics.getHedgedCount());
+
+        HttpResponse ok = response(200);
+        hedged.callback.completed(ok);
+        assertTrue(primary.request.isCancelled());
+        // 被取消的请求随后回调，不再交给调用方
+        primary.callback.cancelled();
+
+        assertEquals(1, result.outcomes.size());
+        assertSame(ok, result.outcomes.get(0));
+    }
+
+    @Test
+    public void serverErrorDoesNotWin() throws Exception {
+        HedgePolicy policy = new HedgePolicy(hedge("immediate"), new MethodMetrics("test"));
+        RecordingSender sender = new RecordingSender();
+        Result result = new Result();
+
+        policy.execute(sender, result);
+        Attempt primary = sender.next();
+        Attempt hedged = sender.next();
+
+        primary.callback.completed(response(503));
+        assertTrue(result.outcomes.isEmpty());
+        assertFalse(hedged.request.isCancelled());
+
+        HttpResponse ok = response(200);
+        hedged.callback.completed(ok);
+        assertEquals(1, result.outcomes.size());
+        assertSame(ok, result.outcomes.get(0));
+    }
+
+    @Test
+    public void lastFailureDelivered() throws Exception {
+        HedgePolicy policy = new HedgePolicy(hedge("immediate"), new MethodMetrics("test"));
+        RecordingSender sender = new RecordingSender();
+        Result result = new Result();
+
+        policy.execute(sender, result);
+        Attempt primary = sender.next();
+        Attempt hedged = sender.next();
+
+        primary.callback.failed(new IOException("primary"));
+        assertTrue(result.outcomes.isEmpty());
+        IOException last = new IOException("hedged");
+        hedged.callback.failed(last);
+        assertEquals(1, result.outcomes.size());
+        assertSame(last, result.outcomes.get(0));
+    }
+
+    @Test
+    public void hedgeSendFailureWaitsForPrimary() throws Exception {
+        HedgePolicy policy = new HedgePolicy(hedge("immediate"), new MethodMetrics("test"));
+        Result result = new Result();
+        LinkedBlockingQueue<Attempt> attempts = new LinkedBlockingQueue<>();
+
+        policy.execute((hedged, callback) -> {
+            if (hedged) {
+                attempts.add(new Attempt(true, callback));
+                throw new CircuitBreakerOpenException("hedge");
+            }
+            Attempt attempt = new Attempt(false, callback);
+            attempts.add(attempt);
+            return attempt.request;
+        }, result);
+        Attempt primary = attempts.poll(10, TimeUnit.SECONDS);
+        assertTrue(attempts.poll(10, TimeUnit.SECONDS).hedged);
+        assertTrue(result.outcomes.isEmpty());
+
+        HttpResponse ok = response(200);
+        primary.callback.completed(ok);
+        assertEquals(1, result.outcomes.size());
+        assertSame(ok, result.outcomes.get(0));
+    }
+
+    @Test
+    public void budgetLimitsHedges() throws Exception {
+        MethodMetrics metrics = new MethodMetrics("test");
+        HedgePolicy policy = new HedgePolicy(hedge("noDeposit"), metrics);
+        // 初始预算为 10 个对冲请求，不再存入
+        for (int i = 0; i < 10; i++) {
+            RecordingSender sender = new RecordingSender();
+            Result result = new Result();
+            policy.execute(sender, result);
+            sender.next();
+            assertTrue(sender.next().hedged);
+        }
+        RecordingSender sender = new RecordingSender();
+        policy.execute(sender, new Result());
+        sender.next();
+        assertNull(sender.poll(200));
+        assertEquals(10, metrics.getHedgedCount());
+    }
+
+    @Test
+    public void percentileDelayNeedsSamples() throws Exception {
+        MethodMetrics metrics = new MethodMetrics("test");
+        HedgePolicy policy = new HedgePolicy(hedge("byPercentile"), metrics);
+        assertEquals(-1, policy.getDelayNanos());
+
+        // 样本不足时直接使用调用方的回调，不对冲
+        RecordingSender sender = new RecordingSender();
+        Result result = new Result();
+        policy.execute(sender, result);
+        assertSame(result, sender.next().callback);
+
+        for (int i = 0; i < 100; i++) {
+            metrics.getLatency().record(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        policy = new HedgePolicy(hedge("byPercentile"), metrics);
+        long delay = policy.getDelayNanos();
+        assertTrue(delay >= TimeUnit.MILLISECONDS.toNanos(10));
+        assertTrue(delay <= TimeUnit.MILLISECONDS.toNanos(10) * 17 / 16);
+    }
+}
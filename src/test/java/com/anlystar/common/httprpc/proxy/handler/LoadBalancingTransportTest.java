@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.proxy.handler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.concurrent.FutureCallback;
+import org.junit.Test;
+
+import com.anlystar.common.httprpc.helper.ResponseReader;
+import com.anlystar.common.httprpc.transport.HttpTransport;
+import com.anlystar.common.httprpc.transport.TransportRequest;
+
+public class LoadBalancingTransportTest {
+
+    private final static String URL = "http://lb-test:8080";
+
+    /**
+     * 按顺序抛出给定异常
+     */
+    private static class FailingTransport implements HttpTransport {
+
+        private final Exception[] errors;
+        private int next;
+
+        FailingTransport(Exception... errors) {
+            this.errors = errors;
+        }
+
+        @Override
+        public <T> T execute(TransportRequest request, ResponseReader<T> reader) throws IOException {
+            Exception error = errors[next++];
+            if (error instanceof IOException) {
+                throw (IOException) error;
+            }
+            throw (RuntimeException) error;
+        }
+
+        @Override
+        public Future<?> execute(TransportRequest request, FutureCallback<HttpResponse> callback) {
+            callback.failed(errors[next++]);
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    private static Exception[] errors(int failures) {
+        Exception[] errors = new Exception[failures + 2];
+        for (int i = 0; i < errors.length; i++) {
+            errors[i] = new IOException("connect");
+        }
+        // 连续失败中间被并发限制拒绝
+        errors[failures] = new ConcurrencyLimitExceededException(URL, 1);
+        return errors;
+    }
+
+    @Test
+    public void limiterRejectionNotRecordedSync() {
+        LoadBalancer balancer = new LoadBalancer(URL, null);
+        LoadBalancer.Endpoint endpoint = balancer.find(URL);
+        int failures = LoadBalancer.DEFAULT_MAX_FAILURES - 1;
+        HttpTransport transport = new LoadBalancingTransport(new FailingTransport(errors(failures)), balancer::find);
+        TransportRequest request = TransportRequest.get(URL, null, null);
+
+        for (int i = 0; i < failures + 1; i++) {
+            try {
+                transport.execute(request, (content, charset) -> null);
+                fail();
+            } catch (IOException | ConcurrencyLimitExceededException e) {
+                // 预期
+            }
+        }
+        assertFalse(endpoint.isEjected());
+        assertEquals(0, endpoint.getOutstanding());
+        try {
+            transport.execute(request, (content, charset) -> null);
+            fail();
+        } catch (IOException e) {
+            // 拒绝没有清零连续失败次数
+        }
+        assertTrue(endpoint.isEjected());
+    }
+
+    @Test
+    public void limiterRejectionNotRecordedAsync() {
+        LoadBalancer balancer = new LoadBalancer(URL, null);
+        LoadBalancer.Endpoint endpoint = balancer.find(URL);
+        int failures = LoadBalancer.DEFAULT_MAX_FAILURES - 1;
+        HttpTransport transport = new LoadBalancingTransport(new FailingTransport(errors(failures)), balancer::find);
+        TransportRequest request = TransportRequest.get(URL, null, null);
+        FutureCallback<HttpResponse> ignored = new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse result) {
+            }
+
+            @Override
+            public void failed(Exception ex) {
+            }
+
+            @Override
+            public void cancelled() {
+            }
+        };
+
+        for (int i = 0; i < failures + 1; i++) {
+            transport.execute(request, ignored);
+        }
+        assertFalse(endpoint.isEjected());
+        assertEquals(0, endpoint.getOutstanding());
+        transport.execute(request, ignored);
+        assertTrue(endpoint.isEjected());
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.proxy.handler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.anlystar.common.httprpc.annotation.Collapse;
+import com.anlystar.common.httprpc.callback.Callback;
+import com.anlystar.common.httprpc.callback.CallbackCompletableFuture;
+import com.anlystar.common.httprpc.helper.Deadline;
+
+public class RequestCollapserTest {
+
+    interface Api {
+
+        @Collapse(batchMethod = "batch", window = 3600000, maxBatchSize = 3)
+        String bySize(String key);
+
+        @Collapse(batchMethod = "batch", window = 20)
+        String byWindow(String key);
+    }
+
+    private static Collapse collapse(String name) throws Exception {
+        return Api.class.getDeclaredMethod(name, String.class).getAnnotation(Collapse.class);
+    }
+
+    /**
+     * 记录批量调用，由测试决定何时返回
+     */
+    private static class RecordingBatchCall implements RequestCollapser.BatchCall {
+
+        private final LinkedBlockingQueue<Object[]> calls = new LinkedBlockingQueue<>();
+
+        @Override
+        public void call(List<Object> keys, Deadline deadline, Callback<Object> callback) {
+            calls.add(new Object[] {keys, deadline, callback});
+        }
+
+        Object[] next() throws InterruptedException {
+            Object[] call = calls.poll(10, TimeUnit.SECONDS);
+            assertTrue("批量调用未发送", call != null);
+            return call;
+        }
+    }
+
+    @Test
+    public void flushAtMaxBatchSize() throws Exception {
+        RecordingBatchCall batchCall = new RecordingBatchCall();
+        RequestCollapser collapser = new RequestCollapser(collapse("bySize"), batchCall);
+        CallbackCompletableFuture<Object> a = new CallbackCompletableFuture<>();
+        CallbackCompletableFuture<Object> a2 = new CallbackCompletableFuture<>();
+        CallbackCompletableFuture<Object> b = new CallbackCompletableFuture<>();
+        CallbackCompletableFuture<Object> c = new CallbackCompletableFuture<>();
+        collapser.add("a", a, null);
+        collapser.add("a", a2, null);
+        collapser.add("b", b, null);
+        assertTrue(batchCall.calls.isEmpty());
+        collapser.add("c", c, null);
+
+        Object[] call = batchCall.next();
+        assertEquals(Arrays.asList("a", "b", "c"), call[0]);
+        assertNull(call[1]);
+        ((Callback<Object>) call[2]).handleResult(Arrays.asList("A", "B", "C"));
+        assertEquals("A", a.get());
+        assertEquals("A", a2.get());
+        assertEquals("B", b.get());
+        assertEquals("C", c.get());
+    }
+
+    @Test
+    public void flushAfterWindowWithEarliestDeadline() throws Exception {
+        RecordingBatchCall batchCall = new RecordingBatchCall();
+        RequestCollapser collapser = new RequestCollapser(collapse("byWindow"), batchCall);
+        Deadline late = Deadline.after(10, TimeUnit.SECONDS);
+        Deadline early = Deadline.after(5, TimeUnit.SECONDS);
+        collapser.add("a", new CallbackCompletableFuture<>(), late);
+        collapser.add("b", new CallbackCompletableFuture<>(), early);
+        collapser.add("c", new CallbackCompletableFuture<>(), null);
+
+        Object[] call = batchCall.next();
+        assertEquals(Arrays.asList("a", "b", "c"), call[0]);
+        assertSame(early, call[1]);
+    }
+
+    @Test
+    public void expiredDeadlineIgnored() throws Exception {
+        RecordingBatchCall batchCall = new RecordingBatchCall();
+        RequestCollapser collapser = new RequestCollapser(collapse("byWindow"), batchCall);
+        Deadline late = Deadline.after(10, TimeUnit.SECONDS);
+        // 窗口结束前到期，调用方已不再等待
+        collapser.add("a", new CallbackCompletableFuture<>(), Deadline.after(1, TimeUnit.MILLISECONDS));
+        collapser.add("b", new CallbackCompletableFuture<>(), late);
+
+        assertSame(late, batchCall.next()[1]);
+    }
+
+    @Test
+    public void batchErrorDeliveredToAll() throws Exception {
+        RecordingBatchCall batchCall = new RecordingBatchCall();
+        RequestCollapser collapser = new RequestCollapser(collapse("bySize"), batchCall);
+        CallbackCompletableFuture<Object> a = new CallbackCompletableFuture<>();
+        CallbackCompletableFuture<Object> b = new CallbackCompletableFuture<>();
+        CallbackCompletableFuture<Object> c = new CallbackCompletableFuture<>();
+        collapser.add("a", a, null);
+        collapser.add("b", b, null);
+        collapser.add("c", c, null);
+
+        IllegalStateException error = new IllegalStateException();
+        ((Callback<Object>) batchCall.next()[2]).handleError(error);
+        for (CallbackCompletableFuture<Object> future : Arrays.asList(a, b, c)) {
+            assertTrue(future.isCompletedExceptionally());
+        }
+    }
+}
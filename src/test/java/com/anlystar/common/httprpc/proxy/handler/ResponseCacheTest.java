@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2019 Baidu, Inc. All Rights Reserved.
+ */
+package com.anlystar.common.httprpc.proxy.handler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.anlystar.common.httprpc.annotation.Cached;
+import com.anlystar.common.httprpc.annotation.HttpRequest;
+import com.anlystar.common.httprpc.annotation.ReqParam;
+import com.anlystar.common.httprpc.annotation.ReqSign;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class ResponseCacheTest {
+
+    interface Api {
+
+        @Cached
+        @HttpRequest(url = "http://127.0.0.1/user")
+        String user(@ReqParam(value = "token", header = true) String token);
+
+        @Cached
+        @HttpRequest(url = "http://127.0.0.1/user")
+        String signed(@ReqParam("id") String id, @ReqSign String sign);
+    }
+
+    @Test
+    public void keyIncludesHeaders() {
+        Map<String, String> pars = Collections.singletonMap("id", "1");
+        ResponseCache.Key a = new ResponseCache.Key("http://host/user", pars, Collections.singletonMap("token", "a"));
+        ResponseCache.Key b = new ResponseCache.Key("http://host/user", pars, Collections.singletonMap("token", "b"));
+        ResponseCache.Key a2 = new ResponseCache.Key("http://host/user", pars, Collections.singletonMap("token", "a"));
+        assertNotEquals(a, b);
+        assertEquals(a, a2);
+        assertEquals(a.hashCode(), a2.hashCode());
+    }
+
+    @Test
+    public void headerParamsAllowed() throws Exception {
+        InvocationPlan.compile(Api.class.getMethod("user", String.class), new ObjectMapper());
+    }
+
+    @Test
+    public void signedMethodRejected() throws Exception {
+        try {
+            InvocationPlan.compile(Api.class.getMethod("signed", String.class, String.class), new ObjectMapper());
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("ReqSign"));
+        }
+    }
+}